@@ -0,0 +1,99 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.commands.DriveCommands;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks for the drive hot paths against in-memory IO. Reports latency per call and calls per
+ * second at both the main loop rate and the high-frequency odometry rate; run with the GC profiler
+ * (the default for "./gradlew jmh") to also get the allocation rate.
+ *
+ * <p>The AdvantageKit logger is not started, so the cost of serializing logged values is excluded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DriveBenchmark {
+  @Param({"50", "250"})
+  public double odometryFrequencyHz;
+
+  private Drive drive;
+  private Module module;
+  private Command joystickDrive;
+  private ChassisSpeeds setpoint = new ChassisSpeeds(2.0, 1.0, 1.5);
+  private SwerveModuleState moduleSetpoint = new SwerveModuleState(2.0, new Rotation2d(0.3));
+
+  @Setup(Level.Trial)
+  public void setup() {
+    HAL.initialize(500, 0);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+    DriverStation.refreshData();
+
+    drive =
+        new Drive(
+            new FakeGyroIO(odometryFrequencyHz),
+            new FakeModuleIO(odometryFrequencyHz, 0.5),
+            new FakeModuleIO(odometryFrequencyHz, 1.0),
+            new FakeModuleIO(odometryFrequencyHz, 1.5),
+            new FakeModuleIO(odometryFrequencyHz, 2.0));
+    module = new Module(new FakeModuleIO(odometryFrequencyHz, 0.5), 0);
+    joystickDrive = DriveCommands.joystickDrive(drive, () -> 0.5, () -> 0.3, () -> 0.2);
+    joystickDrive.initialize();
+
+    // Run a few cycles so every module has its offset and is running closed loop
+    for (int i = 0; i < 10; i++) {
+      drive.runVelocity(setpoint);
+      drive.periodic();
+      module.updateInputs();
+      module.peridoic();
+      module.runSetpoint(moduleSetpoint);
+    }
+  }
+
+  @Benchmark
+  public void drivePeriodic() {
+    drive.periodic();
+  }
+
+  @Benchmark
+  public void driveRunVelocity() {
+    drive.runVelocity(setpoint);
+  }
+
+  @Benchmark
+  public void modulePeriodic() {
+    module.updateInputs();
+    module.peridoic();
+  }
+
+  @Benchmark
+  public void joystickDrive() {
+    joystickDrive.execute();
+  }
+
+  /** One full robot loop of the drive: subsystem periodic followed by the default command. */
+  @Benchmark
+  public void driveCycle() {
+    drive.periodic();
+    joystickDrive.execute();
+  }
+}
@@ -0,0 +1,47 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/** In-memory GyroIO for benchmarks. Spins at a constant rate so every sample is distinct. */
+public class FakeGyroIO implements GyroIO {
+  private static final double LOOP_PERIOD_S = 0.02;
+  private static final double YAW_VELOCITY_RAD_PER_SEC = 1.0;
+
+  private final double samplePeriod;
+  private final double[] odometryYawTimestamps;
+  private final double[] odometryYawPositionsRad;
+
+  private double timestamp = 0.0;
+  private double yawRad = 0.0;
+
+  /**
+   * Creates a new FakeGyroIO.
+   *
+   * @param odometryFrequencyHz Rate odometry samples are produced at, 50 gives one per cycle
+   */
+  public FakeGyroIO(double odometryFrequencyHz) {
+    int samplesPerCycle = Math.max(1, (int) Math.round(odometryFrequencyHz * LOOP_PERIOD_S));
+    samplePeriod = LOOP_PERIOD_S / samplesPerCycle;
+    odometryYawTimestamps = new double[samplesPerCycle];
+    odometryYawPositionsRad = new double[samplesPerCycle];
+  }
+
+  @Override
+  public void updateInputs(GyroIOInputs inputs) {
+    for (int i = 0; i < odometryYawTimestamps.length; i++) {
+      yawRad += YAW_VELOCITY_RAD_PER_SEC * samplePeriod;
+      timestamp += samplePeriod;
+
+      odometryYawTimestamps[i] = timestamp;
+      odometryYawPositionsRad[i] = yawRad;
+    }
+
+    inputs.connected = true;
+    inputs.yawPosition = new Rotation2d(yawRad);
+    inputs.yawVelocityRadPerSec = YAW_VELOCITY_RAD_PER_SEC;
+    inputs.odometryYawTimestamps = odometryYawTimestamps;
+    inputs.odometryYawPositionsRad = odometryYawPositionsRad;
+  }
+}
@@ -0,0 +1,81 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * In-memory ModuleIO for benchmarks. Integrates the commanded voltage with a first order model so
+ * the controllers see moving values, without the cost of a physics sim or any hardware.
+ */
+public class FakeModuleIO implements ModuleIO {
+  private static final double LOOP_PERIOD_S = 0.02;
+  private static final double DRIVE_RAD_PER_SEC_PER_VOLT = 1.0 / 0.13;
+  private static final double AZIMUTH_RAD_PER_SEC_PER_VOLT = 1.0;
+
+  private final double samplePeriod;
+  private final double[] odometryTimestamps;
+  private final double[] odometryDrivePositionsRad;
+  private final double[] odometryAzimuthPositionsRad;
+
+  private double timestamp = 0.0;
+  private double drivePositionRad = 0.0;
+  private double driveVelocityRadPerSec = 0.0;
+  private double azimuthPositionRad = 0.0;
+  private double azimuthVelocityRadPerSec = 0.0;
+  private double driveAppliedVolts = 0.0;
+  private double azimuthAppliedVolts = 0.0;
+
+  /**
+   * Creates a new FakeModuleIO.
+   *
+   * @param odometryFrequencyHz Rate odometry samples are produced at, 50 gives one per cycle
+   * @param azimuthInitPositionRad Absolute azimuth position at startup
+   */
+  public FakeModuleIO(double odometryFrequencyHz, double azimuthInitPositionRad) {
+    int samplesPerCycle = Math.max(1, (int) Math.round(odometryFrequencyHz * LOOP_PERIOD_S));
+    samplePeriod = LOOP_PERIOD_S / samplesPerCycle;
+    odometryTimestamps = new double[samplesPerCycle];
+    odometryDrivePositionsRad = new double[samplesPerCycle];
+    odometryAzimuthPositionsRad = new double[samplesPerCycle];
+    azimuthPositionRad = azimuthInitPositionRad;
+  }
+
+  @Override
+  public void updateInputs(ModuleIOInputs inputs) {
+    for (int i = 0; i < odometryTimestamps.length; i++) {
+      driveVelocityRadPerSec = driveAppliedVolts * DRIVE_RAD_PER_SEC_PER_VOLT;
+      azimuthVelocityRadPerSec = azimuthAppliedVolts * AZIMUTH_RAD_PER_SEC_PER_VOLT;
+      drivePositionRad += driveVelocityRadPerSec * samplePeriod;
+      azimuthPositionRad += azimuthVelocityRadPerSec * samplePeriod;
+      timestamp += samplePeriod;
+
+      odometryTimestamps[i] = timestamp;
+      odometryDrivePositionsRad[i] = drivePositionRad;
+      odometryAzimuthPositionsRad[i] = azimuthPositionRad;
+    }
+
+    inputs.drivePositionRad = drivePositionRad;
+    inputs.driveVelocityRadPerSec = driveVelocityRadPerSec;
+    inputs.driveAppliedVolts = driveAppliedVolts;
+
+    inputs.azimuthAbsolutePosition = new Rotation2d(azimuthPositionRad);
+    inputs.azimuthPosition = inputs.azimuthAbsolutePosition;
+    inputs.azimuthVelocityRadPerSec = azimuthVelocityRadPerSec;
+    inputs.azimuthAppliedVolts = azimuthAppliedVolts;
+
+    inputs.odometryTimestamps = odometryTimestamps;
+    inputs.odometryDrivePositionsRad = odometryDrivePositionsRad;
+    inputs.odometryAzimuthPositionsRad = odometryAzimuthPositionsRad;
+  }
+
+  @Override
+  public void setDriveVolts(double volts) {
+    driveAppliedVolts = volts;
+  }
+
+  @Override
+  public void setAzimuthVolts(double volts) {
+    azimuthAppliedVolts = volts;
+  }
+}
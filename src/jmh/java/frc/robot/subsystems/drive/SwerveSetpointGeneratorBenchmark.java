@@ -0,0 +1,61 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.util.Units;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of one SwerveSetpointGenerator call. Alternates between opposite translate-and-rotate
+ * commands so every call hits the limits and runs the full bisection, the worst case. The budget
+ * on the roboRIO is 100 us per call, roughly 10x slower than a desktop JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SwerveSetpointGeneratorBenchmark {
+  private static final double TRACK_WIDTH = Units.inchesToMeters(25.0);
+
+  private SwerveSetpointGenerator generator;
+  private SwerveModuleState[] states;
+  private boolean reverse = false;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    generator =
+        new SwerveSetpointGenerator(
+            new Translation2d[] {
+              new Translation2d(TRACK_WIDTH / 2.0, TRACK_WIDTH / 2.0),
+              new Translation2d(TRACK_WIDTH / 2.0, -TRACK_WIDTH / 2.0),
+              new Translation2d(-TRACK_WIDTH / 2.0, TRACK_WIDTH / 2.0),
+              new Translation2d(-TRACK_WIDTH / 2.0, -TRACK_WIDTH / 2.0)
+            },
+            4.42,
+            10.0,
+            10.0,
+            20.0);
+    states =
+        new SwerveModuleState[] {
+          new SwerveModuleState(), new SwerveModuleState(),
+          new SwerveModuleState(), new SwerveModuleState()
+        };
+  }
+
+  @Benchmark
+  public SwerveModuleState[] generate() {
+    reverse = !reverse;
+    return reverse
+        ? generator.generate(-4.0, 2.0, -3.0, 0.02, states)
+        : generator.generate(4.0, -2.0, 3.0, 0.02, states);
+  }
+}
@@ -0,0 +1,41 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util;
+
+import frc.robot.subsystems.drive.OdometryThread;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of one VelocityEstimator update. Each module runs two per odometry sample, so at 250 Hz
+ * that's 40 per 20 ms cycle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VelocityEstimatorBenchmark {
+  private static final double DT = 1.0 / OdometryThread.ODOMETRY_FREQUENCY_HZ;
+
+  private VelocityEstimator estimator;
+  private double positionRad = 0.0;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    estimator = new VelocityEstimator(0.1, 0.13, 0.025, 0.0064, 200.0, false);
+  }
+
+  @Benchmark
+  public void update(Blackhole blackhole) {
+    positionRad += 0.01;
+    estimator.update(positionRad, 6.0, DT);
+    blackhole.consume(estimator.getVelocity());
+  }
+}
@@ -7,8 +7,10 @@ package frc.robot;
  * of this project (don't be stupid).
  */
 public class Constants {
-  public static final Mode currentMode = Mode.SIM;
+  // Can be overridden with "-Drobot.mode=[mode]", the replay runner starts the robot in REPLAY
+  public static final Mode currentMode = Mode.valueOf(System.getProperty("robot.mode", "SIM"));
   public static final boolean debuggingMode = true;
+  public static final boolean profilingMode = true;
 
   public static enum Mode {
     /** Running on a real robot. */
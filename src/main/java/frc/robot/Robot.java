@@ -4,6 +4,13 @@ package frc.robot;
 
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.util.can.CANBusBudget;
+import frc.robot.util.debugging.Alert;
+import frc.robot.util.debugging.LoopProfiler;
+import frc.robot.util.debugging.LoopTimer;
+import frc.robot.util.logging.AsyncLogReceiver;
+import frc.robot.util.logging.TieredNT4Publisher;
+import frc.robot.util.logging.TieredNT4Publisher.Tier;
 import org.littletonrobotics.junction.LogFileUtil;
 import org.littletonrobotics.junction.LoggedRobot;
 import org.littletonrobotics.junction.Logger;
@@ -12,10 +19,16 @@ import org.littletonrobotics.junction.wpilog.WPILOGReader;
 import org.littletonrobotics.junction.wpilog.WPILOGWriter;
 
 public class Robot extends LoggedRobot {
+  // Cycles each receiver can fall behind before dropping, 10 s for the log and 1 s for NT
+  private static final int LOG_WRITER_CAPACITY = 500;
+  private static final int NT_PUBLISHER_CAPACITY = 50;
+
   private Command m_autonomousCommand;
 
   private RobotContainer m_robotContainer;
 
+  private final LoopTimer schedulerTimer = LoopProfiler.getTimer("Robot/Scheduler");
+
   @Override
   public void robotInit() {
     // Record metadata
@@ -39,9 +52,27 @@ public class Robot extends LoggedRobot {
     // Set up data receivers & replay source
     switch (Constants.currentMode) {
       case REAL:
-        // Running on a real robot, log to a USB stick ("/U/logs")
-        Logger.addDataReceiver(new WPILOGWriter());
-        Logger.addDataReceiver(new NT4Publisher());
+        // Running on a real robot, log to a USB stick ("/U/logs"). Both receivers run on their
+        // own threads so a stalled USB stick or radio can't back up into the loop.
+        Logger.addDataReceiver(
+            new AsyncLogReceiver("WPILOGWriter", new WPILOGWriter(), LOG_WRITER_CAPACITY));
+        // Only stream what's needed over the radio, the log file still gets everything
+        Logger.addDataReceiver(
+            new AsyncLogReceiver(
+                "NT4Publisher",
+                new TieredNT4Publisher(Tier.NORMAL)
+                    .withTier("RealMetadata", Tier.CRITICAL)
+                    .withTier("DriverStation", Tier.CRITICAL)
+                    .withTier("Odometry/Robot", Tier.CRITICAL)
+                    .withTier("Alerts", Tier.CRITICAL)
+                    .withTier("Drive/Module", Tier.DEBUG)
+                    .withTier("Drive/Gyro", Tier.DEBUG)
+                    .withTier("LoopTimes", Tier.DEBUG)
+                    .withTier("DeviceConfig", Tier.DEBUG)
+                    .withTier("CAN", Tier.DEBUG)
+                    .withTier("Telemetry", Tier.DEBUG)
+                    .withTier("LogReceivers", Tier.DEBUG),
+                NT_PUBLISHER_CAPACITY));
         break;
 
       case SIM:
@@ -71,7 +102,15 @@ public class Robot extends LoggedRobot {
 
   @Override
   public void robotPeriodic() {
+    schedulerTimer.start();
     CommandScheduler.getInstance().run();
+    schedulerTimer.stop();
+
+    LoopProfiler.publish();
+    CANBusBudget.periodic();
+    Alert.periodic();
+    TieredNT4Publisher.periodic();
+    AsyncLogReceiver.periodic();
   }
 
   @Override
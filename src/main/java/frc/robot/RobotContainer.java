@@ -2,23 +2,38 @@
 
 package frc.robot;
 
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import frc.robot.commands.DriveCommands;
 import frc.robot.subsystems.drive.Drive;
+import frc.robot.subsystems.drive.DriveCalibration;
 import frc.robot.subsystems.drive.GyroIO;
 import frc.robot.subsystems.drive.GyroIOPigeon2;
+import frc.robot.subsystems.drive.GyroIOSim;
 import frc.robot.subsystems.drive.ModuleIO;
 import frc.robot.subsystems.drive.ModuleIOSim;
 import frc.robot.subsystems.drive.ModuleIOSparkMax;
+import frc.robot.subsystems.drive.SwerveDriveSim;
+import frc.robot.subsystems.vision.VisionCameraSim;
+import frc.robot.util.FeedforwardFitter;
+import frc.robot.util.debugging.LoopProfiler;
+import java.util.Random;
+import org.littletonrobotics.junction.networktables.LoggedDashboardChooser;
 
 public class RobotContainer {
   private Drive robotDrive;
 
   private CommandXboxController pilotController = new CommandXboxController(0);
 
+  private final LoggedDashboardChooser<Command> autoChooser =
+      new LoggedDashboardChooser<>("Auto Choices");
+
   public RobotContainer() {
+    // Logged as an input, so this has to wait until the logger has started
+    DriveCalibration.load();
+
     switch (Constants.currentMode) {
       case REAL:
         robotDrive =
@@ -30,13 +45,21 @@ public class RobotContainer {
                 new ModuleIOSparkMax(3));
         break;
       case SIM:
+        SwerveDriveSim driveSim = new SwerveDriveSim(new Random());
         robotDrive =
             new Drive(
-                new GyroIO() {},
-                new ModuleIOSim(),
-                new ModuleIOSim(),
-                new ModuleIOSim(),
-                new ModuleIOSim());
+                new GyroIOSim(driveSim),
+                new ModuleIOSim(driveSim, 0),
+                new ModuleIOSim(driveSim, 1),
+                new ModuleIOSim(driveSim, 2),
+                new ModuleIOSim(driveSim, 3));
+        new VisionCameraSim(
+                "VisionCameraSim",
+                driveSim::getPose,
+                robotDrive::addVisionMeasurement,
+                30.0,
+                0)
+            .start();
         break;
       default:
         robotDrive =
@@ -49,19 +72,56 @@ public class RobotContainer {
         break;
     }
 
+    autoChooser.addDefaultOption("None", Commands.print("No autonomous command configured"));
+    autoChooser.addOption(
+        "Drive FF Characterization", DriveCommands.feedforwardCharacterization(robotDrive));
+    autoChooser.addOption(
+        "Drive FF Quasistatic",
+        DriveCommands.quasistaticCharacterization(robotDrive, new FeedforwardFitter()));
+    autoChooser.addOption(
+        "Drive FF Dynamic",
+        DriveCommands.dynamicCharacterization(robotDrive, new FeedforwardFitter()));
+    autoChooser.addOption(
+        "Drive Wheel Radius Calibration", DriveCommands.wheelRadiusCalibration(robotDrive));
+
     configureBindings();
   }
 
   private void configureBindings() {
+    // Driving is capped at 80% of max speed, hold left bumper for 30% precision or right bumper
+    // for full speed turbo
     robotDrive.setDefaultCommand(
-        DriveCommands.joystickDrive(
-            robotDrive,
-            () -> pilotController.getLeftX(),
-            () -> pilotController.getLeftY(),
-            () -> pilotController.getRightX()));
+        LoopProfiler.profile(
+            DriveCommands.headingLockDrive(
+                    robotDrive,
+                    () -> pilotController.getLeftX(),
+                    () -> pilotController.getLeftY(),
+                    () -> pilotController.getRightX(),
+                    pilotController.leftBumper(),
+                    pilotController.rightBumper())
+                .withName("HeadingLockDrive")));
+
+    // Face a side of the field while held, angles are for the blue alliance
+    pilotController.y().whileTrue(snapToAngle(Rotation2d.fromDegrees(0.0)));
+    pilotController.x().whileTrue(snapToAngle(Rotation2d.fromDegrees(90.0)));
+    pilotController.a().whileTrue(snapToAngle(Rotation2d.fromDegrees(180.0)));
+    pilotController.b().whileTrue(snapToAngle(Rotation2d.fromDegrees(-90.0)));
+  }
+
+  private Command snapToAngle(Rotation2d angle) {
+    return LoopProfiler.profile(
+        DriveCommands.snapToAngle(
+                robotDrive,
+                () -> pilotController.getLeftX(),
+                () -> pilotController.getLeftY(),
+                () -> pilotController.getRightX(),
+                pilotController.leftBumper(),
+                pilotController.rightBumper(),
+                angle)
+            .withName("SnapToAngle"));
   }
 
   public Command getAutonomousCommand() {
-    return Commands.print("No autonomous command configured");
+    return LoopProfiler.profile(autoChooser.get());
   }
 }
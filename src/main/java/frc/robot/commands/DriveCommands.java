@@ -4,22 +4,37 @@
 
 package frc.robot.commands;
 
-import edu.wpi.first.math.MathUtil;
-import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Transform2d;
-import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
+import edu.wpi.first.wpilibj2.command.FunctionalCommand;
+import frc.robot.commands.FeedforwardCharacterization.Test;
 import frc.robot.subsystems.drive.Drive;
+import frc.robot.util.DriverInputShaper;
+import frc.robot.util.FeedforwardFitter;
+import java.util.function.BooleanSupplier;
 import java.util.function.DoubleSupplier;
 
 /** Static class to hold commands the Drive subsystem can execute */
 public class DriveCommands {
+  private static final double LOOP_PERIOD_S = 0.02;
   private static final double DEADBAND = 0.1;
+  private static final double LINEAR_EXPONENT = 2.0; // Squared for finer control at low speed
+  private static final double OMEGA_EXPONENT = 2.0;
+  // Fractions of max speed per second, 3.0 reaches full speed from rest in a third of a second
+  private static final double AXIS_SLEW_RATE = 4.0;
+  private static final double LINEAR_SLEW_RATE = 3.0;
+  private static final double OMEGA_SLEW_RATE = 4.0;
+  private static final double PRECISION_SCALE = 0.3;
+  private static final double NORMAL_SCALE = 0.8;
+  private static final double TURBO_SCALE = 1.0;
+
+  private static final double QUASISTATIC_VOLTS_PER_SEC = 0.5;
+  private static final double QUASISTATIC_DURATION_S = 8.0;
+  private static final double DYNAMIC_VOLTS = 5.0;
+  private static final double DYNAMIC_DURATION_S = 1.5;
+  private static final double CHARACTERIZATION_REST_S = 2.0;
 
   /**
    * Field relative drive command using two joysticks (controlling linear and angular velocities).
@@ -29,39 +44,146 @@ public class DriveCommands {
       DoubleSupplier xSupplier,
       DoubleSupplier ySupplier,
       DoubleSupplier omegaSupplier) {
-    return Commands.run(
-        () -> {
-          // Apply deadband
-          double linearMagnitude =
-              MathUtil.applyDeadband(
-                  Math.hypot(xSupplier.getAsDouble(), ySupplier.getAsDouble()), DEADBAND);
-          Rotation2d linearDirection =
-              new Rotation2d(xSupplier.getAsDouble(), ySupplier.getAsDouble());
-          double omega = MathUtil.applyDeadband(omegaSupplier.getAsDouble(), DEADBAND);
-
-          // Square values
-          linearMagnitude = linearMagnitude * linearMagnitude;
-          omega = Math.copySign(omega * omega, omega);
+    return joystickDrive(robotDrive, xSupplier, ySupplier, omegaSupplier, () -> false, () -> false);
+  }
 
-          // Calcaulate new linear velocity
-          Translation2d linearVelocity =
-              new Pose2d(new Translation2d(), linearDirection)
-                  .transformBy(new Transform2d(linearMagnitude, 0.0, new Rotation2d()))
-                  .getTranslation();
+  /**
+   * Field relative drive command using two joysticks (controlling linear and angular velocities).
+   * Holding precision slows the robot down for lining up, holding turbo allows full speed.
+   */
+  public static Command joystickDrive(
+      Drive robotDrive,
+      DoubleSupplier xSupplier,
+      DoubleSupplier ySupplier,
+      DoubleSupplier omegaSupplier,
+      BooleanSupplier precisionSupplier,
+      BooleanSupplier turboSupplier) {
+    DriverInputShaper shaper = createShaper();
+    DoubleSupplier scaleSupplier = createScaleSupplier(precisionSupplier, turboSupplier);
+    ChassisSpeeds speeds = new ChassisSpeeds(); // Reused every cycle
+    return new FunctionalCommand(
+        shaper::reset,
+        () -> {
+          shaper.calculate(
+              xSupplier.getAsDouble(),
+              ySupplier.getAsDouble(),
+              omegaSupplier.getAsDouble(),
+              scaleSupplier.getAsDouble(),
+              LOOP_PERIOD_S);
 
-          // Convert to field relative speeds & send command
-          boolean isFlipped =
-              DriverStation.getAlliance().isPresent()
-                  && DriverStation.getAlliance().get() == Alliance.Red;
-          robotDrive.runVelocity(
-              ChassisSpeeds.fromFieldRelativeSpeeds(
-                  linearVelocity.getX() * robotDrive.getMaxLinearSpeedMetersPerSec(),
-                  linearVelocity.getY() * robotDrive.getMaxLinearSpeedMetersPerSec(),
-                  omega * robotDrive.getMaxAngularSpeedRadPerSec(),
-                  isFlipped
-                      ? robotDrive.getRotation().plus(new Rotation2d(Math.PI))
-                      : robotDrive.getRotation()));
+          // Convert to robot relative speeds, the red alliance faces the field rotated half a turn
+          double vx = shaper.getX() * robotDrive.getMaxLinearSpeedMetersPerSec();
+          double vy = shaper.getY() * robotDrive.getMaxLinearSpeedMetersPerSec();
+          if (shaper.isFlipped()) {
+            vx = -vx;
+            vy = -vy;
+          }
+          Rotation2d rotation = robotDrive.getRotation();
+          speeds.vxMetersPerSecond = vx * rotation.getCos() + vy * rotation.getSin();
+          speeds.vyMetersPerSecond = -vx * rotation.getSin() + vy * rotation.getCos();
+          speeds.omegaRadiansPerSecond =
+              shaper.getOmega() * robotDrive.getMaxAngularSpeedRadPerSec();
+          robotDrive.runVelocity(speeds);
         },
+        (Boolean interrupted) -> {},
+        () -> false,
         robotDrive);
   }
+
+  /**
+   * Joystick drive that holds the heading the robot settles at whenever the rotation stick is
+   * released, so it doesn't drift while translating. Moving the rotation stick turns as usual.
+   */
+  public static Command headingLockDrive(
+      Drive robotDrive,
+      DoubleSupplier xSupplier,
+      DoubleSupplier ySupplier,
+      DoubleSupplier omegaSupplier,
+      BooleanSupplier precisionSupplier,
+      BooleanSupplier turboSupplier) {
+    return new HeadingControlledDrive(
+        robotDrive,
+        createShaper(),
+        xSupplier,
+        ySupplier,
+        omegaSupplier,
+        createScaleSupplier(precisionSupplier, turboSupplier),
+        DEADBAND,
+        Double.NaN);
+  }
+
+  /**
+   * Joystick drive that turns to a field relative heading (given for the blue alliance, flipped on
+   * red) while translating. Moving the rotation stick takes over until it's released again.
+   */
+  public static Command snapToAngle(
+      Drive robotDrive,
+      DoubleSupplier xSupplier,
+      DoubleSupplier ySupplier,
+      DoubleSupplier omegaSupplier,
+      BooleanSupplier precisionSupplier,
+      BooleanSupplier turboSupplier,
+      Rotation2d angle) {
+    return new HeadingControlledDrive(
+        robotDrive,
+        createShaper(),
+        xSupplier,
+        ySupplier,
+        omegaSupplier,
+        createScaleSupplier(precisionSupplier, turboSupplier),
+        DEADBAND,
+        angle.getRadians());
+  }
+
+  /** Slowly ramps the drive voltage, which fits kS and kV. */
+  public static Command quasistaticCharacterization(Drive robotDrive, FeedforwardFitter fitter) {
+    return new FeedforwardCharacterization(
+        robotDrive, fitter, Test.QUASISTATIC, QUASISTATIC_VOLTS_PER_SEC, QUASISTATIC_DURATION_S);
+  }
+
+  /** Applies a voltage step to the drive, which fits kA along with kS and kV. */
+  public static Command dynamicCharacterization(Drive robotDrive, FeedforwardFitter fitter) {
+    return new FeedforwardCharacterization(
+        robotDrive, fitter, Test.DYNAMIC, DYNAMIC_VOLTS, DYNAMIC_DURATION_S);
+  }
+
+  /**
+   * Runs a quasistatic then a dynamic test into one fitter, so a single run gives kS, kV and kA.
+   * Needs roughly 10 meters of clear space in front of the robot.
+   */
+  public static Command feedforwardCharacterization(Drive robotDrive) {
+    FeedforwardFitter fitter = new FeedforwardFitter();
+    return Commands.sequence(
+        Commands.runOnce(fitter::reset),
+        quasistaticCharacterization(robotDrive, fitter),
+        Commands.run(robotDrive::stop, robotDrive).withTimeout(CHARACTERIZATION_REST_S),
+        dynamicCharacterization(robotDrive, fitter));
+  }
+
+  /**
+   * Spins in place for three rotations and saves the measured wheel radius. Needs a gyro and about
+   * a meter of clear space around the robot.
+   */
+  public static Command wheelRadiusCalibration(Drive robotDrive) {
+    return new WheelRadiusCalibration(robotDrive);
+  }
+
+  private static DriverInputShaper createShaper() {
+    return new DriverInputShaper(
+        DEADBAND,
+        LINEAR_EXPONENT,
+        OMEGA_EXPONENT,
+        AXIS_SLEW_RATE,
+        LINEAR_SLEW_RATE,
+        OMEGA_SLEW_RATE);
+  }
+
+  /** Returns the speed scale for the held mode, precision wins if both are held. */
+  private static DoubleSupplier createScaleSupplier(
+      BooleanSupplier precisionSupplier, BooleanSupplier turboSupplier) {
+    return () ->
+        precisionSupplier.getAsBoolean()
+            ? PRECISION_SCALE
+            : turboSupplier.getAsBoolean() ? TURBO_SCALE : NORMAL_SCALE;
+  }
 }
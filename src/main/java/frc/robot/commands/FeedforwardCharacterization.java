@@ -0,0 +1,125 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.commands;
+
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.subsystems.drive.Drive;
+import frc.robot.util.FeedforwardFitter;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Drives every module forward with open loop voltage and fits the drive feedforward as samples come
+ * in. A quasistatic test ramps the voltage slowly (kS and kV), a dynamic test applies a step (kA),
+ * and both can add to the same fitter so one run of each gives all three gains. The fitted gains
+ * and R^2 are logged under "Drive/Characterization/" every cycle, in volts and wheel radians, and
+ * the final fit under "Drive/Characterization/Result/" when the test ends.
+ */
+public class FeedforwardCharacterization extends Command {
+  private static final String tableKey = "Drive/Characterization";
+  private static final double START_DELAY_S = 1.0; // Lets the modules turn to zero first
+  // Slower than this the wheels may still be held by static friction
+  private static final double MIN_VELOCITY_RAD_PER_SEC = 0.1;
+
+  /** Shape of the applied voltage. */
+  public static enum Test {
+    /** Ramps the voltage up slowly so the acceleration stays near zero. */
+    QUASISTATIC,
+
+    /** Applies a constant voltage from rest. */
+    DYNAMIC
+  }
+
+  private final Drive drive;
+  private final FeedforwardFitter fitter;
+  private final Test test;
+  private final double volts; // Ramp rate for quasistatic, step size for dynamic
+  private final double durationS;
+  private final Timer timer = new Timer();
+
+  private boolean hasLastSample = false;
+  private double lastTime = 0.0;
+  private double lastVelocity = 0.0;
+  private double lastVolts = 0.0;
+
+  /**
+   * Creates a characterization test.
+   *
+   * @param drive Drive to characterize
+   * @param fitter Fitter the samples are added to, not reset by the command
+   * @param test Shape of the applied voltage
+   * @param volts Ramp rate in volts per second for a quasistatic test, step size for a dynamic test
+   * @param durationS How long to apply voltage for, after the start delay
+   */
+  public FeedforwardCharacterization(
+      Drive drive, FeedforwardFitter fitter, Test test, double volts, double durationS) {
+    this.drive = drive;
+    this.fitter = fitter;
+    this.test = test;
+    this.volts = volts;
+    this.durationS = durationS;
+    addRequirements(drive);
+  }
+
+  @Override
+  public void initialize() {
+    timer.restart();
+    hasLastSample = false;
+    lastVolts = 0.0;
+  }
+
+  @Override
+  public void execute() {
+    double time = timer.get();
+    double velocity = drive.getCharacterizationVelocity();
+
+    // The velocity measured now is the response to the voltage sent last cycle
+    if (hasLastSample && time > START_DELAY_S && Math.abs(velocity) > MIN_VELOCITY_RAD_PER_SEC) {
+      double dt = time - lastTime;
+      if (dt > 0.0) {
+        fitter.addSample(velocity, (velocity - lastVelocity) / dt, lastVolts);
+        fitter.solve();
+      }
+    }
+    hasLastSample = true;
+    lastTime = time;
+    lastVelocity = velocity;
+
+    double appliedVolts;
+    if (time < START_DELAY_S) {
+      appliedVolts = 0.0;
+    } else if (test == Test.QUASISTATIC) {
+      appliedVolts = volts * (time - START_DELAY_S);
+    } else {
+      appliedVolts = volts;
+    }
+    drive.runCharacterization(appliedVolts);
+    lastVolts = appliedVolts;
+
+    Logger.recordOutput(tableKey + "/Volts", appliedVolts);
+    Logger.recordOutput(tableKey + "/VelocityRadPerSec", velocity);
+    Logger.recordOutput(tableKey + "/Samples", fitter.getSampleCount());
+    Logger.recordOutput(tableKey + "/kS", fitter.getKs());
+    Logger.recordOutput(tableKey + "/kV", fitter.getKv());
+    Logger.recordOutput(tableKey + "/kA", fitter.getKa());
+    Logger.recordOutput(tableKey + "/RSquared", fitter.getRSquared());
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    drive.stop();
+
+    // Kept after the command ends, so the result can be read off the dashboard
+    Logger.recordOutput(tableKey + "/Result/Test", test.name());
+    Logger.recordOutput(tableKey + "/Result/Samples", fitter.getSampleCount());
+    Logger.recordOutput(tableKey + "/Result/kS", fitter.getKs());
+    Logger.recordOutput(tableKey + "/Result/kV", fitter.getKv());
+    Logger.recordOutput(tableKey + "/Result/kA", fitter.getKa());
+    Logger.recordOutput(tableKey + "/Result/RSquared", fitter.getRSquared());
+  }
+
+  @Override
+  public boolean isFinished() {
+    return timer.hasElapsed(START_DELAY_S + durationS);
+  }
+}
@@ -0,0 +1,171 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.commands;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.subsystems.drive.Drive;
+import frc.robot.util.DriverInputShaper;
+import java.util.function.DoubleSupplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Field relative joystick drive where a profiled controller turns the robot instead of the rotation
+ * stick. It either holds the heading the robot settles at when the driver lets go of the stick, or
+ * snaps to a fixed angle. Moving the rotation stick past the deadband hands rotation back to the
+ * driver at any time. While the robot turns, translation is converted to robot relative speeds at
+ * the heading predicted from the gyro rate, so fast translate and rotate moves stay on line.
+ */
+public class HeadingControlledDrive extends Command {
+  private static final String tableKey = "Drive/HeadingControl";
+  private static final double LOOP_PERIOD_S = 0.02;
+  // TODO Update as needed
+  private static final double KP = 5.0;
+  private static final double KD = 0.0;
+  private static final double MAX_VELOCITY_FRACTION = 0.8; // Of the drive's max angular speed
+  private static final double MAX_ACCELERATION_RAD_PER_SEC2 = 20.0;
+  // The heading is captured once the robot stops turning after the driver lets go, otherwise it
+  // would swing back to where the stick was released
+  private static final double SETTLED_YAW_RATE_RAD_PER_SEC = 0.3;
+  // Speeds act on the robot about one loop after the heading they're computed from was measured
+  private static final double SKEW_LOOKAHEAD_S = 0.02;
+
+  private final Drive drive;
+  private final DriverInputShaper shaper;
+  private final DoubleSupplier xSupplier;
+  private final DoubleSupplier ySupplier;
+  private final DoubleSupplier omegaSupplier;
+  private final DoubleSupplier scaleSupplier;
+  private final double deadband;
+  private final double snapAngleRad;
+  private final ProfiledPIDController headingController;
+  private final ChassisSpeeds speeds = new ChassisSpeeds(); // Reused every cycle
+
+  private boolean hasGoal = false;
+  private double goalRad = 0.0;
+
+  /**
+   * Creates a heading controlled drive command.
+   *
+   * @param drive Drive to control
+   * @param shaper Shapes the stick values, reset when the command starts
+   * @param xSupplier Translation stick X, from -1 to 1
+   * @param ySupplier Translation stick Y, from -1 to 1
+   * @param omegaSupplier Rotation stick, from -1 to 1, overrides the heading controller when moved
+   * @param scaleSupplier Fraction of max speed at full deflection
+   * @param deadband Rotation stick deflection that still counts as released
+   * @param snapAngleRad Field relative heading to snap to (for the blue alliance, flipped on red),
+   *     or NaN to hold the heading the robot settles at
+   */
+  public HeadingControlledDrive(
+      Drive drive,
+      DriverInputShaper shaper,
+      DoubleSupplier xSupplier,
+      DoubleSupplier ySupplier,
+      DoubleSupplier omegaSupplier,
+      DoubleSupplier scaleSupplier,
+      double deadband,
+      double snapAngleRad) {
+    this.drive = drive;
+    this.shaper = shaper;
+    this.xSupplier = xSupplier;
+    this.ySupplier = ySupplier;
+    this.omegaSupplier = omegaSupplier;
+    this.scaleSupplier = scaleSupplier;
+    this.deadband = deadband;
+    this.snapAngleRad = snapAngleRad;
+    headingController =
+        new ProfiledPIDController(
+            KP,
+            0.0,
+            KD,
+            new TrapezoidProfile.Constraints(
+                drive.getMaxAngularSpeedRadPerSec() * MAX_VELOCITY_FRACTION,
+                MAX_ACCELERATION_RAD_PER_SEC2),
+            LOOP_PERIOD_S);
+    headingController.enableContinuousInput(-Math.PI, Math.PI);
+    addRequirements(drive);
+  }
+
+  @Override
+  public void initialize() {
+    // Continue from the current motion, these commands replace each other while driving
+    ChassisSpeeds measured = drive.getChassisSpeeds();
+    double headingRad = drive.getRotation().getRadians();
+    double cos = Math.cos(headingRad);
+    double sin = Math.sin(headingRad);
+    double maxLinear = drive.getMaxLinearSpeedMetersPerSec();
+    shaper.reset(
+        (measured.vxMetersPerSecond * cos - measured.vyMetersPerSecond * sin) / maxLinear,
+        (measured.vxMetersPerSecond * sin + measured.vyMetersPerSecond * cos) / maxLinear,
+        measured.omegaRadiansPerSecond / drive.getMaxAngularSpeedRadPerSec());
+    hasGoal = false;
+  }
+
+  @Override
+  public void execute() {
+    double stickOmega = omegaSupplier.getAsDouble();
+    shaper.calculate(
+        xSupplier.getAsDouble(),
+        ySupplier.getAsDouble(),
+        stickOmega,
+        scaleSupplier.getAsDouble(),
+        LOOP_PERIOD_S);
+    double headingRad = drive.getRotation().getRadians();
+    double yawVelocityRadPerSec = drive.getYawVelocityRadPerSec();
+    double maxOmega = drive.getMaxAngularSpeedRadPerSec();
+
+    boolean driverOverride = Math.abs(stickOmega) > deadband;
+    if (driverOverride) {
+      hasGoal = false;
+    } else if (!hasGoal
+        && (!Double.isNaN(snapAngleRad)
+            || Math.abs(yawVelocityRadPerSec) < SETTLED_YAW_RATE_RAD_PER_SEC)) {
+      // Start the profile from the current heading and rate so taking over is smooth
+      goalRad =
+          Double.isNaN(snapAngleRad)
+              ? headingRad
+              : MathUtil.angleModulus(snapAngleRad + (shaper.isFlipped() ? Math.PI : 0.0));
+      headingController.reset(headingRad, yawVelocityRadPerSec);
+      headingController.setGoal(goalRad);
+      hasGoal = true;
+    }
+
+    double omega;
+    if (hasGoal) {
+      omega =
+          MathUtil.clamp(
+              headingController.calculate(headingRad) + headingController.getSetpoint().velocity,
+              -maxOmega,
+              maxOmega);
+    } else {
+      // Driver control, or the robot slowing down after the driver let go
+      omega = shaper.getOmega() * maxOmega;
+    }
+
+    // Convert to robot relative speeds at the heading the robot will have when they take effect
+    double vx = shaper.getX() * drive.getMaxLinearSpeedMetersPerSec();
+    double vy = shaper.getY() * drive.getMaxLinearSpeedMetersPerSec();
+    if (shaper.isFlipped()) {
+      vx = -vx;
+      vy = -vy;
+    }
+    double predictedHeadingRad = headingRad + yawVelocityRadPerSec * SKEW_LOOKAHEAD_S;
+    double cos = Math.cos(predictedHeadingRad);
+    double sin = Math.sin(predictedHeadingRad);
+    speeds.vxMetersPerSecond = vx * cos + vy * sin;
+    speeds.vyMetersPerSecond = -vx * sin + vy * cos;
+    speeds.omegaRadiansPerSecond = omega;
+    drive.runVelocity(speeds);
+
+    Logger.recordOutput(tableKey + "/DriverOverride", driverOverride);
+    Logger.recordOutput(tableKey + "/GoalRad", hasGoal ? goalRad : Double.NaN);
+    Logger.recordOutput(
+        tableKey + "/SetpointRad", hasGoal ? headingController.getSetpoint().position : Double.NaN);
+    Logger.recordOutput(
+        tableKey + "/ErrorRad", hasGoal ? headingController.getPositionError() : Double.NaN);
+  }
+}
@@ -0,0 +1,130 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.commands;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.filter.SlewRateLimiter;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.subsystems.drive.Drive;
+import frc.robot.subsystems.drive.DriveCalibration;
+import frc.robot.util.debugging.Alert;
+import frc.robot.util.debugging.Alert.AlertType;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Spins the robot in place and compares the distance each wheel rolled with the yaw measured by the
+ * gyro. In a pure spin every wheel travels the drive base radius times the yaw, so the ratio gives
+ * the effective wheel radius. The estimate is logged under "Drive/Calibration/" every cycle with a
+ * confidence band from the spread between modules, and is saved for the next restart when the
+ * command finishes (an alert shows if it couldn't be). Run it on carpet, since that is what
+ * compresses the treads.
+ *
+ * <p>A spin only observes the ratio of the wheel radius to the drive base radius, so the wheel
+ * radius is solved for using the loaded drive base radius (measure the track widths with a tape
+ * measure instead). The drive base radius that would match the loaded wheel radius is logged too,
+ * which should be close to CAD if the wheel radius was already right.
+ */
+public class WheelRadiusCalibration extends Command {
+  private static final String tableKey = "Drive/Calibration";
+  private static final double OMEGA_RAD_PER_SEC = 1.0;
+  private static final double OMEGA_RAMP_RAD_PER_SEC2 = 1.0; // Avoids wheel slip when starting
+  private static final double TARGET_YAW_RAD = 6.0 * Math.PI;
+  // Less than this and the backlash in the drivetrain is a noticeable part of the distance
+  private static final double MIN_SAVED_YAW_RAD = 2.0 * Math.PI;
+  private static final double CONFIDENCE_Z = 2.0; // About a 95% band
+
+  private final Drive drive;
+  private final SlewRateLimiter omegaLimiter = new SlewRateLimiter(OMEGA_RAMP_RAD_PER_SEC2);
+  private final ChassisSpeeds speeds = new ChassisSpeeds();
+  private final double[] startDistances = new double[4];
+  private final double[] wheelRadii = new double[4];
+  private final Alert notSavedAlert =
+      new Alert(
+          "Wheel radius calibration not saved, it needs a full turn with the gyro connected.",
+          AlertType.WARNING);
+
+  private double lastYawRad = 0.0;
+  private double accumulatedYawRad = 0.0;
+  private double wheelRadiusMeters = Double.NaN;
+  private double confidenceMeters = Double.NaN;
+
+  public WheelRadiusCalibration(Drive drive) {
+    this.drive = drive;
+    addRequirements(drive);
+  }
+
+  @Override
+  public void initialize() {
+    omegaLimiter.reset(0.0);
+    for (int i = 0; i < 4; i++) {
+      startDistances[i] = drive.getModuleDistanceMeters(i);
+    }
+    lastYawRad = drive.getGyroYaw().getRadians();
+    accumulatedYawRad = 0.0;
+    wheelRadiusMeters = Double.NaN;
+    confidenceMeters = Double.NaN;
+    notSavedAlert.set(false);
+  }
+
+  @Override
+  public void execute() {
+    speeds.omegaRadiansPerSecond = omegaLimiter.calculate(OMEGA_RAD_PER_SEC);
+    drive.runVelocity(speeds);
+
+    double yawRad = drive.getGyroYaw().getRadians();
+    accumulatedYawRad += MathUtil.angleModulus(yawRad - lastYawRad);
+    lastYawRad = yawRad;
+
+    // Distances are in meters at the loaded radius, so scale them back to wheel radians
+    double loadedWheelRadius = DriveCalibration.getWheelRadiusMeters();
+    double rolledArc = Drive.getDriveBaseRadiusMeters() * Math.abs(accumulatedYawRad);
+    double meanDistance = 0.0;
+    double mean = 0.0;
+    for (int i = 0; i < 4; i++) {
+      double distance = Math.abs(drive.getModuleDistanceMeters(i) - startDistances[i]);
+      wheelRadii[i] = distance > 0.0 ? rolledArc * loadedWheelRadius / distance : Double.NaN;
+      meanDistance += distance / 4.0;
+      mean += wheelRadii[i] / 4.0;
+    }
+    double variance = 0.0;
+    for (int i = 0; i < 4; i++) {
+      variance += (wheelRadii[i] - mean) * (wheelRadii[i] - mean) / 3.0;
+    }
+    wheelRadiusMeters = mean;
+    confidenceMeters = CONFIDENCE_Z * Math.sqrt(variance / 4.0);
+    double driveBaseRadius =
+        accumulatedYawRad != 0.0 ? meanDistance / Math.abs(accumulatedYawRad) : Double.NaN;
+
+    Logger.recordOutput(tableKey + "/GyroConnected", drive.isGyroConnected());
+    Logger.recordOutput(tableKey + "/AccumulatedYawRad", accumulatedYawRad);
+    Logger.recordOutput(tableKey + "/ModuleWheelRadiiMeters", wheelRadii);
+    Logger.recordOutput(tableKey + "/WheelRadiusMeters", wheelRadiusMeters);
+    Logger.recordOutput(tableKey + "/WheelRadiusLowerMeters", wheelRadiusMeters - confidenceMeters);
+    Logger.recordOutput(tableKey + "/WheelRadiusUpperMeters", wheelRadiusMeters + confidenceMeters);
+    Logger.recordOutput(tableKey + "/EffectiveDriveBaseRadiusMeters", driveBaseRadius);
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    drive.stop();
+    boolean saved =
+        drive.isGyroConnected()
+            && Math.abs(accumulatedYawRad) >= MIN_SAVED_YAW_RAD
+            && Double.isFinite(wheelRadiusMeters);
+    if (saved) {
+      DriveCalibration.saveWheelRadiusMeters(wheelRadiusMeters);
+    }
+    notSavedAlert.set(!saved);
+
+    // The estimate above is still logged, these show what happened to it
+    Logger.recordOutput(tableKey + "/Saved", saved);
+    Logger.recordOutput(
+        tableKey + "/SavedWheelRadiusMeters", saved ? wheelRadiusMeters : Double.NaN);
+  }
+
+  @Override
+  public boolean isFinished() {
+    return Math.abs(accumulatedYawRad) >= TARGET_YAW_RAD;
+  }
+}
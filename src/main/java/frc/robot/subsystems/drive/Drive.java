@@ -4,30 +4,55 @@
 
 package frc.robot.subsystems.drive;
 
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants;
+import frc.robot.subsystems.vision.VisionMeasurement;
+import frc.robot.subsystems.vision.VisionMeasurementQueue;
+import frc.robot.util.PoseHistory;
+import frc.robot.util.can.DeviceConfigurator;
+import frc.robot.util.can.PhoenixSignals;
+import frc.robot.util.debugging.LoggedTunableNumber;
+import frc.robot.util.debugging.LoggedTunableNumber.ChangeTracker;
+import frc.robot.util.debugging.LoopProfiler;
+import frc.robot.util.debugging.LoopTimer;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
 
 public class Drive extends SubsystemBase {
   // TODO Update as needed
   private static final double MAX_LINEAR_SPEED_MPS = Units.feetToMeters(14.5);
-  private static final double TRACK_WIDTH_X = Units.inchesToMeters(25.0);
-  private static final double TRACK_WIDTH_Y = Units.inchesToMeters(25.0);
-  private static final double DRIVE_BASE_RADIUS =
-      Math.hypot(TRACK_WIDTH_X / 2.0, TRACK_WIDTH_Y / 2.0);
-  private static final double MAX_ANGULAR_SPEED_MPS =
-      MAX_LINEAR_SPEED_MPS / DRIVE_BASE_RADIUS; // 24.0 * Math.PI
+  private static final double MAX_DRIVE_ACCELERATION_MPS2 = 10.0;
+  private static final double MAX_SKID_ACCELERATION_MPS2 = 10.0; // Roughly g * wheel friction
+  private static final double MAX_AZIMUTH_VELOCITY_RAD_PER_SEC = 20.0;
+
+  private static final double LOOP_PERIOD_S = 0.02;
+  private static final SwerveModuleState[] EMPTY_STATES = new SwerveModuleState[] {};
+  private static final int POSE_HISTORY_CAPACITY = 500; // 2 seconds of odometry samples
+  private static final Matrix<N3, N1> DEFAULT_VISION_STD_DEVS = VecBuilder.fill(0.9, 0.9, 0.9);
+  // Replace the deltas of slipping modules with the motion the other modules imply
+  private static final boolean REJECT_WHEEL_SLIP = true;
+
+  static final Lock odometryLock = new ReentrantLock();
 
   private Module[] modules = new Module[4]; // FL FR BL BR;
   private GyroIO gyroIO;
@@ -43,8 +68,78 @@ public class Drive extends SubsystemBase {
         new SwerveModulePosition()
       }; // For delta tracking
 
+  // Preallocated so the steady-state loop doesn't generate garbage
+  private final double[] moduleTranslationsX = new double[4];
+  private final double[] moduleTranslationsY = new double[4];
+  private final double[] sampleDeltasMeters = new double[4];
+  private final double[] sampleDeltasX = new double[4];
+  private final double[] sampleDeltasY = new double[4];
+  private final double[] sampleHeadingCos = new double[4];
+  private final double[] sampleHeadingSin = new double[4];
+  // Module positions with slip removed, accumulated from the weighted deltas
+  private final SwerveModulePosition[] sampleModulePositions =
+      new SwerveModulePosition[] {
+        new SwerveModulePosition(),
+        new SwerveModulePosition(),
+        new SwerveModulePosition(),
+        new SwerveModulePosition()
+      };
+  private final WheelSlipDetector slipDetector = new WheelSlipDetector(getModuleTranslations());
+  private final double[] slipConfidences = new double[4]; // Lowest module weight this cycle
+  private final SwerveModuleState[] moduleStates = new SwerveModuleState[4];
+  private final SwerveModuleState[] setpointStates =
+      new SwerveModuleState[] {
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState(),
+        new SwerveModuleState()
+      };
+  private final SwerveModuleState[] optimizedSetpointStates = new SwerveModuleState[4];
+  private final ChassisSpeeds stopSpeeds = new ChassisSpeeds();
+  private final SwerveSetpointGenerator setpointGenerator =
+      new SwerveSetpointGenerator(
+          getModuleTranslations(),
+          MAX_LINEAR_SPEED_MPS,
+          MAX_DRIVE_ACCELERATION_MPS2,
+          MAX_SKID_ACCELERATION_MPS2,
+          MAX_AZIMUTH_VELOCITY_RAD_PER_SEC);
+
+  private final LoopTimer periodicTimer;
+  private final LoopTimer gyroUpdateInputsTimer;
+  private final LoopTimer gyroProcessInputsTimer;
+
   private SwerveDrivePoseEstimator poseEstimator =
       new SwerveDrivePoseEstimator(kinematics, rawGyroRotation, lastModulePositions, new Pose2d());
+  private final PoseHistory poseHistory = new PoseHistory(POSE_HISTORY_CAPACITY);
+  private double lastOdometryTimestamp = 0.0;
+  private final VisionMeasurementQueue visionMeasurementQueue = new VisionMeasurementQueue();
+  private final Matrix<N3, N1> visionStdDevs = new Matrix<>(Nat.N3(), Nat.N1()); // Reused
+  private final VisionMeasurementQueue.MeasurementConsumer applyVisionMeasurement =
+      (timestampSeconds, pose, xStdDevMeters, yStdDevMeters, thetaStdDevRad) -> {
+        visionStdDevs.set(0, 0, xStdDevMeters);
+        visionStdDevs.set(1, 0, yStdDevMeters);
+        visionStdDevs.set(2, 0, thetaStdDevRad);
+        poseEstimator.addVisionMeasurement(pose, timestampSeconds, visionStdDevs);
+      };
+
+  // Shared by every module, a change on the dashboard is applied to all four at once
+  private final boolean tunableGains;
+  private LoggedTunableNumber[] driveFeedbackGains;
+  private LoggedTunableNumber[] azimuthFeedbackGains;
+  private final ChangeTracker driveGainsTracker = new ChangeTracker();
+  private final ChangeTracker azimuthGainsTracker = new ChangeTracker();
+  private final Consumer<double[]> updateDrivePID =
+      (double[] gains) -> {
+        for (var module : modules) {
+          module.setDrivePID(gains[0], gains[1], gains[2]);
+        }
+      };
+  private final Consumer<double[]> updateAzimuthPID =
+      (double[] gains) -> {
+        for (var module : modules) {
+          module.setAzimuthPID(gains[0], gains[1], gains[2]);
+        }
+      };
 
   /** Creates a new Drive. */
   public Drive(
@@ -53,21 +148,105 @@ public class Drive extends SubsystemBase {
       ModuleIO frModuleIO,
       ModuleIO blModuleIO,
       ModuleIO brModuleIO) {
+    this(
+        ModuleGains.load(Constants.currentMode),
+        Constants.debuggingMode,
+        true,
+        gyroIO,
+        flModuleIO,
+        frModuleIO,
+        blModuleIO,
+        brModuleIO);
+  }
+
+  /**
+   * Creates a new Drive with the given module gains, used to evaluate gains in simulation.
+   *
+   * @param tunableGains Whether the feedback gains can be changed from the dashboard
+   * @param profiled Whether to record loop times. The timers are shared and not thread safe, so
+   *     Drives that run in parallel must not be profiled
+   */
+  Drive(
+      ModuleGains moduleGains,
+      boolean tunableGains,
+      boolean profiled,
+      GyroIO gyroIO,
+      ModuleIO flModuleIO,
+      ModuleIO frModuleIO,
+      ModuleIO blModuleIO,
+      ModuleIO brModuleIO) {
     this.gyroIO = gyroIO;
-    modules[0] = new Module(flModuleIO, 0);
-    modules[1] = new Module(frModuleIO, 1);
-    modules[2] = new Module(blModuleIO, 2);
-    modules[3] = new Module(brModuleIO, 3);
+    if (profiled) {
+      periodicTimer = LoopProfiler.getTimer("Drive/Periodic");
+      gyroUpdateInputsTimer = LoopProfiler.getTimer("Drive/Gyro/UpdateInputs");
+      gyroProcessInputsTimer = LoopProfiler.getTimer("Drive/Gyro/ProcessInputs");
+    } else {
+      periodicTimer = LoopProfiler.getDisabledTimer();
+      gyroUpdateInputsTimer = LoopProfiler.getDisabledTimer();
+      gyroProcessInputsTimer = LoopProfiler.getDisabledTimer();
+    }
+    // The IO implementations configure their devices in the background, that has to finish
+    // before the modules send gains and odometry starts sampling
+    DeviceConfigurator.awaitAll();
+    modules[0] = new Module(flModuleIO, 0, moduleGains, profiled);
+    modules[1] = new Module(frModuleIO, 1, moduleGains, profiled);
+    modules[2] = new Module(blModuleIO, 2, moduleGains, profiled);
+    modules[3] = new Module(brModuleIO, 3, moduleGains, profiled);
+
+    this.tunableGains = tunableGains;
+    if (tunableGains) {
+      driveFeedbackGains =
+          new LoggedTunableNumber[] {
+            new LoggedTunableNumber("Drive/Tuning/DriveP", moduleGains.driveKp),
+            new LoggedTunableNumber("Drive/Tuning/DriveI", moduleGains.driveKi),
+            new LoggedTunableNumber("Drive/Tuning/DriveD", moduleGains.driveKd)
+          };
+      azimuthFeedbackGains =
+          new LoggedTunableNumber[] {
+            new LoggedTunableNumber("Drive/Tuning/AzimuthP", moduleGains.azimuthKp),
+            new LoggedTunableNumber("Drive/Tuning/AzimuthI", moduleGains.azimuthKi),
+            new LoggedTunableNumber("Drive/Tuning/AzimuthD", moduleGains.azimuthKd)
+          };
+    }
+
+    Translation2d[] moduleTranslations = getModuleTranslations();
+    for (int i = 0; i < 4; i++) {
+      moduleTranslationsX[i] = moduleTranslations[i].getX();
+      moduleTranslationsY[i] = moduleTranslations[i].getY();
+    }
+
+    OdometryThread.getInstance().start();
   }
 
   @Override
   public void periodic() {
-    gyroIO.updateInputs(gyroIOInputs);
+    periodicTimer.start();
+    odometryLock.lock(); // Prevents odometry updates while reading data
+    try {
+      // One non-blocking refresh for every Phoenix device, IO implementations read cached values
+      PhoenixSignals.refreshAll();
+      gyroUpdateInputsTimer.start();
+      gyroIO.updateInputs(gyroIOInputs);
+      gyroUpdateInputsTimer.stop();
+      for (var module : modules) {
+        module.updateInputs();
+      }
+    } finally {
+      odometryLock.unlock();
+    }
+    gyroProcessInputsTimer.start();
     Logger.processInputs("Drive/Gyro", gyroIOInputs);
+    gyroProcessInputsTimer.stop();
     for (var module : modules) {
       module.peridoic();
     }
 
+    // Update controllers
+    if (tunableGains) {
+      LoggedTunableNumber.ifChanged(driveGainsTracker, updateDrivePID, driveFeedbackGains);
+      LoggedTunableNumber.ifChanged(azimuthGainsTracker, updateAzimuthPID, azimuthFeedbackGains);
+    }
+
     // Logic to run if the robot is disabled
     if (DriverStation.isDisabled()) {
       // Stop when disabled (duh)
@@ -75,35 +254,128 @@ public class Drive extends SubsystemBase {
         module.stop();
       }
 
+      // Start the next setpoint from wherever the modules ended up
+      setpointGenerator.reset(getModuleStates());
+
       // Log empty setpoints when we are disbaled
-      Logger.recordOutput("SwerveStates/Setpoints", new SwerveModuleState[] {});
-      Logger.recordOutput("SwerveStates/SetpointsOptimized", new SwerveModuleState[] {});
+      Logger.recordOutput("SwerveStates/Setpoints", EMPTY_STATES);
+      Logger.recordOutput("SwerveStates/SetpointsOptimized", EMPTY_STATES);
     }
 
-    // Read wheel positions and deltas from each module
-    SwerveModulePosition[] modulePositions = getModulePositions();
-    SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
-    for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
-      moduleDeltas[moduleIndex] =
-          new SwerveModulePosition(
-              modulePositions[moduleIndex].distanceMeters
-                  - lastModulePositions[moduleIndex].distanceMeters,
-              modulePositions[moduleIndex].angle);
-      lastModulePositions[moduleIndex] = modulePositions[moduleIndex];
-    }
+    // Replay every high-frequency sample received this cycle
+    double[] sampleTimestamps = modules[0].getOdometryTimestamps(); // All signals sampled together
+    int sampleCount = sampleTimestamps.length;
+    Arrays.fill(slipConfidences, 1.0);
+    for (int sampleIndex = 0; sampleIndex < sampleCount; sampleIndex++) {
+      // Read the robot relative module deltas
+      for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
+        SwerveModulePosition position = modules[moduleIndex].getOdometryPositions()[sampleIndex];
+        SwerveModulePosition lastPosition = lastModulePositions[moduleIndex];
+        double deltaMeters = position.distanceMeters - lastPosition.distanceMeters;
+        sampleDeltasMeters[moduleIndex] = deltaMeters;
+        sampleHeadingCos[moduleIndex] = position.angle.getCos();
+        sampleHeadingSin[moduleIndex] = position.angle.getSin();
+        sampleDeltasX[moduleIndex] = deltaMeters * sampleHeadingCos[moduleIndex];
+        sampleDeltasY[moduleIndex] = deltaMeters * sampleHeadingSin[moduleIndex];
 
-    // Update gyro angle
-    if (gyroIOInputs.connected) {
-      // Use the real gyro angle
-      rawGyroRotation = gyroIOInputs.yawPosition;
-    } else {
-      // Use the angle delta from the kinematics and module deltas
-      Twist2d twist = kinematics.toTwist2d(moduleDeltas);
-      rawGyroRotation = rawGyroRotation.plus(new Rotation2d(twist.dtheta));
+        // Copy rather than keep a reference, the module reuses its position objects
+        lastPosition.distanceMeters = position.distanceMeters;
+        lastPosition.angle = position.angle;
+      }
+
+      // Check the deltas against each other and the gyro
+      boolean hasGyroSample =
+          gyroIOInputs.connected && sampleIndex < gyroIOInputs.odometryYawPositionsRad.length;
+      double gyroDeltaRad =
+          hasGyroSample
+              ? MathUtil.angleModulus(
+                  gyroIOInputs.odometryYawPositionsRad[sampleIndex] - rawGyroRotation.getRadians())
+              : Double.NaN;
+      double sampleDt = sampleTimestamps[sampleIndex] - lastOdometryTimestamp;
+      lastOdometryTimestamp = sampleTimestamps[sampleIndex];
+      slipDetector.update(
+          sampleDeltasX, sampleDeltasY, sampleHeadingCos, sampleHeadingSin, gyroDeltaRad, sampleDt);
+
+      // Accumulate the yaw change implied by the module deltas. For a symmetric module layout the
+      // least-squares twist reduces to sum(r x d) / sum(|r|^2).
+      double twistNumerator = 0.0;
+      double twistDenominator = 0.0;
+      double totalDeltaX = 0.0;
+      double totalDeltaY = 0.0;
+      for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
+        Rotation2d moduleAngle = modules[moduleIndex].getOdometryPositions()[sampleIndex].angle;
+        double deltaMeters = sampleDeltasMeters[moduleIndex];
+        double deltaX = sampleDeltasX[moduleIndex];
+        double deltaY = sampleDeltasY[moduleIndex];
+        double weight = slipDetector.getWeight(moduleIndex);
+        slipConfidences[moduleIndex] = Math.min(slipConfidences[moduleIndex], weight);
+        if (REJECT_WHEEL_SLIP && weight < 1.0) {
+          // Blend toward the expected motion along the wheel's direction
+          double expectedMeters =
+              slipDetector.getExpectedDeltaX(moduleIndex) * moduleAngle.getCos()
+                  + slipDetector.getExpectedDeltaY(moduleIndex) * moduleAngle.getSin();
+          deltaMeters = weight * deltaMeters + (1.0 - weight) * expectedMeters;
+          deltaX = deltaMeters * moduleAngle.getCos();
+          deltaY = deltaMeters * moduleAngle.getSin();
+        }
+        totalDeltaX += deltaX;
+        totalDeltaY += deltaY;
+        twistNumerator +=
+            moduleTranslationsX[moduleIndex] * deltaY - moduleTranslationsY[moduleIndex] * deltaX;
+        twistDenominator +=
+            moduleTranslationsX[moduleIndex] * moduleTranslationsX[moduleIndex]
+                + moduleTranslationsY[moduleIndex] * moduleTranslationsY[moduleIndex];
+
+        SwerveModulePosition samplePosition = sampleModulePositions[moduleIndex];
+        samplePosition.distanceMeters += deltaMeters;
+        samplePosition.angle = moduleAngle;
+      }
+
+      // Update gyro angle
+      double lastRawGyroRad = rawGyroRotation.getRadians();
+      if (hasGyroSample) {
+        // Use the real gyro angle, keeping the last rotation if it hasn't moved
+        double yawRad = gyroIOInputs.odometryYawPositionsRad[sampleIndex];
+        if (yawRad != lastRawGyroRad) {
+          rawGyroRotation = new Rotation2d(yawRad);
+        }
+      } else if (twistNumerator != 0.0) {
+        // Use the angle delta from the kinematics and module deltas
+        rawGyroRotation =
+            new Rotation2d(
+                MathUtil.angleModulus(
+                    rawGyroRotation.getRadians() + twistNumerator / twistDenominator));
+      }
+
+      // Apply odometry update
+      Pose2d estimatedPose =
+          poseEstimator.updateWithTime(
+              sampleTimestamps[sampleIndex], rawGyroRotation, sampleModulePositions);
+
+      // Record the pose and robot relative velocity for time-indexed lookups
+      if (sampleDt > 0.0) {
+        poseHistory.addSample(
+            sampleTimestamps[sampleIndex],
+            estimatedPose,
+            totalDeltaX / 4.0 / sampleDt,
+            totalDeltaY / 4.0 / sampleDt,
+            MathUtil.angleModulus(rawGyroRotation.getRadians() - lastRawGyroRad) / sampleDt);
+      } else {
+        poseHistory.addSample(sampleTimestamps[sampleIndex], estimatedPose, 0.0, 0.0, 0.0);
+      }
     }
 
-    // Apply odometry update
-    poseEstimator.update(rawGyroRotation, modulePositions);
+    Logger.recordOutput("Drive/Slip/Confidence", slipConfidences);
+    Logger.recordOutput("Drive/Slip/ResidualMetersPerSec", slipDetector.getResidualSpeeds());
+    Logger.recordOutput("Drive/Slip/Slipping", slipDetector.getSlipping());
+    Logger.recordOutput("Drive/Slip/Events", slipDetector.getSlipEventCount());
+    Logger.recordOutput(
+        "Drive/Slip/MultipleSlipSamples", slipDetector.getMultipleSlipSampleCount());
+
+    // Apply vision after odometry so the estimator has history up to the measurement timestamps
+    visionMeasurementQueue.drain(applyVisionMeasurement);
+
+    periodicTimer.stop();
   }
 
   /**
@@ -112,13 +384,25 @@ public class Drive extends SubsystemBase {
    * @param speeds Speeds in meters/sec
    */
   public void runVelocity(ChassisSpeeds speeds) {
-    // Calculate module setpoints
-    ChassisSpeeds discreteSpeeds = ChassisSpeeds.discretize(speeds, 0.02);
-    SwerveModuleState[] setpointStates = kinematics.toSwerveModuleStates(discreteSpeeds);
-    SwerveDriveKinematics.desaturateWheelSpeeds(setpointStates, MAX_LINEAR_SPEED_MPS);
+    // Discretize the speeds (same as ChassisSpeeds.discretize, without the intermediate objects).
+    // This finds the constant-curvature twist that ends at the pose an ideal robot would reach.
+    double dtheta = speeds.omegaRadiansPerSecond * LOOP_PERIOD_S;
+    double halfDtheta = dtheta / 2.0;
+    double cosMinusOne = Math.cos(dtheta) - 1.0;
+    double halfThetaByTanOfHalfDtheta =
+        Math.abs(cosMinusOne) < 1e-9
+            ? 1.0 - dtheta * dtheta / 12.0
+            : -(halfDtheta * Math.sin(dtheta)) / cosMinusOne;
+    double dx = speeds.vxMetersPerSecond * LOOP_PERIOD_S;
+    double dy = speeds.vyMetersPerSecond * LOOP_PERIOD_S;
+    double vx = (dx * halfThetaByTanOfHalfDtheta + dy * halfDtheta) / LOOP_PERIOD_S;
+    double vy = (dy * halfThetaByTanOfHalfDtheta - dx * halfDtheta) / LOOP_PERIOD_S;
+    double omega = speeds.omegaRadiansPerSecond;
+
+    // Calculate module setpoints the modules can actually reach from the last setpoint
+    setpointGenerator.generate(vx, vy, omega, LOOP_PERIOD_S, setpointStates);
 
     // Send setpoints to modules
-    SwerveModuleState[] optimizedSetpointStates = new SwerveModuleState[4];
     for (int i = 0; i < 4; i++) {
       // The module returns the optimized state, useful for logging
       optimizedSetpointStates[i] =
@@ -132,17 +416,75 @@ public class Drive extends SubsystemBase {
 
   /** Stops the drive. */
   public void stop() {
-    runVelocity(new ChassisSpeeds());
+    runVelocity(stopSpeeds);
+  }
+
+  /** Runs every drive motor at the specified voltage with the modules pointed forward. */
+  public void runCharacterization(double volts) {
+    for (var module : modules) {
+      module.runCharacterization(volts);
+    }
+  }
+
+  /** Returns the average drive velocity of the modules in radians/sec. */
+  public double getCharacterizationVelocity() {
+    double velocity = 0.0;
+    for (var module : modules) {
+      velocity += module.getCharacterizationVelocity() / 4.0;
+    }
+    return velocity;
+  }
+
+  /** Returns the drive position of a module in meters, using the loaded wheel radius. */
+  public double getModuleDistanceMeters(int index) {
+    return modules[index].getPositionMeters();
+  }
+
+  /** Returns a module, for the sim harness to compare against the simulation. */
+  Module getModule(int index) {
+    return modules[index];
+  }
+
+  /** Returns whether the gyro is connected, otherwise its yaw is not being updated. */
+  public boolean isGyroConnected() {
+    return gyroIOInputs.connected;
   }
 
   /**
-   * Adds a vision measurement to the pose estimator.
+   * Returns the yaw rate in radians/sec, from the gyro when it's connected and from the module
+   * velocities otherwise.
+   */
+  public double getYawVelocityRadPerSec() {
+    return gyroIOInputs.connected
+        ? gyroIOInputs.yawVelocityRadPerSec
+        : getChassisSpeeds().omegaRadiansPerSecond;
+  }
+
+  /** Returns the yaw measured by the gyro, independent of the wheels and vision. */
+  public Rotation2d getGyroYaw() {
+    return gyroIOInputs.yawPosition;
+  }
+
+  /**
+   * Queues a vision measurement for the pose estimator. Safe to call from any thread, the
+   * measurement is filtered and applied during the next periodic.
+   *
+   * @param measurement The measurement, with its standard deviations.
+   */
+  public void addVisionMeasurement(VisionMeasurement measurement) {
+    visionMeasurementQueue.offer(measurement);
+  }
+
+  /**
+   * Queues a vision measurement for the pose estimator with the default standard deviations. Safe
+   * to call from any thread.
    *
    * @param visionPose The pose of the robot as measured by the vision camera.
    * @param timestamp The timestamp of the vision measurement in seconds.
    */
   public void addVisionMeasurement(Pose2d visionPose, double timestamp) {
-    poseEstimator.addVisionMeasurement(visionPose, timestamp);
+    addVisionMeasurement(
+        new VisionMeasurement(timestamp, visionPose, DEFAULT_VISION_STD_DEVS, 1, 0.0, 0.0));
   }
 
   /** Returns the current odometry pose. */
@@ -151,6 +493,19 @@ public class Drive extends SubsystemBase {
     return poseEstimator.getEstimatedPosition();
   }
 
+  /**
+   * Returns the history of estimated poses and robot relative velocities, written on every
+   * odometry sample. Only read it from the main loop.
+   */
+  public PoseHistory getPoseHistory() {
+    return poseHistory;
+  }
+
+  /** Returns the estimated pose at a past timestamp, interpolated from the pose history. */
+  public Pose2d getPoseAt(double timestampSeconds) {
+    return poseHistory.getPose(timestampSeconds).orElse(getPose());
+  }
+
   /** Returns the current odometry rotation - uses pose estimate */
   public Rotation2d getRotation() {
     return getPose().getRotation();
@@ -159,20 +514,15 @@ public class Drive extends SubsystemBase {
   /** Returns the module states (turn angles and drive velocities) for all of the modules. */
   @AutoLogOutput(key = "SwerveStates/Measured")
   private SwerveModuleState[] getModuleStates() {
-    SwerveModuleState[] states = new SwerveModuleState[4];
     for (int i = 0; i < 4; i++) {
-      states[i] = modules[i].getState();
+      moduleStates[i] = modules[i].getState();
     }
-    return states;
+    return moduleStates;
   }
 
-  /** Returns the module positions (turn angles and drive positions) for all of the modules. */
-  private SwerveModulePosition[] getModulePositions() {
-    SwerveModulePosition[] states = new SwerveModulePosition[4];
-    for (int i = 0; i < 4; i++) {
-      states[i] = modules[i].getPosition();
-    }
-    return states;
+  /** Returns the robot relative speeds measured by the module encoders. */
+  public ChassisSpeeds getChassisSpeeds() {
+    return kinematics.toChassisSpeeds(getModuleStates());
   }
 
   /** Returns the maximum linear speed in meters per sec. */
@@ -182,16 +532,25 @@ public class Drive extends SubsystemBase {
 
   /** Returns the maximum angular speed in radians per sec. */
   public double getMaxAngularSpeedRadPerSec() {
-    return MAX_ANGULAR_SPEED_MPS;
+    return MAX_LINEAR_SPEED_MPS / getDriveBaseRadiusMeters();
+  }
+
+  /** Returns the distance from the center of the robot to each module in meters. */
+  public static double getDriveBaseRadiusMeters() {
+    return Math.hypot(
+        DriveCalibration.getTrackWidthXMeters() / 2.0,
+        DriveCalibration.getTrackWidthYMeters() / 2.0);
   }
 
-  /** Returns an array of module translations. */
+  /** Returns an array of module translations, from the calibrated track widths. */
   public static Translation2d[] getModuleTranslations() {
+    double trackWidthX = DriveCalibration.getTrackWidthXMeters();
+    double trackWidthY = DriveCalibration.getTrackWidthYMeters();
     return new Translation2d[] {
-      new Translation2d(TRACK_WIDTH_X / 2.0, TRACK_WIDTH_Y / 2.0),
-      new Translation2d(TRACK_WIDTH_X / 2.0, -TRACK_WIDTH_Y / 2.0),
-      new Translation2d(-TRACK_WIDTH_X / 2.0, TRACK_WIDTH_Y / 2.0),
-      new Translation2d(-TRACK_WIDTH_X / 2.0, -TRACK_WIDTH_Y / 2.0)
+      new Translation2d(trackWidthX / 2.0, trackWidthY / 2.0),
+      new Translation2d(trackWidthX / 2.0, -trackWidthY / 2.0),
+      new Translation2d(-trackWidthX / 2.0, trackWidthY / 2.0),
+      new Translation2d(-trackWidthX / 2.0, -trackWidthY / 2.0)
     };
   }
 }
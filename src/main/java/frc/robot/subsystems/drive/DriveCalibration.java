@@ -0,0 +1,88 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.Preferences;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.Logger;
+import org.littletonrobotics.junction.inputs.LoggableInputs;
+
+/**
+ * Drive geometry that is calibrated on the robot. Values are stored in Preferences so they survive
+ * deploys, and are read once at startup by {@link #load()} and logged as inputs so replay uses the
+ * values the robot ran with. Changes only take effect after a restart. Until {@link #load()} is
+ * called the nominal values are used, which is what the simulation tools run with.
+ */
+public class DriveCalibration {
+  private static final String tableKey = "Drive/Geometry";
+  private static final String WHEEL_RADIUS_KEY = "Drive/WheelRadiusMeters";
+  private static final String TRACK_WIDTH_X_KEY = "Drive/TrackWidthXMeters";
+  private static final String TRACK_WIDTH_Y_KEY = "Drive/TrackWidthYMeters";
+
+  // Nominal values from CAD, used until the robot has been calibrated
+  // TODO Update as needed
+  static final double NOMINAL_WHEEL_RADIUS_METERS = Units.inchesToMeters(2.0);
+  static final double NOMINAL_TRACK_WIDTH_X_METERS = Units.inchesToMeters(25.0);
+  static final double NOMINAL_TRACK_WIDTH_Y_METERS = Units.inchesToMeters(25.0);
+
+  private static final GeometryInputs inputs = new GeometryInputs();
+
+  private DriveCalibration() {}
+
+  /**
+   * Reads the stored values and logs them as inputs. Call once after the logger has started and
+   * before the drive is created, since Drive and Module read the geometry when they're constructed.
+   */
+  public static void load() {
+    Preferences.initDouble(WHEEL_RADIUS_KEY, NOMINAL_WHEEL_RADIUS_METERS);
+    Preferences.initDouble(TRACK_WIDTH_X_KEY, NOMINAL_TRACK_WIDTH_X_METERS);
+    Preferences.initDouble(TRACK_WIDTH_Y_KEY, NOMINAL_TRACK_WIDTH_Y_METERS);
+    inputs.wheelRadiusMeters = Preferences.getDouble(WHEEL_RADIUS_KEY, NOMINAL_WHEEL_RADIUS_METERS);
+    inputs.trackWidthXMeters =
+        Preferences.getDouble(TRACK_WIDTH_X_KEY, NOMINAL_TRACK_WIDTH_X_METERS);
+    inputs.trackWidthYMeters =
+        Preferences.getDouble(TRACK_WIDTH_Y_KEY, NOMINAL_TRACK_WIDTH_Y_METERS);
+    Logger.processInputs(tableKey, inputs);
+  }
+
+  /** Returns the effective wheel radius in meters. */
+  public static double getWheelRadiusMeters() {
+    return inputs.wheelRadiusMeters;
+  }
+
+  /** Returns the distance between the front and back modules in meters. */
+  public static double getTrackWidthXMeters() {
+    return inputs.trackWidthXMeters;
+  }
+
+  /** Returns the distance between the left and right modules in meters. */
+  public static double getTrackWidthYMeters() {
+    return inputs.trackWidthYMeters;
+  }
+
+  /** Stores a calibrated wheel radius, used from the next restart. */
+  public static void saveWheelRadiusMeters(double wheelRadiusMeters) {
+    Preferences.setDouble(WHEEL_RADIUS_KEY, wheelRadiusMeters);
+  }
+
+  private static class GeometryInputs implements LoggableInputs {
+    private double wheelRadiusMeters = NOMINAL_WHEEL_RADIUS_METERS;
+    private double trackWidthXMeters = NOMINAL_TRACK_WIDTH_X_METERS;
+    private double trackWidthYMeters = NOMINAL_TRACK_WIDTH_Y_METERS;
+
+    @Override
+    public void toLog(LogTable table) {
+      table.put("WheelRadiusMeters", wheelRadiusMeters);
+      table.put("TrackWidthXMeters", trackWidthXMeters);
+      table.put("TrackWidthYMeters", trackWidthYMeters);
+    }
+
+    @Override
+    public void fromLog(LogTable table) {
+      wheelRadiusMeters = table.get("WheelRadiusMeters", wheelRadiusMeters);
+      trackWidthXMeters = table.get("TrackWidthXMeters", trackWidthXMeters);
+      trackWidthYMeters = table.get("TrackWidthYMeters", trackWidthYMeters);
+    }
+  }
+}
@@ -0,0 +1,236 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.commands.DriveCommands;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the drive headless, without LoggedRobot and faster than real time. Simulated time only
+ * moves when {@link #step()} is called, and all randomness comes from one seed, so the same script
+ * always produces the same result.
+ *
+ * <p>Inputs are scripted through {@link #setJoystick(double, double, double)} (read by the normal
+ * joystick drive command) or by scheduling commands. Run "./gradlew simHarness" for the built in
+ * scenario.
+ */
+public class DriveSimHarness implements AutoCloseable {
+  public static final double LOOP_PERIOD_S = 0.02;
+
+  private final SwerveDriveSim driveSim;
+  private final Drive drive;
+
+  private double joystickX = 0.0;
+  private double joystickY = 0.0;
+  private double joystickOmega = 0.0;
+
+  private long cycleCount = 0;
+  private long totalLoopNanos = 0;
+  private long maxLoopNanos = 0;
+
+  // Drive velocity tracking error against the true simulated velocity
+  private long velocitySampleCount = 0;
+  private double measuredVelocitySquaredError = 0.0;
+  private double moduleVelocitySquaredError = 0.0;
+
+  /**
+   * Creates a new harness. Only one should be open at a time since the command scheduler and
+   * simulated time are global.
+   *
+   * @param seed Seed for every random value in the simulation
+   */
+  public DriveSimHarness(long seed) {
+    HAL.initialize(500, 0);
+    SimHooks.pauseTiming();
+    SimHooks.restartTiming();
+
+    driveSim = new SwerveDriveSim(new Random(seed));
+    drive =
+        new Drive(
+            new GyroIOSim(driveSim),
+            new ModuleIOSim(driveSim, 0),
+            new ModuleIOSim(driveSim, 1),
+            new ModuleIOSim(driveSim, 2),
+            new ModuleIOSim(driveSim, 3));
+    drive.setDefaultCommand(
+        DriveCommands.joystickDrive(drive, () -> joystickX, () -> joystickY, () -> joystickOmega));
+
+    setEnabled(true);
+  }
+
+  /** Sets the values the joystick drive command reads, from -1 to 1. */
+  public void setJoystick(double x, double y, double omega) {
+    joystickX = x;
+    joystickY = y;
+    joystickOmega = omega;
+  }
+
+  /** Enables or disables the simulated robot in teleop. */
+  public void setEnabled(boolean enabled) {
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setAutonomous(false);
+    DriverStationSim.setEnabled(enabled);
+    DriverStationSim.notifyNewData();
+    DriverStation.refreshData();
+  }
+
+  /** Schedules a command, it runs starting with the next step. */
+  public void schedule(Command command) {
+    CommandScheduler.getInstance().schedule(command);
+  }
+
+  /** Advances simulated time by one loop and runs the scheduler (and so Drive.periodic) once. */
+  public void step() {
+    SimHooks.stepTiming(LOOP_PERIOD_S);
+    DriverStation.refreshData();
+
+    long startNanos = System.nanoTime();
+    CommandScheduler.getInstance().run();
+    long loopNanos = System.nanoTime() - startNanos;
+
+    cycleCount++;
+    totalLoopNanos += loopNanos;
+    maxLoopNanos = Math.max(maxLoopNanos, loopNanos);
+
+    for (int i = 0; i < 4; i++) {
+      Module module = drive.getModule(i);
+      double trueVelocity = driveSim.getDriveVelocityRadPerSec(i);
+      double measuredError = module.getCharacterizationVelocity() - trueVelocity;
+      double moduleError = module.getDriveVelocityRadPerSec() - trueVelocity;
+      measuredVelocitySquaredError += measuredError * measuredError;
+      moduleVelocitySquaredError += moduleError * moduleError;
+      velocitySampleCount++;
+    }
+  }
+
+  /** Steps for a duration of simulated time. */
+  public void run(double seconds) {
+    long steps = Math.round(seconds / LOOP_PERIOD_S);
+    for (long i = 0; i < steps; i++) {
+      step();
+    }
+  }
+
+  /**
+   * Steps until a condition is met.
+   *
+   * @return Whether the condition was met before the timeout
+   */
+  public boolean runUntil(BooleanSupplier condition, double timeoutSeconds) {
+    double endTimestamp = getTimestamp() + timeoutSeconds;
+    while (!condition.getAsBoolean()) {
+      if (getTimestamp() >= endTimestamp) {
+        return false;
+      }
+      step();
+    }
+    return true;
+  }
+
+  public Drive getDrive() {
+    return drive;
+  }
+
+  /** Returns the true simulated pose, to compare against the drive's estimate. */
+  public Pose2d getSimulatedPose() {
+    return driveSim.getPose();
+  }
+
+  /** Returns the simulated time in seconds. */
+  public double getTimestamp() {
+    return Timer.getFPGATimestamp();
+  }
+
+  public long getCycleCount() {
+    return cycleCount;
+  }
+
+  /** Returns the average wall-clock time of one step, in microseconds. */
+  public double getAverageLoopMicros() {
+    return cycleCount == 0 ? 0.0 : totalLoopNanos / 1e3 / cycleCount;
+  }
+
+  /** Returns the longest wall-clock time of one step, in microseconds. */
+  public double getMaxLoopMicros() {
+    return maxLoopNanos / 1e3;
+  }
+
+  /**
+   * Returns the RMS error of the drive velocity reported by the motor controllers against the true
+   * simulated velocity, in radians/sec.
+   */
+  public double getMeasuredVelocityRmsError() {
+    return velocitySampleCount == 0
+        ? 0.0
+        : Math.sqrt(measuredVelocitySquaredError / velocitySampleCount);
+  }
+
+  /**
+   * Returns the RMS error of the drive velocity the modules use (estimated if the estimator is
+   * enabled) against the true simulated velocity, in radians/sec.
+   */
+  public double getModuleVelocityRmsError() {
+    return velocitySampleCount == 0
+        ? 0.0
+        : Math.sqrt(moduleVelocitySquaredError / velocitySampleCount);
+  }
+
+  /** Removes the drive from the scheduler so another harness can be created. */
+  @Override
+  public void close() {
+    CommandScheduler.getInstance().cancelAll();
+    CommandScheduler.getInstance().unregisterSubsystem(drive);
+    setEnabled(false);
+  }
+
+  /**
+   * Runs the built in scenario (drive forward, strafe while turning, stop) and prints where the
+   * robot ended up, how well the modules tracked the true wheel velocity and what each loop cost.
+   *
+   * @param args Optional seed and number of runs
+   */
+  public static void main(String[] args) {
+    long seed = args.length > 0 ? Long.parseLong(args[0]) : 0;
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+    for (int run = 0; run < runs; run++) {
+      try (DriveSimHarness harness = new DriveSimHarness(seed + run)) {
+        harness.setJoystick(1.0, 0.0, 0.0);
+        harness.run(2.0);
+        harness.setJoystick(0.0, 0.5, 0.5);
+        harness.run(2.0);
+        harness.setJoystick(0.0, 0.0, 0.0);
+        harness.run(1.0);
+
+        Pose2d pose = harness.getDrive().getPose();
+        double odometryError =
+            pose.getTranslation().getDistance(harness.getSimulatedPose().getTranslation());
+        System.out.printf(
+            "Run %d (seed %d): pose (%.3f, %.3f, %.1f deg), odometry error %.3f m, drive velocity"
+                + " RMS error %.3f rad/s measured, %.3f rad/s used, %d cycles, avg %.1f us, max"
+                + " %.1f us%n",
+            run,
+            seed + run,
+            pose.getX(),
+            pose.getY(),
+            pose.getRotation().getDegrees(),
+            odometryError,
+            harness.getMeasuredVelocityRmsError(),
+            harness.getModuleVelocityRmsError(),
+            harness.getCycleCount(),
+            harness.getAverageLoopMicros(),
+            harness.getMaxLoopMicros());
+      }
+    }
+    System.exit(0);
+  }
+}
@@ -0,0 +1,316 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants.Mode;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Desktop tool that tunes the module gains against {@link SwerveDriveSim}. Every round a batch of
+ * candidate gain sets is scored in parallel, each on its own headless Drive and simulation with its
+ * own clock, spread over every core with fork-join. A candidate's score adds up settling time,
+ * overshoot, and tracking error over a few scripted maneuvers. The next round samples around the
+ * best quarter of the candidates (a cross-entropy search), and the best gains found are written to
+ * the deploy directory with {@link ModuleGains#save} for the SIM mode.
+ *
+ * <p>Run with "./gradlew tuneGains -PtunerArgs='[rounds] [candidates per round] [seed]'".
+ */
+public class GainTuner {
+  private static final double LOOP_PERIOD_S = 0.02;
+  private static final double WARMUP_S = 0.5;
+  private static final double ELITE_FRACTION = 0.25;
+  // Minimum spread of the search, as a fraction of each parameter's range
+  private static final double MIN_SPREAD = 0.01;
+
+  // A step has settled once the response stays within this fraction of the step size
+  private static final double SETTLING_BAND = 0.05;
+  private static final double SETTLING_WEIGHT = 1.0; // Per second
+  private static final double OVERSHOOT_WEIGHT = 2.0; // Per step size
+  private static final double TRACKING_WEIGHT = 5.0; // Per normalized RMS error
+
+  // Tuned parameters, the integral gains are left as they are
+  private static final int DRIVE_KS = 0;
+  private static final int DRIVE_KV = 1;
+  private static final int DRIVE_KP = 2;
+  private static final int DRIVE_KD = 3;
+  private static final int AZIMUTH_KP = 4;
+  private static final int AZIMUTH_KD = 5;
+  private static final int PARAMETER_COUNT = 6;
+  private static final double[] PARAMETER_MIN = {0.0, 0.08, 0.0, 0.0, 1.0, 0.0};
+  private static final double[] PARAMETER_MAX = {0.3, 0.2, 1.0, 0.01, 40.0, 1.0};
+
+  // Robot relative speeds {duration, vx, vy, omega}, each maneuver ends stopped
+  private static final double[][][] MANEUVERS = {
+    // Drive forward and stop
+    {{1.5, 3.0, 0.0, 0.0}, {1.0, 0.0, 0.0, 0.0}},
+    // Strafe and reverse, the modules have to flip
+    {{1.0, 0.0, 2.0, 0.0}, {1.0, 0.0, -2.0, 0.0}, {0.5, 0.0, 0.0, 0.0}},
+    // Spin in place
+    {{1.0, 0.0, 0.0, 4.0}, {1.0, 0.0, 0.0, 0.0}},
+    // Drive forward then turn the direction of travel 90 degrees
+    {{1.0, 2.0, 0.0, 0.0}, {1.0, 0.0, 2.0, 0.0}, {0.5, 0.0, 0.0, 0.0}}
+  };
+
+  private GainTuner() {}
+
+  public static void main(String[] args) throws IOException {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+    int candidatesPerRound = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+    HAL.initialize(500, 0);
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+    DriverStation.refreshData();
+
+    ModuleGains baseline = ModuleGains.load(Mode.SIM);
+    Random random = new Random(seed);
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    double[] mean = new double[PARAMETER_COUNT];
+    double[] spread = new double[PARAMETER_COUNT];
+    double[] bestParameters = toParameters(baseline);
+    double bestScore = Double.POSITIVE_INFINITY;
+    for (int round = 0; round < rounds; round++) {
+      long startNanos = System.nanoTime();
+
+      // The first round covers the whole range (plus the current gains), later rounds sample
+      // around the best candidates
+      double[][] candidates = new double[candidatesPerRound][];
+      for (int i = 0; i < candidatesPerRound; i++) {
+        if (round == 0 && i == 0) {
+          candidates[i] = toParameters(baseline);
+        } else if (round == 0) {
+          candidates[i] = sampleUniform(random);
+        } else {
+          candidates[i] = sampleNormal(random, mean, spread);
+        }
+      }
+
+      // Drives register with the command scheduler, so they have to be built on this thread
+      Trial[] trials = new Trial[candidatesPerRound];
+      for (int i = 0; i < candidatesPerRound; i++) {
+        trials[i] = new Trial(candidates[i], baseline, seed);
+      }
+      pool.invoke(new EvaluateTask(trials, 0, trials.length));
+      for (Trial trial : trials) {
+        CommandScheduler.getInstance().unregisterSubsystem(trial.drive);
+      }
+
+      Arrays.sort(trials, Comparator.comparingDouble((Trial trial) -> trial.score));
+      if (trials[0].score < bestScore) {
+        bestScore = trials[0].score;
+        bestParameters = trials[0].parameters;
+      }
+
+      int eliteCount = Math.max(2, (int) (candidatesPerRound * ELITE_FRACTION));
+      for (int p = 0; p < PARAMETER_COUNT; p++) {
+        double sum = 0.0;
+        for (int i = 0; i < eliteCount; i++) {
+          sum += trials[i].parameters[p];
+        }
+        mean[p] = sum / eliteCount;
+        double squaredSum = 0.0;
+        for (int i = 0; i < eliteCount; i++) {
+          double deviation = trials[i].parameters[p] - mean[p];
+          squaredSum += deviation * deviation;
+        }
+        spread[p] =
+            Math.max(
+                Math.sqrt(squaredSum / eliteCount),
+                MIN_SPREAD * (PARAMETER_MAX[p] - PARAMETER_MIN[p]));
+      }
+
+      System.out.printf(
+          "Round %d: best %.4f, round best %.4f, %d candidates in %.1f s%n",
+          round,
+          bestScore,
+          trials[0].score,
+          candidatesPerRound,
+          (System.nanoTime() - startNanos) / 1e9);
+    }
+    pool.shutdown();
+
+    ModuleGains best = toGains(bestParameters, baseline);
+    System.out.println("Baseline: " + baseline);
+    System.out.println("Best:     " + best);
+    ModuleGains.save(Mode.SIM, best);
+    System.out.println("Saved to the deploy directory for " + Mode.SIM);
+    System.exit(0);
+  }
+
+  /** One candidate, with its own drive and simulation. */
+  private static class Trial {
+    private final double[] parameters;
+    private final SwerveDriveSim driveSim;
+    private final Drive drive;
+    private double timestamp = 0.0;
+    private double score = Double.POSITIVE_INFINITY;
+
+    private Trial(double[] parameters, ModuleGains baseline, long seed) {
+      this.parameters = parameters;
+      // Every candidate sees the same simulated robot
+      driveSim = new SwerveDriveSim(new Random(seed), () -> timestamp);
+      drive =
+          new Drive(
+              toGains(parameters, baseline),
+              false,
+              false, // The loop timers are shared, trials running in parallel would race on them
+              new GyroIOSim(driveSim),
+              new ModuleIOSim(driveSim, 0),
+              new ModuleIOSim(driveSim, 1),
+              new ModuleIOSim(driveSim, 2),
+              new ModuleIOSim(driveSim, 3));
+    }
+
+    /** Runs every maneuver and scores the response. */
+    private void run() {
+      ChassisSpeeds stopped = new ChassisSpeeds();
+      for (int i = 0; i < Math.round(WARMUP_S / LOOP_PERIOD_S); i++) {
+        step(stopped);
+      }
+
+      double maxLinearSpeed = drive.getMaxLinearSpeedMetersPerSec();
+      double maxAngularSpeed = drive.getMaxAngularSpeedRadPerSec();
+      double total = 0.0;
+      double squaredErrorSum = 0.0;
+      int sampleCount = 0;
+      double[] previous = new double[3];
+      double[] target = new double[3];
+      double[] measured = new double[3];
+      for (double[][] maneuver : MANEUVERS) {
+        for (double[] segment : maneuver) {
+          target[0] = segment[1];
+          target[1] = segment[2];
+          target[2] = segment[3];
+          ChassisSpeeds speeds = new ChassisSpeeds(target[0], target[1], target[2]);
+
+          int steps = (int) Math.round(segment[0] / LOOP_PERIOD_S);
+          double[] overshoot = new double[3];
+          double[] lastUnsettledTime = new double[3];
+          for (int step = 0; step < steps; step++) {
+            step(speeds);
+            ChassisSpeeds measuredSpeeds = drive.getChassisSpeeds();
+            measured[0] = measuredSpeeds.vxMetersPerSecond;
+            measured[1] = measuredSpeeds.vyMetersPerSecond;
+            measured[2] = measuredSpeeds.omegaRadiansPerSecond;
+
+            for (int axis = 0; axis < 3; axis++) {
+              double scale = axis == 2 ? maxAngularSpeed : maxLinearSpeed;
+              double error = (measured[axis] - target[axis]) / scale;
+              squaredErrorSum += error * error;
+
+              double stepSize = target[axis] - previous[axis];
+              if (stepSize != 0.0) {
+                double beyondTarget = (measured[axis] - target[axis]) * Math.signum(stepSize);
+                overshoot[axis] = Math.max(overshoot[axis], beyondTarget / Math.abs(stepSize));
+                if (Math.abs(measured[axis] - target[axis])
+                    > SETTLING_BAND * Math.abs(stepSize)) {
+                  lastUnsettledTime[axis] = (step + 1) * LOOP_PERIOD_S;
+                }
+              }
+            }
+            sampleCount++;
+          }
+
+          for (int axis = 0; axis < 3; axis++) {
+            total +=
+                SETTLING_WEIGHT * lastUnsettledTime[axis] + OVERSHOOT_WEIGHT * overshoot[axis];
+          }
+          System.arraycopy(target, 0, previous, 0, 3);
+        }
+      }
+      total += TRACKING_WEIGHT * Math.sqrt(squaredErrorSum / sampleCount);
+      score = total;
+    }
+
+    /** Runs one loop in the same order as the robot (subsystem periodic, then commands). */
+    private void step(ChassisSpeeds speeds) {
+      timestamp += LOOP_PERIOD_S;
+      // Step the physics before Drive takes the (shared) odometry lock, so the expensive part of
+      // each trial runs in parallel and only the input reads are serialized
+      driveSim.update();
+      drive.periodic();
+      drive.runVelocity(speeds);
+    }
+  }
+
+  /** Splits the trials in half until each task runs a single trial. */
+  private static class EvaluateTask extends RecursiveAction {
+    private final Trial[] trials;
+    private final int start;
+    private final int end;
+
+    private EvaluateTask(Trial[] trials, int start, int end) {
+      this.trials = trials;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= 1) {
+        for (int i = start; i < end; i++) {
+          trials[i].run();
+        }
+        return;
+      }
+      int middle = (start + end) >>> 1;
+      invokeAll(new EvaluateTask(trials, start, middle), new EvaluateTask(trials, middle, end));
+    }
+  }
+
+  private static double[] sampleUniform(Random random) {
+    double[] parameters = new double[PARAMETER_COUNT];
+    for (int p = 0; p < PARAMETER_COUNT; p++) {
+      parameters[p] =
+          PARAMETER_MIN[p] + random.nextDouble() * (PARAMETER_MAX[p] - PARAMETER_MIN[p]);
+    }
+    return parameters;
+  }
+
+  private static double[] sampleNormal(Random random, double[] mean, double[] spread) {
+    double[] parameters = new double[PARAMETER_COUNT];
+    for (int p = 0; p < PARAMETER_COUNT; p++) {
+      parameters[p] =
+          Math.max(
+              PARAMETER_MIN[p],
+              Math.min(PARAMETER_MAX[p], mean[p] + spread[p] * random.nextGaussian()));
+    }
+    return parameters;
+  }
+
+  private static double[] toParameters(ModuleGains gains) {
+    double[] parameters = new double[PARAMETER_COUNT];
+    parameters[DRIVE_KS] = gains.driveKs;
+    parameters[DRIVE_KV] = gains.driveKv;
+    parameters[DRIVE_KP] = gains.driveKp;
+    parameters[DRIVE_KD] = gains.driveKd;
+    parameters[AZIMUTH_KP] = gains.azimuthKp;
+    parameters[AZIMUTH_KD] = gains.azimuthKd;
+    return parameters;
+  }
+
+  private static ModuleGains toGains(double[] parameters, ModuleGains baseline) {
+    return new ModuleGains(
+        parameters[DRIVE_KS],
+        parameters[DRIVE_KV],
+        parameters[DRIVE_KP],
+        baseline.driveKi,
+        parameters[DRIVE_KD],
+        parameters[AZIMUTH_KP],
+        baseline.azimuthKi,
+        parameters[AZIMUTH_KD]);
+  }
+}
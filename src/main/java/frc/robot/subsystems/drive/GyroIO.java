@@ -15,6 +15,10 @@ public interface GyroIO {
     public boolean connected = false;
     public Rotation2d yawPosition = new Rotation2d();
     public double yawVelocityRadPerSec = 0.0;
+
+    // High-frequency samples gathered since the last cycle
+    public double[] odometryYawTimestamps = new double[] {};
+    public double[] odometryYawPositionsRad = new double[] {};
   }
 
   /** Updates the set of loggable inputs. */
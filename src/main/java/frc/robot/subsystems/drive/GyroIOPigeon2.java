@@ -4,35 +4,61 @@
 
 package frc.robot.subsystems.drive;
 
-import com.ctre.phoenix6.BaseStatusSignal;
-import com.ctre.phoenix6.StatusCode;
 import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.Pigeon2Configuration;
 import com.ctre.phoenix6.hardware.Pigeon2;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.util.Units;
+import frc.robot.util.can.PhoenixSignals;
+import java.util.Queue;
 
 /** GyroIO hardware implementation for a CTRE Pigeon2 */
 public class GyroIOPigeon2 implements GyroIO {
+  private static final double YAW_VELOCITY_FREQUENCY_HZ = 50.0;
+
   // TODO Update
   private Pigeon2 pigeon = new Pigeon2(0, "");
 
   private final StatusSignal<Double> yaw = pigeon.getYaw();
   private final StatusSignal<Double> yawVelocity = pigeon.getAngularVelocityZWorld();
+  private final Queue<Double> yawPositionQueue;
+  private final Queue<Double> yawTimestampQueue;
 
   public GyroIOPigeon2() {
     pigeon.getConfigurator().apply(new Pigeon2Configuration());
     pigeon.getConfigurator().setYaw(0.0);
 
-    yaw.setUpdateFrequency(100.0);
-    yawVelocity.setUpdateFrequency(100.0);
+    yaw.setUpdateFrequency(OdometryThread.ODOMETRY_FREQUENCY_HZ);
+    yawVelocity.setUpdateFrequency(YAW_VELOCITY_FREQUENCY_HZ);
 
     pigeon.optimizeBusUtilization();
+
+    // Yaw is also refreshed by the odometry thread, but never at the same time since both happen
+    // under Drive.odometryLock
+    PhoenixSignals.register(YAW_VELOCITY_FREQUENCY_HZ, yawVelocity);
+    PhoenixSignals.register(OdometryThread.ODOMETRY_FREQUENCY_HZ, yaw);
+
+    yawTimestampQueue = OdometryThread.getInstance().makeTimestampQueue();
+    yawPositionQueue =
+        OdometryThread.getInstance().registerSignal(() -> yaw.refresh().getValueAsDouble());
   }
 
   @Override
   public void updateInputs(GyroIOInputs inputs) {
-    inputs.connected = BaseStatusSignal.refreshAll(yaw, yawVelocity).equals(StatusCode.OK);
+    // Refreshed together with every other Phoenix signal by PhoenixSignals.refreshAll()
+    inputs.connected = yaw.getStatus().isOK() && yawVelocity.getStatus().isOK();
     inputs.yawPosition = Rotation2d.fromDegrees(yaw.getValueAsDouble());
-    inputs.yawVelocityRadPerSec = yawVelocity.getValueAsDouble();
+    inputs.yawVelocityRadPerSec = Units.degreesToRadians(yawVelocity.getValueAsDouble());
+
+    // Polled straight into primitives, both queues are filled together under the odometry lock
+    int sampleCount = yawTimestampQueue.size();
+    inputs.odometryYawTimestamps = new double[sampleCount];
+    inputs.odometryYawPositionsRad = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryYawTimestamps[i] = yawTimestampQueue.poll();
+      inputs.odometryYawPositionsRad[i] = Units.degreesToRadians(yawPositionQueue.poll());
+    }
+    yawTimestampQueue.clear();
+    yawPositionQueue.clear();
   }
 }
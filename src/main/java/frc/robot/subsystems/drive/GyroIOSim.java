@@ -0,0 +1,46 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/** Simulated gyro that reads the chassis heading from a {@link SwerveDriveSim}. */
+public class GyroIOSim implements GyroIO {
+  private final SwerveDriveSim driveSim;
+  private long lastSampleGeneration = 0;
+  private double lastYawRad = Double.NaN;
+
+  /**
+   * Creates a new GyroIOSim.
+   *
+   * @param driveSim Drivetrain simulation shared with the modules
+   */
+  public GyroIOSim(SwerveDriveSim driveSim) {
+    this.driveSim = driveSim;
+  }
+
+  @Override
+  public void updateInputs(GyroIOInputs inputs) {
+    driveSim.update();
+
+    // Only report samples the gyro hasn't seen yet
+    int sampleCount = 0;
+    if (driveSim.getSampleGeneration() != lastSampleGeneration) {
+      lastSampleGeneration = driveSim.getSampleGeneration();
+      sampleCount = driveSim.getSampleCount();
+    }
+    inputs.odometryYawTimestamps = new double[sampleCount];
+    inputs.odometryYawPositionsRad = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryYawTimestamps[i] = driveSim.getSampleTimestamp(i);
+      inputs.odometryYawPositionsRad[i] = driveSim.getSampleYawRad(i);
+    }
+
+    inputs.connected = true;
+    if (driveSim.getYawRad() != lastYawRad) {
+      lastYawRad = driveSim.getYawRad();
+      inputs.yawPosition = new Rotation2d(lastYawRad);
+    }
+    inputs.yawVelocityRadPerSec = driveSim.getYawRateRadPerSec();
+  }
+}
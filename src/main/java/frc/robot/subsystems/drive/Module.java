@@ -4,171 +4,290 @@
 
 package frc.robot.subsystems.drive;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import frc.robot.Constants;
-import frc.robot.util.debugging.LoggedTunableNumber;
+import frc.robot.util.VelocityEstimator;
+import frc.robot.util.debugging.LoopProfiler;
+import frc.robot.util.debugging.LoopTimer;
 import org.littletonrobotics.junction.Logger;
 
 /** Class to represent a swerve module */
 public class Module {
-  private static final double WHEEL_RADIUS_METERS = 2.0 * Math.PI * (5.08 / 100);
+  // Run the feedback loops on the motor controllers (1 kHz) instead of in this loop (50 Hz)
+  private static final boolean USE_ONBOARD_CONTROL = true;
+  // Estimate velocity from position and volts instead of using the SparkMax's filtered velocity,
+  // which lags by the measurement window plus the age of the status frame. Off until the kA
+  // values below are characterized, the model is only as good as its constants
+  private static final boolean USE_VELOCITY_ESTIMATOR = false;
+  // TODO Update as needed, drive kA includes a quarter of the robot mass at the wheel
+  private static final double DRIVE_KA = 0.025; // Volts per rad/s^2 of the wheel
+  private static final double AZIMUTH_KV = 0.43; // Volts per rad/s of the module
+  private static final double AZIMUTH_KA = 0.0009; // Volts per rad/s^2 of the module
+  // One hall sensor count (42 per motor rotation) through the gearing, as a standard deviation
+  private static final double DRIVE_POSITION_STD_DEV_RAD = 0.0064;
+  private static final double AZIMUTH_POSITION_STD_DEV_RAD = 0.002;
+  // Acceleration the model doesn't predict (collisions, carpet), tuned in the sim harness
+  private static final double DRIVE_ACCELERATION_STD_DEV = 200.0;
+  private static final double AZIMUTH_ACCELERATION_STD_DEV = 400.0;
+  // Without samples for this long the estimate restarts from the measured velocity
+  private static final double MAX_ESTIMATOR_GAP_S = 0.1;
+  // Headroom above the odometry queue capacity, the pool only grows if this is exceeded
+  private static final int INITIAL_ODOMETRY_CAPACITY = 32;
 
   private ModuleIO moduleIO;
   private ModuleIOInputsAutoLogged moduleIOInputs = new ModuleIOInputsAutoLogged();
   private final int INDEX;
+  // Read when the module is created, after the calibration has been loaded
+  private final double wheelRadiusMeters = DriveCalibration.getWheelRadiusMeters();
+
+  // Log keys are built once so the loop doesn't concatenate strings every cycle
+  private final String logKey;
+  private final String azimuthSetpointKey;
+  private final String azimuthErrorKey;
+  private final String azimuthOutputKey;
+  private final String estimatedDriveVelocityKey;
+  private final String estimatedAzimuthVelocityKey;
+
+  private final LoopTimer updateInputsTimer;
+  private final LoopTimer processInputsTimer;
 
   private SimpleMotorFeedforward driveFeedforward;
   private PIDController driveFeedback;
   private PIDController azimuthFeedback;
-  private Rotation2d angleSetpoint = null; // Setpoint for closed loop control, null for open loop
-  private Double speedSetpoint = null; // Setpoint for closed loop control, null for open loop
-
-  private Rotation2d azimuthRelativeOffset = null; // Relative + Offset = Absolute
-
-  private LoggedTunableNumber driveFeedbackP;
-  private LoggedTunableNumber driveFeedbackI;
-  private LoggedTunableNumber driveFeedbackD;
-
-  private LoggedTunableNumber azimuthFeedbackP;
-  private LoggedTunableNumber azimuthFeedbackI;
-  private LoggedTunableNumber azimuthFeedbackD;
+  private final VelocityEstimator driveVelocityEstimator;
+  private final VelocityEstimator azimuthVelocityEstimator =
+      new VelocityEstimator(
+          0.0,
+          AZIMUTH_KV,
+          AZIMUTH_KA,
+          AZIMUTH_POSITION_STD_DEV_RAD,
+          AZIMUTH_ACCELERATION_STD_DEV,
+          true);
+  private double lastEstimateTimestamp = Double.NEGATIVE_INFINITY;
+  private boolean hasAngleSetpoint = false; // Closed loop turn control when true, open otherwise
+  private double angleSetpointRad = 0.0;
+  private boolean hasSpeedSetpoint = false; // Closed loop drive control when true, open otherwise
+  private double speedSetpointMetersPerSec = 0.0;
+
+  private boolean hasAzimuthRelativeOffset = false;
+  private double azimuthRelativeOffsetRad = 0.0; // Relative + Offset = Absolute
+  private double angleRad = 0.0;
+
+  // Reused between cycles, only reallocated when the value they hold actually changes
+  private Rotation2d angle = new Rotation2d();
+  private final SwerveModulePosition position = new SwerveModulePosition();
+  private final SwerveModuleState state = new SwerveModuleState();
+  private final SwerveModuleState optimizedSetpoint = new SwerveModuleState();
+  private SwerveModulePosition[] odometryPositions = createPositions(INITIAL_ODOMETRY_CAPACITY);
 
   public Module(ModuleIO io, int index) {
+    this(io, index, ModuleGains.load(Constants.currentMode), true);
+  }
+
+  /** Creates a module with the given gains, only recording loop times if profiled. */
+  Module(ModuleIO io, int index, ModuleGains gains, boolean profiled) {
     moduleIO = io;
     INDEX = index;
 
-    // Switch constants based on mode (the physics simulator is treated as a
-    // separate robot with different tuning)
-    switch (Constants.currentMode) {
-      case REAL:
-        driveFeedforward = new SimpleMotorFeedforward(0.1, 0.13);
-        driveFeedback = new PIDController(0.1, 0.0, 0.0);
-        azimuthFeedback = new PIDController(10.0, 0.0, 0.0);
-
-        break;
-      case SIM:
-        driveFeedforward = new SimpleMotorFeedforward(0.0, 0.13);
-        driveFeedback = new PIDController(0.1, 0.0, 0.0);
-        azimuthFeedback = new PIDController(10.0, 0.0, 0.0);
-
-        break;
-      case REPLAY:
-        driveFeedforward = new SimpleMotorFeedforward(0.1, 0.13);
-        driveFeedback = new PIDController(0.05, 0.0, 0.0);
-        azimuthFeedback = new PIDController(7.0, 0.0, 0.0);
-
-        break;
-      default:
-        driveFeedforward = new SimpleMotorFeedforward(0.0, 0.0);
-        driveFeedback = new PIDController(0.0, 0.0, 0.0);
-        azimuthFeedback = new PIDController(0.0, 0.0, 0.0);
-
-        break;
-    }
-
-    driveFeedbackP = new LoggedTunableNumber("Drive/Tuning/DriveP", driveFeedback.getP());
-    driveFeedbackI = new LoggedTunableNumber("Drive/Tuning/DriveI", driveFeedback.getI());
-    driveFeedbackD = new LoggedTunableNumber("Drive/Tuning/DriveD", driveFeedback.getD());
-
-    azimuthFeedbackP = new LoggedTunableNumber("Drive/Tuning/AzimuthP", azimuthFeedback.getP());
-    azimuthFeedbackI = new LoggedTunableNumber("Drive/Tuning/AzimuthI", azimuthFeedback.getI());
-    azimuthFeedbackD = new LoggedTunableNumber("Drive/Tuning/AzimuthD", azimuthFeedback.getD());
+    logKey = "Drive/Module" + Integer.toString(INDEX);
+    azimuthSetpointKey = logKey + "/AzimuthSetpoint";
+    azimuthErrorKey = logKey + "/AzimuthError";
+    azimuthOutputKey = logKey + "/AzimuthOutput";
+    estimatedDriveVelocityKey = logKey + "/EstimatedDriveVelocityRadPerSec";
+    estimatedAzimuthVelocityKey = logKey + "/EstimatedAzimuthVelocityRadPerSec";
+
+    updateInputsTimer =
+        profiled
+            ? LoopProfiler.getTimer(logKey + "/UpdateInputs")
+            : LoopProfiler.getDisabledTimer();
+    processInputsTimer =
+        profiled
+            ? LoopProfiler.getTimer(logKey + "/ProcessInputs")
+            : LoopProfiler.getDisabledTimer();
+
+    driveFeedforward = new SimpleMotorFeedforward(gains.driveKs, gains.driveKv);
+    driveFeedback = new PIDController(gains.driveKp, gains.driveKi, gains.driveKd);
+    azimuthFeedback = new PIDController(gains.azimuthKp, gains.azimuthKi, gains.azimuthKd);
+    driveVelocityEstimator =
+        new VelocityEstimator(
+            gains.driveKs,
+            gains.driveKv,
+            DRIVE_KA,
+            DRIVE_POSITION_STD_DEV_RAD,
+            DRIVE_ACCELERATION_STD_DEV,
+            false);
 
     azimuthFeedback.enableContinuousInput(-Math.PI, Math.PI);
+    setDrivePID(driveFeedback.getP(), driveFeedback.getI(), driveFeedback.getD());
+    setAzimuthPID(azimuthFeedback.getP(), azimuthFeedback.getI(), azimuthFeedback.getD());
     setBrakeMode(true);
   }
 
+  /**
+   * Update inputs without running the rest of the periodic logic. This is useful since these
+   * updates need to be properly thread-locked.
+   */
+  public void updateInputs() {
+    updateInputsTimer.start();
+    moduleIO.updateInputs(moduleIOInputs);
+    updateInputsTimer.stop();
+  }
+
   /** Method called in subsystem periodic */
   public void peridoic() {
-    moduleIO.updateInputs(moduleIOInputs);
-    Logger.processInputs("Drive/Module" + Integer.toString(INDEX), moduleIOInputs);
+    processInputsTimer.start();
+    Logger.processInputs(logKey, moduleIOInputs);
+    processInputsTimer.stop();
 
     // On first cycle, reset relative turn encoder
     // Wait until absolute angle is nonzero in case it wasn't initialized yet
-    if (azimuthRelativeOffset == null
-        && moduleIOInputs.azimuthAbsolutePosition.getRadians() != 0.0) {
-      azimuthRelativeOffset =
-          moduleIOInputs.azimuthAbsolutePosition.minus(moduleIOInputs.azimuthPosition);
+    if (!hasAzimuthRelativeOffset && moduleIOInputs.azimuthAbsolutePosition.getRadians() != 0.0) {
+      azimuthRelativeOffsetRad =
+          moduleIOInputs.azimuthAbsolutePosition.getRadians()
+              - moduleIOInputs.azimuthPosition.getRadians();
+      hasAzimuthRelativeOffset = true;
+    }
+
+    // Apply the offset once per cycle, everything below reads the cached angle
+    angleRad =
+        hasAzimuthRelativeOffset
+            ? MathUtil.angleModulus(
+                moduleIOInputs.azimuthPosition.getRadians() + azimuthRelativeOffsetRad)
+            : 0.0;
+    angle = reuseRotation(angle, angleRad);
+
+    if (USE_VELOCITY_ESTIMATOR) {
+      updateVelocityEstimators();
     }
 
     // Run closed loop turn control
-    if (angleSetpoint != null) {
-      moduleIO.setAzimuthVolts(
-          // Must call getAngle() and not directly from inputs since getAngle() applies the offset
-          azimuthFeedback.calculate(getAngle().getRadians(), angleSetpoint.getRadians()));
-
-      Logger.recordOutput(
-          "Drive/Module" + Integer.toString(INDEX) + "/AzimuthSetpoint",
-          azimuthFeedback.getSetpoint());
-      Logger.recordOutput(
-          "Drive/Module" + Integer.toString(INDEX) + "/AzimuthError",
-          azimuthFeedback.getPositionError());
-      Logger.recordOutput(
-          "Drive/Module" + Integer.toString(INDEX) + "/AzimuthOutput",
-          azimuthFeedback.calculate(getAngle().getRadians(), angleSetpoint.getRadians()));
+    if (hasAngleSetpoint) {
+      double azimuthError;
+      if (USE_ONBOARD_CONTROL) {
+        // The motor controller works in the relative encoder's frame, so remove the offset
+        moduleIO.setAzimuthPosition(angleSetpointRad - azimuthRelativeOffsetRad);
+        azimuthError = MathUtil.angleModulus(angleSetpointRad - angleRad);
+
+        Logger.recordOutput(azimuthSetpointKey, angleSetpointRad);
+        Logger.recordOutput(azimuthErrorKey, azimuthError);
+      } else {
+        double azimuthOutput = azimuthFeedback.calculate(angleRad, angleSetpointRad);
+        moduleIO.setAzimuthVolts(azimuthOutput);
+        azimuthError = azimuthFeedback.getPositionError();
+
+        Logger.recordOutput(azimuthSetpointKey, azimuthFeedback.getSetpoint());
+        Logger.recordOutput(azimuthErrorKey, azimuthError);
+        Logger.recordOutput(azimuthOutputKey, azimuthOutput);
+      }
 
       // Run closed loop drive control
       // Only allowed if closed loop turn control is running
-      if (speedSetpoint != null) {
+      if (hasSpeedSetpoint) {
         // Scale velocity based on turn error
         //
         // When the error is 90°, the velocity setpoint should be 0. As the wheel turns
         // towards the setpoint, its velocity should increase. This is achieved by
         // taking the component of the velocity in the direction of the setpoint.
-        double adjustSpeedSetpoint = speedSetpoint * Math.cos(azimuthFeedback.getPositionError());
+        double adjustSpeedSetpoint = speedSetpointMetersPerSec * Math.cos(azimuthError);
 
         // Run drive controller
-        double velocityRadPerSec = adjustSpeedSetpoint / WHEEL_RADIUS_METERS;
-        moduleIO.setDriveVolts(
-            driveFeedforward.calculate(velocityRadPerSec)
-                + driveFeedback.calculate(
-                    moduleIOInputs.driveVelocityRadPerSec, velocityRadPerSec));
+        double velocityRadPerSec = adjustSpeedSetpoint / wheelRadiusMeters;
+        if (USE_ONBOARD_CONTROL) {
+          moduleIO.setDriveVelocity(
+              velocityRadPerSec, driveFeedforward.calculate(velocityRadPerSec));
+        } else {
+          moduleIO.setDriveVolts(
+              driveFeedforward.calculate(velocityRadPerSec)
+                  + driveFeedback.calculate(getDriveVelocityRadPerSec(), velocityRadPerSec));
+        }
       }
     }
 
-    // Update controllers
-    if (Constants.debuggingMode) {
-      LoggedTunableNumber.ifChanged(
-          hashCode(),
-          () -> setDrivePID(driveFeedbackP.get(), driveFeedbackI.get(), driveFeedbackD.get()),
-          driveFeedbackP,
-          driveFeedbackI,
-          driveFeedbackD);
-      LoggedTunableNumber.ifChanged(
-          hashCode(),
-          () ->
-              setAzimuthPID(azimuthFeedbackP.get(), azimuthFeedbackI.get(), azimuthFeedbackD.get()),
-          azimuthFeedbackP,
-          azimuthFeedbackI,
-          azimuthFeedbackD);
+    // Calculate positions for odometry
+    int sampleCount = moduleIOInputs.odometryTimestamps.length; // All signals are sampled together
+    if (sampleCount > odometryPositions.length) {
+      odometryPositions = createPositions(sampleCount);
+    }
+    for (int i = 0; i < sampleCount; i++) {
+      SwerveModulePosition odometryPosition = odometryPositions[i];
+      odometryPosition.distanceMeters =
+          moduleIOInputs.odometryDrivePositionsRad[i] * wheelRadiusMeters;
+      odometryPosition.angle =
+          reuseRotation(
+              odometryPosition.angle,
+              hasAzimuthRelativeOffset
+                  ? MathUtil.angleModulus(
+                      moduleIOInputs.odometryAzimuthPositionsRad[i] + azimuthRelativeOffsetRad)
+                  : moduleIOInputs.odometryAzimuthPositionsRad[i]);
+    }
+  }
+
+  /**
+   * Runs the velocity estimators on every odometry sample received this cycle, since those are the
+   * freshest positions. The applied volts are only read once per cycle so they're held across the
+   * samples.
+   */
+  private void updateVelocityEstimators() {
+    int sampleCount = moduleIOInputs.odometryTimestamps.length;
+    for (int i = 0; i < sampleCount; i++) {
+      double timestamp = moduleIOInputs.odometryTimestamps[i];
+      double drivePositionRad = moduleIOInputs.odometryDrivePositionsRad[i];
+      double azimuthPositionRad = moduleIOInputs.odometryAzimuthPositionsRad[i];
+      double dt = timestamp - lastEstimateTimestamp;
+      if (dt > MAX_ESTIMATOR_GAP_S) {
+        driveVelocityEstimator.reset(drivePositionRad, moduleIOInputs.driveVelocityRadPerSec);
+        azimuthVelocityEstimator.reset(
+            azimuthPositionRad, moduleIOInputs.azimuthVelocityRadPerSec);
+      } else {
+        driveVelocityEstimator.update(drivePositionRad, moduleIOInputs.driveAppliedVolts, dt);
+        azimuthVelocityEstimator.update(
+            azimuthPositionRad, moduleIOInputs.azimuthAppliedVolts, dt);
+      }
+      lastEstimateTimestamp = timestamp;
     }
+    Logger.recordOutput(estimatedDriveVelocityKey, getDriveVelocityRadPerSec());
+    Logger.recordOutput(estimatedAzimuthVelocityKey, getAzimuthVelocityRadPerSec());
   }
 
-  /** Runs the module with the specified setpoint state. Returns the optimized state. */
-  public SwerveModuleState runSetpoint(SwerveModuleState state) {
-    // Optimize state based on current angle
-    // Controllers run in "periodic" when the setpoint is not null
-    var optimizedState = SwerveModuleState.optimize(state, getAngle());
+  /**
+   * Runs the module with the specified setpoint state. Returns the optimized state, which is reused
+   * between calls.
+   */
+  public SwerveModuleState runSetpoint(SwerveModuleState setpoint) {
+    // Optimize state based on current angle, flipping the wheel instead of turning past 90°
+    double desiredAngleRad = setpoint.angle.getRadians();
+    if (Math.abs(MathUtil.angleModulus(desiredAngleRad - angleRad)) > Math.PI / 2.0) {
+      optimizedSetpoint.speedMetersPerSecond = -setpoint.speedMetersPerSecond;
+      optimizedSetpoint.angle =
+          reuseRotation(optimizedSetpoint.angle, MathUtil.angleModulus(desiredAngleRad + Math.PI));
+    } else {
+      optimizedSetpoint.speedMetersPerSecond = setpoint.speedMetersPerSecond;
+      optimizedSetpoint.angle = setpoint.angle;
+    }
 
     // Update setpoints, controllers run in "periodic"
-    angleSetpoint = optimizedState.angle;
-    speedSetpoint = optimizedState.speedMetersPerSecond;
+    angleSetpointRad = optimizedSetpoint.angle.getRadians();
+    hasAngleSetpoint = true;
+    speedSetpointMetersPerSec = optimizedSetpoint.speedMetersPerSecond;
+    hasSpeedSetpoint = true;
 
-    return optimizedState;
+    return optimizedSetpoint;
   }
 
   /** Runs the module with the specified voltage while controlling to zero degrees. */
   public void runCharacterization(double volts) {
     // Closed loop turn control
-    angleSetpoint = new Rotation2d();
+    angleSetpointRad = 0.0;
+    hasAngleSetpoint = true;
 
     // Open loop drive control
     moduleIO.setDriveVolts(volts);
-    speedSetpoint = null;
+    hasSpeedSetpoint = false;
   }
 
   /** Disables all outputs to motors. */
@@ -177,8 +296,8 @@ public class Module {
     moduleIO.setDriveVolts(0.0);
 
     // Disable closed loop control for turn and drive
-    angleSetpoint = null;
-    speedSetpoint = null;
+    hasAngleSetpoint = false;
+    hasSpeedSetpoint = false;
   }
 
   /** Sets whether brake mode is enabled. */
@@ -187,51 +306,106 @@ public class Module {
     moduleIO.setAzimuthBreak(enabled);
   }
 
-  /** Sets the PID gains for drive feedback */
-  private void setDrivePID(double kP, double kI, double kD) {
+  /** Sets the PID gains for drive feedback, on whichever side runs the loop */
+  void setDrivePID(double kP, double kI, double kD) {
     driveFeedback.setP(kP);
     driveFeedback.setI(kI);
     driveFeedback.setD(kD);
+    if (USE_ONBOARD_CONTROL) {
+      moduleIO.setDrivePID(kP, kI, kD);
+    }
   }
 
-  /** Sets the PID gains for azimuth feedback */
-  private void setAzimuthPID(double kP, double kI, double kD) {
+  /** Sets the PID gains for azimuth feedback, on whichever side runs the loop */
+  void setAzimuthPID(double kP, double kI, double kD) {
     azimuthFeedback.setP(kP);
     azimuthFeedback.setI(kI);
     azimuthFeedback.setD(kD);
+    if (USE_ONBOARD_CONTROL) {
+      moduleIO.setAzimuthPID(kP, kI, kD);
+    }
   }
 
   /** Returns the current turn angle of the module. */
   public Rotation2d getAngle() {
-    if (azimuthRelativeOffset == null) {
-      return new Rotation2d();
-    } else {
-      return moduleIOInputs.azimuthPosition.plus(azimuthRelativeOffset);
-    }
+    return angle;
   }
 
   /** Returns the current drive position of the module in meters. */
   public double getPositionMeters() {
-    return moduleIOInputs.drivePositionRad * WHEEL_RADIUS_METERS;
+    return moduleIOInputs.drivePositionRad * wheelRadiusMeters;
   }
 
   /** Returns the current drive velocity of the module in meters per second. */
   public double getVelocityMetersPerSec() {
-    return moduleIOInputs.driveVelocityRadPerSec * WHEEL_RADIUS_METERS;
+    return getDriveVelocityRadPerSec() * wheelRadiusMeters;
   }
 
-  /** Returns the module position (turn angle and drive position). */
+  /** Returns the drive velocity in radians/sec, estimated if the estimator is enabled. */
+  public double getDriveVelocityRadPerSec() {
+    return USE_VELOCITY_ESTIMATOR && driveVelocityEstimator.hasEstimate()
+        ? driveVelocityEstimator.getVelocity()
+        : moduleIOInputs.driveVelocityRadPerSec;
+  }
+
+  /** Returns the azimuth velocity in radians/sec, estimated if the estimator is enabled. */
+  public double getAzimuthVelocityRadPerSec() {
+    return USE_VELOCITY_ESTIMATOR && azimuthVelocityEstimator.hasEstimate()
+        ? azimuthVelocityEstimator.getVelocity()
+        : moduleIOInputs.azimuthVelocityRadPerSec;
+  }
+
+  /**
+   * Returns the module position (turn angle and drive position). The returned object is reused
+   * between calls, copy it if it needs to outlive the cycle.
+   */
   public SwerveModulePosition getPosition() {
-    return new SwerveModulePosition(getPositionMeters(), getAngle());
+    position.distanceMeters = getPositionMeters();
+    position.angle = angle;
+    return position;
   }
 
-  /** Returns the module state (turn angle and drive velocity). */
+  /**
+   * Returns the module state (turn angle and drive velocity). The returned object is reused between
+   * calls, copy it if it needs to outlive the cycle.
+   */
   public SwerveModuleState getState() {
-    return new SwerveModuleState(getVelocityMetersPerSec(), getAngle());
+    state.speedMetersPerSecond = getVelocityMetersPerSec();
+    state.angle = angle;
+    return state;
+  }
+
+  /**
+   * Returns the module positions received this cycle. The array is a reused pool, only the first
+   * {@code getOdometryTimestamps().length} entries are valid.
+   */
+  public SwerveModulePosition[] getOdometryPositions() {
+    return odometryPositions;
+  }
+
+  /** Returns the timestamps of the samples received this cycle. */
+  public double[] getOdometryTimestamps() {
+    return moduleIOInputs.odometryTimestamps;
   }
 
-  /** Returns the drive velocity in radians/sec. */
+  /**
+   * Returns the drive velocity in radians/sec as measured by the motor controller. Characterization
+   * fits the motor model, so it can't use the estimate that is built on that model.
+   */
   public double getCharacterizationVelocity() {
     return moduleIOInputs.driveVelocityRadPerSec;
   }
+
+  /** Returns the cached rotation if it already holds the angle, otherwise a new rotation. */
+  private static Rotation2d reuseRotation(Rotation2d cached, double radians) {
+    return cached.getRadians() == radians ? cached : new Rotation2d(radians);
+  }
+
+  private static SwerveModulePosition[] createPositions(int count) {
+    SwerveModulePosition[] positions = new SwerveModulePosition[count];
+    for (int i = 0; i < count; i++) {
+      positions[i] = new SwerveModulePosition();
+    }
+    return positions;
+  }
 }
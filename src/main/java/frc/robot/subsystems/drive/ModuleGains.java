@@ -0,0 +1,124 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.Mode;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Feedforward and feedback gains for the swerve modules. Gains are read from "module_gains.json"
+ * in the deploy directory (written by {@link GainTuner}), with one entry per robot mode, and fall
+ * back to the defaults below when the file or the entry is missing.
+ */
+public class ModuleGains {
+  private static final String FILE_NAME = "module_gains.json";
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  public final double driveKs;
+  public final double driveKv;
+  public final double driveKp;
+  public final double driveKi;
+  public final double driveKd;
+  public final double azimuthKp;
+  public final double azimuthKi;
+  public final double azimuthKd;
+
+  public ModuleGains(
+      double driveKs,
+      double driveKv,
+      double driveKp,
+      double driveKi,
+      double driveKd,
+      double azimuthKp,
+      double azimuthKi,
+      double azimuthKd) {
+    this.driveKs = driveKs;
+    this.driveKv = driveKv;
+    this.driveKp = driveKp;
+    this.driveKi = driveKi;
+    this.driveKd = driveKd;
+    this.azimuthKp = azimuthKp;
+    this.azimuthKi = azimuthKi;
+    this.azimuthKd = azimuthKd;
+  }
+
+  /**
+   * Returns the hand tuned gains for a mode (the physics simulator is treated as a separate robot
+   * with different tuning).
+   */
+  public static ModuleGains getDefault(Mode mode) {
+    switch (mode) {
+      case REAL:
+        return new ModuleGains(0.1, 0.13, 0.1, 0.0, 0.0, 10.0, 0.0, 0.0);
+      case SIM:
+        return new ModuleGains(0.0, 0.13, 0.1, 0.0, 0.0, 10.0, 0.0, 0.0);
+      case REPLAY:
+        return new ModuleGains(0.1, 0.13, 0.05, 0.0, 0.0, 7.0, 0.0, 0.0);
+      default:
+        return new ModuleGains(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+    }
+  }
+
+  /** Returns the gains stored for a mode, or the defaults if none are stored. */
+  public static ModuleGains load(Mode mode) {
+    ModuleGains defaults = getDefault(mode);
+    File file = getFile();
+    if (!file.exists()) {
+      return defaults;
+    }
+    try {
+      JsonNode node = mapper.readTree(file).get(mode.name());
+      if (node == null) {
+        return defaults;
+      }
+      return new ModuleGains(
+          node.path("driveKs").asDouble(defaults.driveKs),
+          node.path("driveKv").asDouble(defaults.driveKv),
+          node.path("driveKp").asDouble(defaults.driveKp),
+          node.path("driveKi").asDouble(defaults.driveKi),
+          node.path("driveKd").asDouble(defaults.driveKd),
+          node.path("azimuthKp").asDouble(defaults.azimuthKp),
+          node.path("azimuthKi").asDouble(defaults.azimuthKi),
+          node.path("azimuthKd").asDouble(defaults.azimuthKd));
+    } catch (IOException e) {
+      DriverStation.reportWarning("Failed to read " + FILE_NAME + ", using default gains", false);
+      return defaults;
+    }
+  }
+
+  /** Stores the gains for a mode, keeping the entries for the other modes. */
+  public static void save(Mode mode, ModuleGains gains) throws IOException {
+    File file = getFile();
+    JsonNode existing = file.exists() ? mapper.readTree(file) : null;
+    ObjectNode root =
+        existing instanceof ObjectNode ? (ObjectNode) existing : mapper.createObjectNode();
+
+    ObjectNode node = root.putObject(mode.name());
+    node.put("driveKs", gains.driveKs);
+    node.put("driveKv", gains.driveKv);
+    node.put("driveKp", gains.driveKp);
+    node.put("driveKi", gains.driveKi);
+    node.put("driveKd", gains.driveKd);
+    node.put("azimuthKp", gains.azimuthKp);
+    node.put("azimuthKi", gains.azimuthKi);
+    node.put("azimuthKd", gains.azimuthKd);
+    mapper.writerWithDefaultPrettyPrinter().writeValue(file, root);
+  }
+
+  private static File getFile() {
+    return new File(Filesystem.getDeployDirectory(), FILE_NAME);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "drive kS %.4f kV %.4f kP %.4f kI %.4f kD %.4f, azimuth kP %.3f kI %.3f kD %.4f",
+        driveKs, driveKv, driveKp, driveKi, driveKd, azimuthKp, azimuthKi, azimuthKd);
+  }
+}
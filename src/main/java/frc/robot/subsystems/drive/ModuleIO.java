@@ -27,6 +27,11 @@ public interface ModuleIO {
     public double azimuthAppliedVolts = 0.0;
     public double[] azimuthCurrentAmps = new double[] {0.0};
     public double[] azimuthTemperatureCelsius = new double[] {0.0};
+
+    // High-frequency samples gathered since the last cycle, all sampled together
+    public double[] odometryTimestamps = new double[] {};
+    public double[] odometryDrivePositionsRad = new double[] {};
+    public double[] odometryAzimuthPositionsRad = new double[] {};
   }
 
   /** Updates the set of loggable inputs. */
@@ -38,6 +43,27 @@ public interface ModuleIO {
   /** Run the azimuth motor at the specified voltage. */
   public default void setAzimuthVolts(double volts) {}
 
+  /**
+   * Run the drive motor at the specified velocity using the motor controller's onboard loop.
+   *
+   * @param velocityRadPerSec Wheel velocity setpoint
+   * @param feedforwardVolts Voltage added on top of the feedback output
+   */
+  public default void setDriveVelocity(double velocityRadPerSec, double feedforwardVolts) {}
+
+  /**
+   * Run the azimuth motor to the specified position using the motor controller's onboard loop.
+   *
+   * @param positionRad Setpoint in the same frame as the relative azimuthPosition input
+   */
+  public default void setAzimuthPosition(double positionRad) {}
+
+  /** Set the onboard drive velocity gains, in volts per rad/sec of wheel velocity error. */
+  public default void setDrivePID(double kP, double kI, double kD) {}
+
+  /** Set the onboard azimuth position gains, in volts per radian of azimuth error. */
+  public default void setAzimuthPID(double kP, double kI, double kD) {}
+
   /** Enable or disable brake mode on the drive motor. */
   public default void setDriveBreak(boolean enableBrake) {}
 
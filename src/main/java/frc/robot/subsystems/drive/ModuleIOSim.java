@@ -5,55 +5,136 @@
 package frc.robot.subsystems.drive;
 
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.system.plant.DCMotor;
-import edu.wpi.first.wpilibj.simulation.DCMotorSim;
 
-/** Physics sim implementation of ModuleIO */
+/** Physics sim implementation of ModuleIO, backed by one module of a {@link SwerveDriveSim} */
 public class ModuleIOSim implements ModuleIO {
-  private final double LOOP_PERIOD_S = 0.02;
-  // TODO Set these for Forte's gear ratios
-  private static final double DRIVE_GEAR_RATIO = 6.75 / 1.0;
-  private static final double AZIMUTH_GEAR_RATIO = 150.0 / 7.0;
+  // The SparkMax runs its onboard loop at 1 kHz, the same rate the physics is stepped at
+  private static final double ONBOARD_LOOP_PERIOD_S = 0.001;
 
-  private DCMotorSim driveMotor = new DCMotorSim(DCMotor.getNEO(1), DRIVE_GEAR_RATIO, 0.025);
-  private DCMotorSim azimuthMotor = new DCMotorSim(DCMotor.getNEO(1), AZIMUTH_GEAR_RATIO, 0.004);
+  private final SwerveDriveSim driveSim;
+  private final int index;
+  private final Rotation2d azimuthAbsoluteInitPosition;
+  private long lastSampleGeneration = 0;
+  private double lastAzimuthPositionRad = Double.NaN;
 
-  private final Rotation2d azimuthAbsoluteInitPosition =
-      new Rotation2d(Math.random() * 2.0 * Math.PI);
+  // Simulated onboard controllers, only used after a velocity/position setpoint is sent
+  private final PIDController driveController =
+      new PIDController(0.0, 0.0, 0.0, ONBOARD_LOOP_PERIOD_S);
+  private final PIDController azimuthController =
+      new PIDController(0.0, 0.0, 0.0, ONBOARD_LOOP_PERIOD_S);
+  private boolean driveClosedLoop = false;
+  private boolean azimuthClosedLoop = false;
+  private double driveFeedforwardVolts = 0.0;
 
-  private double driveAppliedVolts = 0.0;
-  private double azimuthAppliedVolts = 0.0;
+  /**
+   * Creates a new ModuleIOSim.
+   *
+   * @param driveSim Drivetrain simulation shared by all four modules and the gyro
+   * @param index Module index (FL FR BL BR)
+   */
+  public ModuleIOSim(SwerveDriveSim driveSim, int index) {
+    this.driveSim = driveSim;
+    this.index = index;
+    azimuthAbsoluteInitPosition = new Rotation2d(driveSim.getAzimuthEncoderOffsetRad(index));
+    azimuthController.enableContinuousInput(-Math.PI, Math.PI);
+    driveSim.setModule(index, this);
+  }
 
   @Override
   public void updateInputs(ModuleIOInputs inputs) {
-    driveMotor.update(LOOP_PERIOD_S);
-    azimuthMotor.update(LOOP_PERIOD_S);
+    driveSim.update();
+
+    // Only report samples this module hasn't seen yet
+    int sampleCount = 0;
+    if (driveSim.getSampleGeneration() != lastSampleGeneration) {
+      lastSampleGeneration = driveSim.getSampleGeneration();
+      sampleCount = driveSim.getSampleCount();
+    }
+    inputs.odometryTimestamps = new double[sampleCount];
+    inputs.odometryDrivePositionsRad = new double[sampleCount];
+    inputs.odometryAzimuthPositionsRad = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryTimestamps[i] = driveSim.getSampleTimestamp(i);
+      inputs.odometryDrivePositionsRad[i] = driveSim.getSampleDrivePositionRad(index, i);
+      inputs.odometryAzimuthPositionsRad[i] = driveSim.getSampleAzimuthPositionRad(index, i);
+    }
 
-    inputs.drivePositionRad = driveMotor.getAngularPositionRad();
-    inputs.driveVelocityRadPerSec = driveMotor.getAngularVelocityRadPerSec();
-    inputs.driveAppliedVolts = driveAppliedVolts;
-    inputs.driveCurrentAmps = new double[] {Math.abs(driveMotor.getCurrentDrawAmps())};
+    inputs.drivePositionRad = driveSim.getDrivePositionRad(index);
+    inputs.driveVelocityRadPerSec = driveSim.getMeasuredDriveVelocityRadPerSec(index);
+    inputs.driveAppliedVolts = driveSim.getDriveAppliedVolts(index);
+    inputs.driveCurrentAmps = new double[] {driveSim.getDriveCurrentAmps(index)};
     inputs.driveTemperatureCelsius = new double[] {0.0};
 
-    inputs.azimuthAbsolutePosition =
-        new Rotation2d(azimuthMotor.getAngularPositionRad()).plus(azimuthAbsoluteInitPosition);
-    inputs.azimuthPosition = Rotation2d.fromRadians(azimuthMotor.getAngularPositionRad());
-    inputs.azimuthVelocityRadPerSec = azimuthMotor.getAngularVelocityRadPerSec();
-    inputs.azimuthAppliedVolts = azimuthAppliedVolts;
-    inputs.azimuthCurrentAmps = new double[] {Math.abs(azimuthMotor.getCurrentDrawAmps())};
+    // Rotations are only replaced when the module actually turned
+    double azimuthPositionRad = driveSim.getAzimuthPositionRad(index);
+    if (azimuthPositionRad != lastAzimuthPositionRad) {
+      lastAzimuthPositionRad = azimuthPositionRad;
+      inputs.azimuthAbsolutePosition =
+          new Rotation2d(azimuthPositionRad).plus(azimuthAbsoluteInitPosition);
+      inputs.azimuthPosition = new Rotation2d(azimuthPositionRad);
+    }
+    inputs.azimuthVelocityRadPerSec = driveSim.getMeasuredAzimuthVelocityRadPerSec(index);
+    inputs.azimuthAppliedVolts = driveSim.getAzimuthAppliedVolts(index);
+    inputs.azimuthCurrentAmps = new double[] {driveSim.getAzimuthCurrentAmps(index)};
     inputs.azimuthTemperatureCelsius = new double[] {0.0};
   }
 
   @Override
   public void setDriveVolts(double volts) {
-    driveAppliedVolts = MathUtil.clamp(volts, -12.0, 12.0);
-    driveMotor.setInputVoltage(driveAppliedVolts);
+    driveClosedLoop = false;
+    driveSim.setDriveVolts(index, MathUtil.clamp(volts, -12.0, 12.0));
   }
 
   @Override
   public void setAzimuthVolts(double volts) {
-    azimuthAppliedVolts = MathUtil.clamp(volts, -12.0, 12.0);
-    azimuthMotor.setInputVoltage(azimuthAppliedVolts);
+    azimuthClosedLoop = false;
+    driveSim.setAzimuthVolts(index, MathUtil.clamp(volts, -12.0, 12.0));
+  }
+
+  @Override
+  public void setDriveVelocity(double velocityRadPerSec, double feedforwardVolts) {
+    driveClosedLoop = true;
+    driveController.setSetpoint(velocityRadPerSec);
+    driveFeedforwardVolts = feedforwardVolts;
+  }
+
+  @Override
+  public void setAzimuthPosition(double positionRad) {
+    azimuthClosedLoop = true;
+    azimuthController.setSetpoint(MathUtil.angleModulus(positionRad));
+  }
+
+  @Override
+  public void setDrivePID(double kP, double kI, double kD) {
+    driveController.setPID(kP, kI, kD);
+  }
+
+  @Override
+  public void setAzimuthPID(double kP, double kI, double kD) {
+    azimuthController.setPID(kP, kI, kD);
+  }
+
+  /** Runs one tick of the simulated onboard controllers, called by the sim every physics step. */
+  void runOnboardControllers() {
+    if (driveClosedLoop) {
+      driveSim.setDriveVolts(
+          index,
+          MathUtil.clamp(
+              driveFeedforwardVolts
+                  + driveController.calculate(driveSim.getDriveVelocityRadPerSec(index)),
+              -12.0,
+              12.0));
+    }
+    if (azimuthClosedLoop) {
+      driveSim.setAzimuthVolts(
+          index,
+          MathUtil.clamp(
+              azimuthController.calculate(
+                  MathUtil.angleModulus(driveSim.getAzimuthPositionRad(index))),
+              -12.0,
+              12.0));
+    }
   }
 }
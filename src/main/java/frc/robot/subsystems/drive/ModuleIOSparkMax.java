@@ -4,15 +4,25 @@
 
 package frc.robot.subsystems.drive;
 
+import com.ctre.phoenix6.StatusSignal;
 import com.ctre.phoenix6.configs.CANcoderConfiguration;
 import com.ctre.phoenix6.hardware.CANcoder;
+import com.revrobotics.CANSparkBase.ControlType;
 import com.revrobotics.CANSparkBase.IdleMode;
 import com.revrobotics.CANSparkLowLevel.MotorType;
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.REVLibError;
 import com.revrobotics.RelativeEncoder;
+import com.revrobotics.SparkPIDController;
+import com.revrobotics.SparkPIDController.ArbFFUnits;
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.util.Units;
+import frc.robot.util.can.CANBusBudget;
+import frc.robot.util.can.DeviceConfigurator;
+import frc.robot.util.can.PhoenixSignals;
+import java.util.Queue;
 
 /** ModuleIO implementation for SparkMax motor controller (NEO) */
 public class ModuleIOSparkMax implements ModuleIO {
@@ -20,17 +30,44 @@ public class ModuleIOSparkMax implements ModuleIO {
   private static final double DRIVE_GEAR_RATIO = 6.75 / 1.0;
   private static final double AZIMUTH_GEAR_RATIO = 150.0 / 7.0;
 
+  // For converting roboRIO style gains (volts per mechanism unit) to the SparkMax's units (duty
+  // cycle per motor unit, with the integral and derivative taken over its 1 ms loop)
+  private static final double NOMINAL_VOLTAGE = 12.0;
+  private static final double ONBOARD_LOOP_PERIOD_S = 0.001;
+  private static final double DRIVE_RAD_PER_SEC_PER_MOTOR_RPM =
+      Units.rotationsPerMinuteToRadiansPerSecond(1.0) / DRIVE_GEAR_RATIO;
+  private static final double AZIMUTH_RAD_PER_MOTOR_ROTATION =
+      Units.rotationsToRadians(1.0) / AZIMUTH_GEAR_RATIO;
+
+  // Status frame periods, sized to what odometry and the main loop actually consume
+  private static final int MAIN_LOOP_FRAME_PERIOD_MS = 20;
+  private static final int ODOMETRY_FRAME_PERIOD_MS =
+      (int) (1000.0 / OdometryThread.ODOMETRY_FREQUENCY_HZ);
+  private static final int UNUSED_FRAME_PERIOD_MS = 65535;
+  private static final double ABSOLUTE_ENCODER_FREQUENCY_HZ = 50.0;
+
+  private static final int CONFIG_TIMEOUT_MS = 250;
+  private static final double CONFIG_TIMEOUT_S = CONFIG_TIMEOUT_MS / 1000.0;
+  private static final int ENCODER_MEASUREMENT_PERIOD_MS = 10;
+  private static final int ENCODER_AVERAGE_DEPTH = 2;
+  // Parameters are stored as floats on the devices
+  private static final double FLOAT_TOLERANCE = 1e-4;
+
   private CANSparkMax driveMotor;
   private CANSparkMax azimuthMotor;
 
-  private RelativeEncoder driveEncoder = driveMotor.getEncoder();
-  private RelativeEncoder azimuthEncoder = azimuthMotor.getEncoder();
+  private RelativeEncoder driveEncoder;
+  private RelativeEncoder azimuthEncoder;
   private CANcoder azimuthAbsoluteEncoder;
+  private StatusSignal<Double> azimuthAbsolutePosition;
+  private SparkPIDController driveController;
+  private SparkPIDController azimuthController;
 
-  private Rotation2d absoluteEncoderOffset = new Rotation2d();
+  private final Queue<Double> timestampQueue;
+  private final Queue<Double> drivePositionQueue;
+  private final Queue<Double> azimuthPositionQueue;
 
-  private double driveAppliedVolts = 0.0;
-  private double azimuthAppliedVolts = 0.0;
+  private Rotation2d absoluteEncoderOffset = new Rotation2d();
 
   public ModuleIOSparkMax(int index) {
     // TODO Update ID's, offsets, and CANBUS
@@ -67,41 +104,36 @@ public class ModuleIOSparkMax implements ModuleIO {
         throw new RuntimeException("Invalid module index");
     }
 
-    driveMotor.restoreFactoryDefaults();
-    azimuthMotor.restoreFactoryDefaults();
-
-    driveMotor.setCANTimeout(250);
-    azimuthMotor.setCANTimeout(250);
-
     driveEncoder = driveMotor.getEncoder();
     azimuthEncoder = azimuthMotor.getEncoder();
+    driveController = driveMotor.getPIDController();
+    azimuthController = azimuthMotor.getPIDController();
+    azimuthAbsolutePosition = azimuthAbsoluteEncoder.getAbsolutePosition();
 
-    driveMotor.setInverted(false);
-    azimuthMotor.setInverted(true);
+    // Every module configures its devices at the same time, Drive waits for all of them
+    String name = "Module" + index;
+    DeviceConfigurator.submit(
+        name + "/Drive",
+        () ->
+            configureSpark(
+                driveMotor, driveEncoder, driveController, false, 40, IdleMode.kBrake, false));
+    DeviceConfigurator.submit(
+        name + "/Azimuth",
+        () ->
+            configureSpark(
+                azimuthMotor, azimuthEncoder, azimuthController, true, 30, IdleMode.kCoast, true));
+    DeviceConfigurator.submit(name + "/AbsoluteEncoder", this::configureAbsoluteEncoder);
 
-    driveMotor.setSmartCurrentLimit(40);
-    azimuthMotor.setSmartCurrentLimit(30);
-    driveMotor.enableVoltageCompensation(12.0);
-    azimuthMotor.enableVoltageCompensation(12.0);
+    // Both SparkMaxes are configured with the same status frames
+    registerStatusFrames(); // Drive
+    registerStatusFrames(); // Azimuth
+    PhoenixSignals.register(ABSOLUTE_ENCODER_FREQUENCY_HZ, azimuthAbsolutePosition);
 
-    driveEncoder.setPosition(0.0);
-    driveEncoder.setMeasurementPeriod(10);
-    driveEncoder.setAverageDepth(2);
-
-    azimuthEncoder.setPosition(0.0);
-    azimuthEncoder.setMeasurementPeriod(10);
-    azimuthEncoder.setAverageDepth(2);
-
-    driveMotor.setIdleMode(IdleMode.kBrake);
-    azimuthMotor.setIdleMode(IdleMode.kCoast);
-
-    driveMotor.setCANTimeout(0);
-    azimuthMotor.setCANTimeout(0);
-
-    driveMotor.burnFlash();
-    azimuthMotor.burnFlash();
-
-    azimuthAbsoluteEncoder.getConfigurator().apply(new CANcoderConfiguration());
+    timestampQueue = OdometryThread.getInstance().makeTimestampQueue();
+    drivePositionQueue =
+        OdometryThread.getInstance().registerSignal(() -> driveEncoder.getPosition());
+    azimuthPositionQueue =
+        OdometryThread.getInstance().registerSignal(() -> azimuthEncoder.getPosition());
   }
 
   @Override
@@ -110,12 +142,13 @@ public class ModuleIOSparkMax implements ModuleIO {
         Units.rotationsToRadians(driveEncoder.getPosition()) / DRIVE_GEAR_RATIO;
     inputs.driveVelocityRadPerSec =
         Units.rotationsPerMinuteToRadiansPerSecond(driveEncoder.getVelocity()) / DRIVE_GEAR_RATIO;
-    inputs.driveAppliedVolts = driveAppliedVolts;
+    inputs.driveAppliedVolts = driveMotor.getAppliedOutput() * driveMotor.getBusVoltage();
     inputs.driveCurrentAmps = new double[] {driveMotor.getOutputCurrent()};
     inputs.driveTemperatureCelsius = new double[] {driveMotor.getMotorTemperature()};
 
+    // Refreshed together with every other Phoenix signal by PhoenixSignals.refreshAll()
     inputs.azimuthAbsolutePosition =
-        Rotation2d.fromRotations(azimuthAbsoluteEncoder.getAbsolutePosition().getValueAsDouble())
+        Rotation2d.fromRotations(azimuthAbsolutePosition.getValueAsDouble())
             .minus(absoluteEncoderOffset);
     inputs.azimuthPosition =
         Rotation2d.fromRadians(
@@ -123,21 +156,201 @@ public class ModuleIOSparkMax implements ModuleIO {
     inputs.azimuthVelocityRadPerSec =
         Units.rotationsPerMinuteToRadiansPerSecond(azimuthEncoder.getVelocity())
             / AZIMUTH_GEAR_RATIO;
-    inputs.azimuthAppliedVolts = azimuthAppliedVolts;
+    inputs.azimuthAppliedVolts = azimuthMotor.getAppliedOutput() * azimuthMotor.getBusVoltage();
     inputs.azimuthCurrentAmps = new double[] {azimuthMotor.getOutputCurrent()};
     inputs.azimuthTemperatureCelsius = new double[] {azimuthMotor.getMotorTemperature()};
+
+    // Polled straight into primitives. Every signal is sampled together under the odometry lock,
+    // which is held here, so the queues are the same length. The arrays are new every cycle since
+    // AdvantageKit keeps a reference to each logged array
+    int sampleCount = timestampQueue.size();
+    inputs.odometryTimestamps = new double[sampleCount];
+    inputs.odometryDrivePositionsRad = new double[sampleCount];
+    inputs.odometryAzimuthPositionsRad = new double[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      inputs.odometryTimestamps[i] = timestampQueue.poll();
+      inputs.odometryDrivePositionsRad[i] =
+          Units.rotationsToRadians(drivePositionQueue.poll()) / DRIVE_GEAR_RATIO;
+      inputs.odometryAzimuthPositionsRad[i] =
+          Units.rotationsToRadians(azimuthPositionQueue.poll()) / AZIMUTH_GEAR_RATIO;
+    }
+    timestampQueue.clear();
+    drivePositionQueue.clear();
+    azimuthPositionQueue.clear();
   }
 
   @Override
   public void setDriveVolts(double volts) {
-    driveAppliedVolts = MathUtil.clamp(volts, -12.0, 12.0);
-    driveMotor.setVoltage(driveAppliedVolts);
+    driveMotor.setVoltage(MathUtil.clamp(volts, -12.0, 12.0));
   }
 
   @Override
   public void setAzimuthVolts(double volts) {
-    azimuthAppliedVolts = MathUtil.clamp(volts, -12.0, 12.0);
-    azimuthMotor.setVoltage(azimuthAppliedVolts);
+    azimuthMotor.setVoltage(MathUtil.clamp(volts, -12.0, 12.0));
+  }
+
+  @Override
+  public void setDriveVelocity(double velocityRadPerSec, double feedforwardVolts) {
+    driveController.setReference(
+        velocityRadPerSec / DRIVE_RAD_PER_SEC_PER_MOTOR_RPM,
+        ControlType.kVelocity,
+        0,
+        feedforwardVolts,
+        ArbFFUnits.kVoltage);
+  }
+
+  @Override
+  public void setAzimuthPosition(double positionRad) {
+    azimuthController.setReference(
+        MathUtil.inputModulus(positionRad, 0.0, 2.0 * Math.PI) / AZIMUTH_RAD_PER_MOTOR_ROTATION,
+        ControlType.kPosition);
+  }
+
+  @Override
+  public void setDrivePID(double kP, double kI, double kD) {
+    double scale = DRIVE_RAD_PER_SEC_PER_MOTOR_RPM / NOMINAL_VOLTAGE;
+    driveController.setP(kP * scale);
+    driveController.setI(kI * scale * ONBOARD_LOOP_PERIOD_S);
+    driveController.setD(kD * scale / ONBOARD_LOOP_PERIOD_S);
+  }
+
+  @Override
+  public void setAzimuthPID(double kP, double kI, double kD) {
+    double scale = AZIMUTH_RAD_PER_MOTOR_ROTATION / NOMINAL_VOLTAGE;
+    azimuthController.setP(kP * scale);
+    azimuthController.setI(kI * scale * ONBOARD_LOOP_PERIOD_S);
+    azimuthController.setD(kD * scale / ONBOARD_LOOP_PERIOD_S);
+  }
+
+  /**
+   * Configures a SparkMax. The settings that can be read back are compared first, and the factory
+   * reset and flash write only happen when they don't match, so a normal boot never writes flash.
+   * Everything is still set every boot since the current limit and status frame periods can't be
+   * read back.
+   */
+  private static DeviceConfigurator.Status configureSpark(
+      CANSparkMax motor,
+      RelativeEncoder encoder,
+      SparkPIDController controller,
+      boolean inverted,
+      int currentLimitAmps,
+      IdleMode idleMode,
+      boolean wrapPosition) {
+    motor.setCANTimeout(CONFIG_TIMEOUT_MS);
+
+    boolean matches =
+        motor.getInverted() == inverted
+            && motor.getIdleMode() == idleMode
+            && MathUtil.isNear(
+                NOMINAL_VOLTAGE, motor.getVoltageCompensationNominalVoltage(), FLOAT_TOLERANCE)
+            && encoder.getMeasurementPeriod() == ENCODER_MEASUREMENT_PERIOD_MS
+            && encoder.getAverageDepth() == ENCODER_AVERAGE_DEPTH
+            && controller.getPositionPIDWrappingEnabled() == wrapPosition
+            && (!wrapPosition
+                || MathUtil.isNear(
+                    AZIMUTH_GEAR_RATIO,
+                    controller.getPositionPIDWrappingMaxInput(),
+                    FLOAT_TOLERANCE));
+    boolean ok = motor.getLastError() == REVLibError.kOk;
+
+    if (!matches) {
+      ok &= motor.restoreFactoryDefaults() == REVLibError.kOk;
+    }
+
+    motor.setInverted(inverted);
+    ok &=
+        isOk(
+            motor.getLastError(),
+            motor.setSmartCurrentLimit(currentLimitAmps),
+            motor.enableVoltageCompensation(NOMINAL_VOLTAGE),
+            motor.setIdleMode(idleMode),
+            encoder.setPosition(0.0),
+            encoder.setMeasurementPeriod(ENCODER_MEASUREMENT_PERIOD_MS),
+            encoder.setAverageDepth(ENCODER_AVERAGE_DEPTH));
+    if (wrapPosition) {
+      // The azimuth wraps once per module revolution
+      ok &=
+          isOk(
+              controller.setPositionPIDWrappingEnabled(true),
+              controller.setPositionPIDWrappingMinInput(0.0),
+              controller.setPositionPIDWrappingMaxInput(AZIMUTH_GEAR_RATIO));
+    }
+
+    // Only send the frames that are read. Status 0 (applied output) and 1 (velocity, current,
+    // temperature, voltage) are logged once per loop, status 2 (position) feeds odometry, and the
+    // analog, alternate encoder, and duty cycle frames (3-6) aren't wired on the modules.
+    ok &=
+        isOk(
+            motor.setPeriodicFramePeriod(PeriodicFrame.kStatus0, MAIN_LOOP_FRAME_PERIOD_MS),
+            motor.setPeriodicFramePeriod(PeriodicFrame.kStatus1, MAIN_LOOP_FRAME_PERIOD_MS),
+            motor.setPeriodicFramePeriod(PeriodicFrame.kStatus2, ODOMETRY_FRAME_PERIOD_MS),
+            motor.setPeriodicFramePeriod(PeriodicFrame.kStatus3, UNUSED_FRAME_PERIOD_MS),
+            motor.setPeriodicFramePeriod(PeriodicFrame.kStatus4, UNUSED_FRAME_PERIOD_MS),
+            motor.setPeriodicFramePeriod(PeriodicFrame.kStatus5, UNUSED_FRAME_PERIOD_MS),
+            motor.setPeriodicFramePeriod(PeriodicFrame.kStatus6, UNUSED_FRAME_PERIOD_MS));
+
+    if (!matches) {
+      ok &= motor.burnFlash() == REVLibError.kOk;
+    }
+    motor.setCANTimeout(0);
+
+    if (!ok) {
+      return DeviceConfigurator.Status.FAILED;
+    }
+    return matches ? DeviceConfigurator.Status.UNCHANGED : DeviceConfigurator.Status.UPDATED;
+  }
+
+  /**
+   * Configures the CANcoder. Phoenix configs are stored on the device, so they're only applied
+   * when what's stored differs.
+   */
+  private DeviceConfigurator.Status configureAbsoluteEncoder() {
+    CANcoderConfiguration desired = new CANcoderConfiguration();
+    CANcoderConfiguration stored = new CANcoderConfiguration();
+    boolean ok = azimuthAbsoluteEncoder.getConfigurator().refresh(stored, CONFIG_TIMEOUT_S).isOK();
+
+    boolean matches =
+        ok
+            && stored.MagnetSensor.SensorDirection == desired.MagnetSensor.SensorDirection
+            && stored.MagnetSensor.AbsoluteSensorRange == desired.MagnetSensor.AbsoluteSensorRange
+            && MathUtil.isNear(
+                desired.MagnetSensor.MagnetOffset,
+                stored.MagnetSensor.MagnetOffset,
+                FLOAT_TOLERANCE);
+    if (!matches) {
+      ok = azimuthAbsoluteEncoder.getConfigurator().apply(desired, CONFIG_TIMEOUT_S).isOK();
+    }
+
+    // The absolute position is only used to seed the relative encoder offset, so nothing else
+    // needs to be on the bus
+    ok &=
+        azimuthAbsolutePosition
+            .setUpdateFrequency(ABSOLUTE_ENCODER_FREQUENCY_HZ, CONFIG_TIMEOUT_S)
+            .isOK();
+    ok &= azimuthAbsoluteEncoder.optimizeBusUtilization().isOK();
+
+    if (!ok) {
+      return DeviceConfigurator.Status.FAILED;
+    }
+    return matches ? DeviceConfigurator.Status.UNCHANGED : DeviceConfigurator.Status.UPDATED;
+  }
+
+  /** Accounts for the frames one SparkMax sends (and receives) in the CAN bus budget. */
+  private static void registerStatusFrames() {
+    CANBusBudget.registerFramePeriod(MAIN_LOOP_FRAME_PERIOD_MS); // Status 0
+    CANBusBudget.registerFramePeriod(MAIN_LOOP_FRAME_PERIOD_MS); // Status 1
+    CANBusBudget.registerFramePeriod(ODOMETRY_FRAME_PERIOD_MS); // Status 2
+    // One setpoint frame from the roboRIO every loop
+    CANBusBudget.registerFramePeriod(MAIN_LOOP_FRAME_PERIOD_MS);
+  }
+
+  private static boolean isOk(REVLibError... errors) {
+    for (REVLibError error : errors) {
+      if (error != REVLibError.kOk) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
@@ -0,0 +1,89 @@
+// Copyright (c) FIRST and other WPILib contributors.
+// Open Source Software; you can modify and/or share it under the terms of
+// the WPILib BSD license file in the root directory of this project.
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.wpilibj.Notifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.DoubleSupplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Provides an interface for asynchronously reading high-frequency measurements to a set of queues.
+ *
+ * <p>This version is intended for devices like the SparkMax that require polling rather than a
+ * blocking thread. A Notifier thread is used to gather samples with consistent timing.
+ */
+public class OdometryThread {
+  public static final double ODOMETRY_FREQUENCY_HZ = 250.0;
+
+  private List<DoubleSupplier> signals = new ArrayList<>();
+  private List<Queue<Double>> queues = new ArrayList<>();
+  private List<Queue<Double>> timestampQueues = new ArrayList<>();
+
+  private final Notifier notifier;
+  private static OdometryThread instance = null;
+
+  public static OdometryThread getInstance() {
+    if (instance == null) {
+      instance = new OdometryThread();
+    }
+    return instance;
+  }
+
+  private OdometryThread() {
+    notifier = new Notifier(this::periodic);
+    notifier.setName("OdometryThread");
+  }
+
+  /** Starts sampling, only if at least one module registered for timestamps. */
+  public void start() {
+    if (timestampQueues.size() > 0) {
+      notifier.startPeriodic(1.0 / ODOMETRY_FREQUENCY_HZ);
+    }
+  }
+
+  /** Registers a signal to be sampled at the odometry frequency. Returns the sample queue. */
+  public Queue<Double> registerSignal(DoubleSupplier signal) {
+    Queue<Double> queue = new ArrayBlockingQueue<>(20);
+    Drive.odometryLock.lock();
+    try {
+      signals.add(signal);
+      queues.add(queue);
+    } finally {
+      Drive.odometryLock.unlock();
+    }
+    return queue;
+  }
+
+  /** Creates a queue that receives the FPGA timestamp (in seconds) of every sample. */
+  public Queue<Double> makeTimestampQueue() {
+    Queue<Double> queue = new ArrayBlockingQueue<>(20);
+    Drive.odometryLock.lock();
+    try {
+      timestampQueues.add(queue);
+    } finally {
+      Drive.odometryLock.unlock();
+    }
+    return queue;
+  }
+
+  private void periodic() {
+    Drive.odometryLock.lock();
+    double timestamp = Logger.getRealTimestamp() / 1e6;
+    try {
+      for (int i = 0; i < signals.size(); i++) {
+        queues.get(i).offer(signals.get(i).getAsDouble());
+      }
+      for (int i = 0; i < timestampQueues.size(); i++) {
+        timestampQueues.get(i).offer(timestamp);
+      }
+    } finally {
+      Drive.odometryLock.unlock();
+    }
+  }
+}
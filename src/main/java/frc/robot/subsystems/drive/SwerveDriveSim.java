@@ -0,0 +1,408 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.BatterySim;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Physics simulation of the whole drivetrain, shared by the four {@link ModuleIOSim}s and the
+ * {@link GyroIOSim}. Everything is stepped together at 1 kHz so the wheels push on one chassis.
+ *
+ * <p>Each wheel is a current limited NEO driving a rotating wheel, and the wheels grip the floor
+ * through a friction circle, so they slip when over-driven and scrub sideways when they aren't
+ * pointed the way the chassis is moving. The battery sags with the total current drawn. Module
+ * state is kept in primitive arrays indexed FL FR BL BR so one pass steps all four.
+ */
+public class SwerveDriveSim {
+  private static final double PHYSICS_PERIOD_S = 0.001;
+  private static final int STEPS_PER_ODOMETRY_SAMPLE =
+      (int) Math.round(1.0 / (OdometryThread.ODOMETRY_FREQUENCY_HZ * PHYSICS_PERIOD_S));
+  // A long pause (like a breakpoint) is skipped instead of being simulated all at once
+  private static final int MAX_STEPS_PER_UPDATE = 100;
+  // The SparkMax reports velocity as a difference over its measurement window (10 ms, depth 2) and
+  // only sends it in a status frame, so the code reads a delayed average. The delay is the average
+  // age of a 20 ms status frame
+  private static final int VELOCITY_WINDOW_STEPS = 11;
+  private static final int VELOCITY_DELAY_STEPS = 10;
+  private static final int HISTORY_LENGTH = 32; // At least the window plus the delay
+  private static final int MAX_SAMPLES_PER_UPDATE =
+      MAX_STEPS_PER_UPDATE / STEPS_PER_ODOMETRY_SAMPLE + 1;
+
+  // TODO Set these for Forte
+  private static final double DRIVE_GEAR_RATIO = 6.75 / 1.0;
+  private static final double AZIMUTH_GEAR_RATIO = 150.0 / 7.0;
+  private static final DCMotor DRIVE_MOTOR = DCMotor.getNEO(1);
+  private static final DCMotor AZIMUTH_MOTOR = DCMotor.getNEO(1);
+  private static final double DRIVE_CURRENT_LIMIT_AMPS = 40.0;
+  private static final double AZIMUTH_CURRENT_LIMIT_AMPS = 30.0;
+  private static final double WHEEL_RADIUS_METERS = Units.inchesToMeters(2.0);
+  // Wheel plus the motor rotor reflected through the gearbox
+  private static final double WHEEL_INERTIA_KG_M2 = 0.003;
+  private static final double AZIMUTH_INERTIA_KG_M2 = 0.004;
+  private static final double WHEEL_FRICTION_TORQUE_NM = 0.2;
+  private static final double AZIMUTH_FRICTION_TORQUE_NM = 0.3;
+  private static final double ROBOT_MASS_KG = Units.lbsToKilograms(115.0);
+  private static final double ROBOT_INERTIA_KG_M2 = 6.0;
+  private static final double WHEEL_COEFFICIENT_OF_FRICTION = 1.2;
+  private static final double BATTERY_NOMINAL_VOLTS = 12.5;
+  private static final double BATTERY_RESISTANCE_OHMS = 0.02;
+
+  private static final double MAX_FRICTION_IMPULSE =
+      WHEEL_COEFFICIENT_OF_FRICTION * ROBOT_MASS_KG / 4.0 * 9.81 * PHYSICS_PERIOD_S;
+
+  private final double[] moduleX = new double[4];
+  private final double[] moduleY = new double[4];
+  private final double[] azimuthEncoderOffsetRad = new double[4];
+  private final ModuleIOSim[] modules = new ModuleIOSim[4];
+
+  // Module state
+  private final double[] driveCommandedVolts = new double[4];
+  private final double[] driveAppliedVolts = new double[4];
+  private final double[] driveCurrentAmps = new double[4];
+  private final double[] drivePositionRad = new double[4];
+  private final double[] driveVelocityRadPerSec = new double[4];
+  private final double[] azimuthCommandedVolts = new double[4];
+  private final double[] azimuthAppliedVolts = new double[4];
+  private final double[] azimuthCurrentAmps = new double[4];
+  private final double[] azimuthPositionRad = new double[4];
+  private final double[] azimuthVelocityRadPerSec = new double[4];
+  private final double[] supplyCurrentsAmps = new double[8];
+  // Positions over the last few physics steps, for the measured velocities
+  private final double[][] drivePositionHistoryRad = new double[4][HISTORY_LENGTH];
+  private final double[][] azimuthPositionHistoryRad = new double[4][HISTORY_LENGTH];
+
+  // Chassis state, in the field frame
+  private double x = 0.0;
+  private double y = 0.0;
+  private double yawRad = 0.0;
+  private double vx = 0.0;
+  private double vy = 0.0;
+  private double omega = 0.0;
+  private double batteryVolts = BATTERY_NOMINAL_VOLTS;
+  // Published once per update so other threads (like the vision sim) see a consistent pose
+  private volatile Pose2d pose = new Pose2d();
+
+  // Odometry samples taken during the last update
+  private final double[] sampleTimestamps = new double[MAX_SAMPLES_PER_UPDATE];
+  private final double[][] sampleDrivePositionsRad = new double[4][MAX_SAMPLES_PER_UPDATE];
+  private final double[][] sampleAzimuthPositionsRad = new double[4][MAX_SAMPLES_PER_UPDATE];
+  private final double[] sampleYawsRad = new double[MAX_SAMPLES_PER_UPDATE];
+  private int sampleCount = 0;
+  private long sampleGeneration = 0;
+
+  private final DoubleSupplier clock;
+  private double lastTimestamp = Double.NaN;
+  private long stepCount = 0;
+
+  /**
+   * Creates a new SwerveDriveSim.
+   *
+   * @param random Source for the random absolute encoder offsets, seed it for reproducible runs
+   */
+  public SwerveDriveSim(Random random) {
+    this(random, Timer::getFPGATimestamp);
+  }
+
+  /**
+   * Creates a new SwerveDriveSim with its own clock, so several can run at once at different
+   * simulated times.
+   *
+   * @param random Source for the random absolute encoder offsets, seed it for reproducible runs
+   * @param clock Supplies the simulated time in seconds
+   */
+  public SwerveDriveSim(Random random, DoubleSupplier clock) {
+    this.clock = clock;
+    Translation2d[] moduleTranslations = Drive.getModuleTranslations();
+    for (int i = 0; i < 4; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+      azimuthEncoderOffsetRad[i] = random.nextDouble() * 2.0 * Math.PI;
+    }
+  }
+
+  /** Registers a module so its simulated onboard controllers run every physics step. */
+  void setModule(int index, ModuleIOSim module) {
+    modules[index] = module;
+  }
+
+  /**
+   * Steps the physics up to the current time. Called by every IO implementation, only the first
+   * call each cycle does any work.
+   */
+  public void update() {
+    double timestamp = clock.getAsDouble();
+    if (Double.isNaN(lastTimestamp)) {
+      lastTimestamp = timestamp;
+      return;
+    }
+    int steps = (int) ((timestamp - lastTimestamp) / PHYSICS_PERIOD_S + 1e-6);
+    if (steps <= 0) {
+      return;
+    }
+
+    double startTimestamp = lastTimestamp;
+    if (steps > MAX_STEPS_PER_UPDATE) {
+      startTimestamp = timestamp - MAX_STEPS_PER_UPDATE * PHYSICS_PERIOD_S;
+      steps = MAX_STEPS_PER_UPDATE;
+    }
+    lastTimestamp = startTimestamp + steps * PHYSICS_PERIOD_S;
+
+    sampleCount = 0;
+    sampleGeneration++;
+    for (int step = 1; step <= steps; step++) {
+      for (int i = 0; i < 4; i++) {
+        if (modules[i] != null) {
+          modules[i].runOnboardControllers();
+        }
+      }
+      stepPhysics();
+
+      stepCount++;
+      int historyIndex = (int) (stepCount % HISTORY_LENGTH);
+      for (int i = 0; i < 4; i++) {
+        drivePositionHistoryRad[i][historyIndex] = drivePositionRad[i];
+        azimuthPositionHistoryRad[i][historyIndex] = azimuthPositionRad[i];
+      }
+      if (stepCount % STEPS_PER_ODOMETRY_SAMPLE == 0) {
+        sampleTimestamps[sampleCount] = startTimestamp + step * PHYSICS_PERIOD_S;
+        for (int i = 0; i < 4; i++) {
+          sampleDrivePositionsRad[i][sampleCount] = drivePositionRad[i];
+          sampleAzimuthPositionsRad[i][sampleCount] = azimuthPositionRad[i];
+        }
+        sampleYawsRad[sampleCount] = yawRad;
+        sampleCount++;
+      }
+    }
+
+    if (x != pose.getX() || y != pose.getY() || yawRad != pose.getRotation().getRadians()) {
+      pose = new Pose2d(x, y, new Rotation2d(yawRad));
+    }
+    RoboRioSim.setVInVoltage(batteryVolts);
+  }
+
+  private void stepPhysics() {
+    double dt = PHYSICS_PERIOD_S;
+
+    // Motors, limited by the battery and the SparkMax current limits
+    for (int i = 0; i < 4; i++) {
+      driveAppliedVolts[i] = MathUtil.clamp(driveCommandedVolts[i], -batteryVolts, batteryVolts);
+      driveCurrentAmps[i] =
+          MathUtil.clamp(
+              DRIVE_MOTOR.getCurrent(
+                  driveVelocityRadPerSec[i] * DRIVE_GEAR_RATIO, driveAppliedVolts[i]),
+              -DRIVE_CURRENT_LIMIT_AMPS,
+              DRIVE_CURRENT_LIMIT_AMPS);
+      double driveTorque = DRIVE_MOTOR.getTorque(driveCurrentAmps[i]) * DRIVE_GEAR_RATIO;
+      driveVelocityRadPerSec[i] =
+          applyFriction(
+              driveVelocityRadPerSec[i] + driveTorque / WHEEL_INERTIA_KG_M2 * dt,
+              WHEEL_FRICTION_TORQUE_NM / WHEEL_INERTIA_KG_M2 * dt);
+
+      azimuthAppliedVolts[i] =
+          MathUtil.clamp(azimuthCommandedVolts[i], -batteryVolts, batteryVolts);
+      azimuthCurrentAmps[i] =
+          MathUtil.clamp(
+              AZIMUTH_MOTOR.getCurrent(
+                  azimuthVelocityRadPerSec[i] * AZIMUTH_GEAR_RATIO, azimuthAppliedVolts[i]),
+              -AZIMUTH_CURRENT_LIMIT_AMPS,
+              AZIMUTH_CURRENT_LIMIT_AMPS);
+      double azimuthTorque = AZIMUTH_MOTOR.getTorque(azimuthCurrentAmps[i]) * AZIMUTH_GEAR_RATIO;
+      azimuthVelocityRadPerSec[i] =
+          applyFriction(
+              azimuthVelocityRadPerSec[i] + azimuthTorque / AZIMUTH_INERTIA_KG_M2 * dt,
+              AZIMUTH_FRICTION_TORQUE_NM / AZIMUTH_INERTIA_KG_M2 * dt);
+      azimuthPositionRad[i] += azimuthVelocityRadPerSec[i] * dt;
+
+      // The controller draws from the battery in proportion to its duty cycle
+      supplyCurrentsAmps[i] = Math.abs(driveCurrentAmps[i] * driveAppliedVolts[i] / batteryVolts);
+      supplyCurrentsAmps[i + 4] =
+          Math.abs(azimuthCurrentAmps[i] * azimuthAppliedVolts[i] / batteryVolts);
+    }
+
+    // Tire contact, solved one wheel at a time with each impulse applied before the next wheel
+    // (sequential impulses). Each impulse tries to remove the wheel's slip, limited by the friction
+    // circle.
+    double cos = Math.cos(yawRad);
+    double sin = Math.sin(yawRad);
+    for (int i = 0; i < 4; i++) {
+      double rx = moduleX[i] * cos - moduleY[i] * sin;
+      double ry = moduleX[i] * sin + moduleY[i] * cos;
+      // The relative encoder started at zero wherever the wheel pointed at boot
+      double wheelHeading = yawRad + azimuthPositionRad[i] + azimuthEncoderOffsetRad[i];
+      double ux = Math.cos(wheelHeading);
+      double uy = Math.sin(wheelHeading);
+      double nx = -uy;
+      double ny = ux;
+
+      double contactVx = vx - omega * ry;
+      double contactVy = vy + omega * rx;
+      double slip =
+          driveVelocityRadPerSec[i] * WHEEL_RADIUS_METERS - (contactVx * ux + contactVy * uy);
+      double lateralVelocity = contactVx * nx + contactVy * ny;
+
+      double rCrossU = rx * uy - ry * ux;
+      double rCrossN = rx * ny - ry * nx;
+      double longitudinalImpulse =
+          slip
+              / (WHEEL_RADIUS_METERS * WHEEL_RADIUS_METERS / WHEEL_INERTIA_KG_M2
+                  + 1.0 / ROBOT_MASS_KG
+                  + rCrossU * rCrossU / ROBOT_INERTIA_KG_M2);
+      double lateralImpulse =
+          -lateralVelocity / (1.0 / ROBOT_MASS_KG + rCrossN * rCrossN / ROBOT_INERTIA_KG_M2);
+
+      double impulse = Math.hypot(longitudinalImpulse, lateralImpulse);
+      if (impulse > MAX_FRICTION_IMPULSE) {
+        double scale = MAX_FRICTION_IMPULSE / impulse;
+        longitudinalImpulse *= scale;
+        lateralImpulse *= scale;
+      }
+
+      driveVelocityRadPerSec[i] -= longitudinalImpulse * WHEEL_RADIUS_METERS / WHEEL_INERTIA_KG_M2;
+      vx += (longitudinalImpulse * ux + lateralImpulse * nx) / ROBOT_MASS_KG;
+      vy += (longitudinalImpulse * uy + lateralImpulse * ny) / ROBOT_MASS_KG;
+      omega += (rCrossU * longitudinalImpulse + rCrossN * lateralImpulse) / ROBOT_INERTIA_KG_M2;
+    }
+
+    for (int i = 0; i < 4; i++) {
+      drivePositionRad[i] += driveVelocityRadPerSec[i] * dt;
+    }
+    x += vx * dt;
+    y += vy * dt;
+    yawRad = MathUtil.angleModulus(yawRad + omega * dt);
+
+    batteryVolts =
+        BatterySim.calculateLoadedBatteryVoltage(
+            BATTERY_NOMINAL_VOLTS, BATTERY_RESISTANCE_OHMS, supplyCurrentsAmps);
+  }
+
+  /** Slows a velocity by a friction step without letting friction reverse it. */
+  private static double applyFriction(double velocity, double frictionStep) {
+    if (Math.abs(velocity) <= frictionStep) {
+      return 0.0;
+    }
+    return velocity - Math.copySign(frictionStep, velocity);
+  }
+
+  void setDriveVolts(int index, double volts) {
+    driveCommandedVolts[index] = volts;
+  }
+
+  void setAzimuthVolts(int index, double volts) {
+    azimuthCommandedVolts[index] = volts;
+  }
+
+  double getDriveAppliedVolts(int index) {
+    return driveAppliedVolts[index];
+  }
+
+  double getDriveCurrentAmps(int index) {
+    return Math.abs(driveCurrentAmps[index]);
+  }
+
+  double getDrivePositionRad(int index) {
+    return drivePositionRad[index];
+  }
+
+  double getDriveVelocityRadPerSec(int index) {
+    return driveVelocityRadPerSec[index];
+  }
+
+  /** Returns the drive velocity as the motor controller would measure and report it. */
+  double getMeasuredDriveVelocityRadPerSec(int index) {
+    return getMeasuredVelocity(drivePositionHistoryRad[index]);
+  }
+
+  double getAzimuthAppliedVolts(int index) {
+    return azimuthAppliedVolts[index];
+  }
+
+  double getAzimuthCurrentAmps(int index) {
+    return Math.abs(azimuthCurrentAmps[index]);
+  }
+
+  double getAzimuthPositionRad(int index) {
+    return azimuthPositionRad[index];
+  }
+
+  double getAzimuthVelocityRadPerSec(int index) {
+    return azimuthVelocityRadPerSec[index];
+  }
+
+  /** Returns the azimuth velocity as the motor controller would measure and report it. */
+  double getMeasuredAzimuthVelocityRadPerSec(int index) {
+    return getMeasuredVelocity(azimuthPositionHistoryRad[index]);
+  }
+
+  private double getMeasuredVelocity(double[] positionHistory) {
+    long newestStep = stepCount - VELOCITY_DELAY_STEPS;
+    long oldestStep = newestStep - VELOCITY_WINDOW_STEPS;
+    if (oldestStep < 0) {
+      return 0.0;
+    }
+    return (positionHistory[(int) (newestStep % HISTORY_LENGTH)]
+            - positionHistory[(int) (oldestStep % HISTORY_LENGTH)])
+        / (VELOCITY_WINDOW_STEPS * PHYSICS_PERIOD_S);
+  }
+
+  /**
+   * Returns the random angle the module pointed at on boot, the offset between its relative encoder
+   * and the true module angle the absolute encoder reports.
+   */
+  double getAzimuthEncoderOffsetRad(int index) {
+    return azimuthEncoderOffsetRad[index];
+  }
+
+  double getYawRad() {
+    return yawRad;
+  }
+
+  double getYawRateRadPerSec() {
+    return omega;
+  }
+
+  /** Returns the number of odometry samples taken during the last update. */
+  int getSampleCount() {
+    return sampleCount;
+  }
+
+  /** Returns a counter that increases every time new samples are taken. */
+  long getSampleGeneration() {
+    return sampleGeneration;
+  }
+
+  double getSampleTimestamp(int sample) {
+    return sampleTimestamps[sample];
+  }
+
+  double getSampleDrivePositionRad(int index, int sample) {
+    return sampleDrivePositionsRad[index][sample];
+  }
+
+  double getSampleAzimuthPositionRad(int index, int sample) {
+    return sampleAzimuthPositionsRad[index][sample];
+  }
+
+  double getSampleYawRad(int sample) {
+    return sampleYawsRad[sample];
+  }
+
+  /** Returns the true simulated pose of the robot, safe to call from any thread. */
+  public Pose2d getPose() {
+    return pose;
+  }
+
+  /** Returns the simulated battery voltage. */
+  public double getBatteryVolts() {
+    return batteryVolts;
+  }
+}
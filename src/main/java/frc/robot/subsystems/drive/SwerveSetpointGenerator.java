@@ -0,0 +1,274 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+
+/**
+ * Turns desired chassis speeds into module setpoints the drivetrain can actually follow. Starting
+ * from the previous setpoint, it moves as far toward the desired speeds as the azimuth velocity,
+ * drive acceleration and skid (contact patch acceleration) limits allow in one period. Every
+ * module velocity is linear in the fraction moved, so the skid limit is solved directly and the
+ * other two are found per module with a short bisection. A stopped module that has to turn further
+ * than one period allows first steers in place while the chassis waits, otherwise the robot could
+ * never strafe or spin from rest. Runs entirely on primitives.
+ */
+public class SwerveSetpointGenerator {
+  private static final int BISECTION_ITERATIONS = 10;
+  private static final double STOPPED_SPEED_METERS_PER_SEC = 1e-6;
+
+  private final int moduleCount;
+  private final double[] moduleTranslationsX;
+  private final double[] moduleTranslationsY;
+  private final double maxDriveVelocityMetersPerSec;
+  private final double maxDriveAccelerationMetersPerSecSq;
+  private final double maxSkidAccelerationMetersPerSecSq;
+  private final double maxAzimuthVelocityRadPerSec;
+
+  // Previous setpoint
+  private double setpointVx = 0.0;
+  private double setpointVy = 0.0;
+  private double setpointOmega = 0.0;
+  private final double[] setpointModuleVx;
+  private final double[] setpointModuleVy;
+  private final double[] setpointHeadingsRad;
+
+  // Desired module velocities, recomputed every call
+  private final double[] desiredModuleVx;
+  private final double[] desiredModuleVy;
+
+  /**
+   * Creates a new SwerveSetpointGenerator.
+   *
+   * @param moduleTranslations Module positions relative to the robot center
+   * @param maxDriveVelocityMetersPerSec Max module speed
+   * @param maxDriveAccelerationMetersPerSecSq Max change in module speed, from the drive motor
+   * @param maxSkidAccelerationMetersPerSecSq Max change in module velocity vector before the wheel
+   *     breaks traction
+   * @param maxAzimuthVelocityRadPerSec Max module azimuth rate
+   */
+  public SwerveSetpointGenerator(
+      Translation2d[] moduleTranslations,
+      double maxDriveVelocityMetersPerSec,
+      double maxDriveAccelerationMetersPerSecSq,
+      double maxSkidAccelerationMetersPerSecSq,
+      double maxAzimuthVelocityRadPerSec) {
+    moduleCount = moduleTranslations.length;
+    moduleTranslationsX = new double[moduleCount];
+    moduleTranslationsY = new double[moduleCount];
+    for (int i = 0; i < moduleCount; i++) {
+      moduleTranslationsX[i] = moduleTranslations[i].getX();
+      moduleTranslationsY[i] = moduleTranslations[i].getY();
+    }
+    this.maxDriveVelocityMetersPerSec = maxDriveVelocityMetersPerSec;
+    this.maxDriveAccelerationMetersPerSecSq = maxDriveAccelerationMetersPerSecSq;
+    this.maxSkidAccelerationMetersPerSecSq = maxSkidAccelerationMetersPerSecSq;
+    this.maxAzimuthVelocityRadPerSec = maxAzimuthVelocityRadPerSec;
+
+    setpointModuleVx = new double[moduleCount];
+    setpointModuleVy = new double[moduleCount];
+    setpointHeadingsRad = new double[moduleCount];
+    desiredModuleVx = new double[moduleCount];
+    desiredModuleVy = new double[moduleCount];
+  }
+
+  /**
+   * Resets the previous setpoint to the measured module states, e.g. while disabled or after the
+   * modules were driven by something else.
+   */
+  public void reset(SwerveModuleState[] measuredStates) {
+    // Least squares fit of the chassis speeds, exact for a symmetric module layout
+    double sumVx = 0.0;
+    double sumVy = 0.0;
+    double sumCross = 0.0;
+    double sumRadiusSquared = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      double headingRad = measuredStates[i].angle.getRadians();
+      double moduleVx = measuredStates[i].speedMetersPerSecond * Math.cos(headingRad);
+      double moduleVy = measuredStates[i].speedMetersPerSecond * Math.sin(headingRad);
+      sumVx += moduleVx;
+      sumVy += moduleVy;
+      sumCross += moduleTranslationsX[i] * moduleVy - moduleTranslationsY[i] * moduleVx;
+      sumRadiusSquared +=
+          moduleTranslationsX[i] * moduleTranslationsX[i]
+              + moduleTranslationsY[i] * moduleTranslationsY[i];
+      setpointHeadingsRad[i] = headingRad;
+    }
+    setpointVx = sumVx / moduleCount;
+    setpointVy = sumVy / moduleCount;
+    setpointOmega = sumCross / sumRadiusSquared;
+    for (int i = 0; i < moduleCount; i++) {
+      setpointModuleVx[i] = setpointVx - setpointOmega * moduleTranslationsY[i];
+      setpointModuleVy[i] = setpointVy + setpointOmega * moduleTranslationsX[i];
+    }
+  }
+
+  /**
+   * Generates the next feasible setpoint toward the desired robot relative speeds.
+   *
+   * @param vx Desired forward velocity in meters/sec
+   * @param vy Desired sideways velocity in meters/sec
+   * @param omega Desired angular velocity in radians/sec
+   * @param dt Period until the next setpoint in seconds
+   * @param outputStates Array the module setpoints are written into, returned for convenience
+   */
+  public SwerveModuleState[] generate(
+      double vx, double vy, double omega, double dt, SwerveModuleState[] outputStates) {
+    // Desaturate by scaling the whole chassis speed so the direction of travel is kept
+    double maxModuleSpeed = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      maxModuleSpeed =
+          Math.max(
+              maxModuleSpeed,
+              Math.hypot(vx - omega * moduleTranslationsY[i], vy + omega * moduleTranslationsX[i]));
+    }
+    if (maxModuleSpeed > maxDriveVelocityMetersPerSec) {
+      double scale = maxDriveVelocityMetersPerSec / maxModuleSpeed;
+      vx *= scale;
+      vy *= scale;
+      omega *= scale;
+    }
+    for (int i = 0; i < moduleCount; i++) {
+      desiredModuleVx[i] = vx - omega * moduleTranslationsY[i];
+      desiredModuleVy[i] = vy + omega * moduleTranslationsX[i];
+    }
+
+    // Find the furthest fraction of the way to the desired speeds every module can reach
+    double maxFraction = 1.0;
+    double maxHeadingChange = maxAzimuthVelocityRadPerSec * dt;
+    for (int i = 0; i < moduleCount; i++) {
+      // A stopped module drives along wherever it ends up pointing, so it has to turn first
+      if (Math.hypot(setpointModuleVx[i], setpointModuleVy[i]) < STOPPED_SPEED_METERS_PER_SEC
+          && Math.hypot(desiredModuleVx[i], desiredModuleVy[i]) >= STOPPED_SPEED_METERS_PER_SEC
+          && Math.abs(getHeadingChange(i, desiredModuleVx[i], desiredModuleVy[i]))
+              > maxHeadingChange) {
+        maxFraction = 0.0;
+      }
+    }
+    double maxSkidDelta = maxSkidAccelerationMetersPerSecSq * dt;
+    for (int i = 0; i < moduleCount; i++) {
+      double deltaNorm =
+          Math.hypot(
+              desiredModuleVx[i] - setpointModuleVx[i], desiredModuleVy[i] - setpointModuleVy[i]);
+      if (deltaNorm > maxSkidDelta) {
+        maxFraction = Math.min(maxFraction, maxSkidDelta / deltaNorm);
+      }
+    }
+    for (int i = 0; i < moduleCount; i++) {
+      if (isFeasible(i, maxFraction, dt)) {
+        continue;
+      }
+      double low = 0.0;
+      double high = maxFraction;
+      for (int iteration = 0; iteration < BISECTION_ITERATIONS; iteration++) {
+        double middle = (low + high) / 2.0;
+        if (isFeasible(i, middle, dt)) {
+          low = middle;
+        } else {
+          high = middle;
+        }
+      }
+      maxFraction = low;
+    }
+
+    // Build the new setpoint
+    setpointVx += (vx - setpointVx) * maxFraction;
+    setpointVy += (vy - setpointVy) * maxFraction;
+    setpointOmega += (omega - setpointOmega) * maxFraction;
+    for (int i = 0; i < moduleCount; i++) {
+      double moduleVx = setpointVx - setpointOmega * moduleTranslationsY[i];
+      double moduleVy = setpointVy + setpointOmega * moduleTranslationsX[i];
+      double speed = Math.hypot(moduleVx, moduleVy);
+      setpointModuleVx[i] = moduleVx;
+      setpointModuleVy[i] = moduleVy;
+
+      if (speed < STOPPED_SPEED_METERS_PER_SEC) {
+        speed = 0.0;
+        if (Math.hypot(desiredModuleVx[i], desiredModuleVy[i]) >= STOPPED_SPEED_METERS_PER_SEC) {
+          // Steer in place toward the desired direction
+          setpointHeadingsRad[i] =
+              MathUtil.angleModulus(
+                  setpointHeadingsRad[i]
+                      + MathUtil.clamp(
+                          getHeadingChange(i, desiredModuleVx[i], desiredModuleVy[i]),
+                          -maxHeadingChange,
+                          maxHeadingChange));
+        }
+        // Otherwise hold the last heading instead of snapping the wheel to an arbitrary angle
+      } else {
+        // Flip the wheel rather than turn it more than 90°
+        double headingChange =
+            MathUtil.angleModulus(Math.atan2(moduleVy, moduleVx) - setpointHeadingsRad[i]);
+        if (Math.abs(headingChange) > Math.PI / 2.0) {
+          speed = -speed;
+        }
+        setpointHeadingsRad[i] =
+            MathUtil.angleModulus(
+                setpointHeadingsRad[i]
+                    + MathUtil.clamp(
+                        getHeadingChange(i, moduleVx, moduleVy),
+                        -maxHeadingChange,
+                        maxHeadingChange));
+      }
+
+      outputStates[i].speedMetersPerSecond = speed;
+      if (outputStates[i].angle.getRadians() != setpointHeadingsRad[i]) {
+        outputStates[i].angle = new Rotation2d(setpointHeadingsRad[i]);
+      }
+    }
+    return outputStates;
+  }
+
+  /** Returns the forward velocity of the last setpoint in meters/sec. */
+  public double getSetpointVx() {
+    return setpointVx;
+  }
+
+  /** Returns the sideways velocity of the last setpoint in meters/sec. */
+  public double getSetpointVy() {
+    return setpointVy;
+  }
+
+  /** Returns the angular velocity of the last setpoint in radians/sec. */
+  public double getSetpointOmega() {
+    return setpointOmega;
+  }
+
+  /**
+   * Returns whether a module can go from its previous setpoint to the given fraction of the way to
+   * its desired velocity within the azimuth and drive acceleration limits.
+   */
+  private boolean isFeasible(int module, double fraction, double dt) {
+    double moduleVx =
+        setpointModuleVx[module] + (desiredModuleVx[module] - setpointModuleVx[module]) * fraction;
+    double moduleVy =
+        setpointModuleVy[module] + (desiredModuleVy[module] - setpointModuleVy[module]) * fraction;
+    double speed = Math.hypot(moduleVx, moduleVy);
+    double previousSpeed = Math.hypot(setpointModuleVx[module], setpointModuleVy[module]);
+    if (Math.abs(speed - previousSpeed) > maxDriveAccelerationMetersPerSecSq * dt) {
+      return false;
+    }
+    if (speed < STOPPED_SPEED_METERS_PER_SEC || previousSpeed < STOPPED_SPEED_METERS_PER_SEC) {
+      // Stopped modules can point anywhere, ones starting from rest already steered in place
+      return true;
+    }
+    return Math.abs(getHeadingChange(module, moduleVx, moduleVy))
+        <= maxAzimuthVelocityRadPerSec * dt;
+  }
+
+  /**
+   * Returns the signed turn from a module's setpoint heading to a velocity direction. The wheel
+   * may flip, so the furthest it ever has to turn is 90°.
+   */
+  private double getHeadingChange(int module, double moduleVx, double moduleVy) {
+    double headingChange =
+        MathUtil.angleModulus(Math.atan2(moduleVy, moduleVx) - setpointHeadingsRad[module]);
+    if (Math.abs(headingChange) > Math.PI / 2.0) {
+      headingChange = MathUtil.angleModulus(headingChange + Math.PI);
+    }
+    return headingChange;
+  }
+}
@@ -0,0 +1,215 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import java.util.Arrays;
+
+/**
+ * Finds modules whose motion doesn't fit the rigid body motion of the rest of the robot, which is
+ * what a slipping wheel or a wheel dragged in a collision looks like. For each module, the chassis
+ * translation and rotation are fit to the other modules (the rotation comes from the gyro when it's
+ * available), and the module's delta is compared with the delta that motion implies at its
+ * position. Only the component along the wheel's heading is compared, since that's all the drive
+ * encoder measures. The difference is low-pass filtered to average out encoder quantization. Past a
+ * threshold (a floor plus a fraction of the module's speed) the module's weight falls from 1 to 0
+ * at twice the threshold. Only the worst module is down-weighted, since the check assumes the
+ * others agree. Every sample costs a fixed number of operations on primitives.
+ */
+public class WheelSlipDetector {
+  // Averages out roughly ten samples of encoder quantization at 250 Hz
+  private static final double RESIDUAL_TIME_CONSTANT_S = 0.04;
+  private static final double MIN_SLIP_SPEED_MPS = 0.25;
+  private static final double SLIP_SPEED_FRACTION = 0.2; // Of the expected module speed
+  // Longer gaps restart the filters, e.g. the first sample or after the robot code stalled
+  private static final double MAX_SAMPLE_GAP_S = 0.1;
+
+  private final int moduleCount;
+  private final double[] moduleX;
+  private final double[] moduleY;
+  private final double sumModuleX;
+  private final double sumModuleY;
+  private final double sumModuleRadiusSquared;
+
+  private final double[] expectedDeltaX;
+  private final double[] expectedDeltaY;
+  private final double[] filteredResiduals; // Along each wheel's heading
+  private final double[] residualSpeeds;
+  private final double[] weights;
+  private final boolean[] slipping;
+  private long slipEventCount = 0;
+  private long multipleSlipSampleCount = 0;
+
+  /**
+   * Creates a new WheelSlipDetector.
+   *
+   * @param moduleTranslations Module positions relative to the robot center, at least three
+   */
+  public WheelSlipDetector(Translation2d[] moduleTranslations) {
+    moduleCount = moduleTranslations.length;
+    moduleX = new double[moduleCount];
+    moduleY = new double[moduleCount];
+    double sumX = 0.0;
+    double sumY = 0.0;
+    double sumRadiusSquared = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      moduleX[i] = moduleTranslations[i].getX();
+      moduleY[i] = moduleTranslations[i].getY();
+      sumX += moduleX[i];
+      sumY += moduleY[i];
+      sumRadiusSquared += moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i];
+    }
+    sumModuleX = sumX;
+    sumModuleY = sumY;
+    sumModuleRadiusSquared = sumRadiusSquared;
+
+    expectedDeltaX = new double[moduleCount];
+    expectedDeltaY = new double[moduleCount];
+    filteredResiduals = new double[moduleCount];
+    residualSpeeds = new double[moduleCount];
+    weights = new double[moduleCount];
+    slipping = new boolean[moduleCount];
+    Arrays.fill(weights, 1.0);
+  }
+
+  /**
+   * Checks one odometry sample.
+   *
+   * @param deltaX Distance each module moved since the last sample, robot relative X
+   * @param deltaY Distance each module moved since the last sample, robot relative Y
+   * @param headingCos Cosine of each module's robot relative heading
+   * @param headingSin Sine of each module's robot relative heading
+   * @param gyroDeltaRad Rotation measured by the gyro since the last sample, or NaN if unavailable
+   * @param dt Time since the last sample in seconds
+   */
+  public void update(
+      double[] deltaX,
+      double[] deltaY,
+      double[] headingCos,
+      double[] headingSin,
+      double gyroDeltaRad,
+      double dt) {
+    if (!(dt > 0.0 && dt <= MAX_SAMPLE_GAP_S)) {
+      for (int i = 0; i < moduleCount; i++) {
+        expectedDeltaX[i] = deltaX[i];
+        expectedDeltaY[i] = deltaY[i];
+        filteredResiduals[i] = 0.0;
+        residualSpeeds[i] = 0.0;
+        weights[i] = 1.0;
+        slipping[i] = false;
+      }
+      return;
+    }
+
+    double sumDeltaX = 0.0;
+    double sumDeltaY = 0.0;
+    double sumCross = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      sumDeltaX += deltaX[i];
+      sumDeltaY += deltaY[i];
+      sumCross += moduleX[i] * deltaY[i] - moduleY[i] * deltaX[i];
+    }
+
+    // Fit the motion to every module but one by removing it from the sums, then predict its delta
+    double otherCount = moduleCount - 1;
+    double alpha = Math.min(1.0, dt / RESIDUAL_TIME_CONSTANT_S);
+    int worstModule = -1;
+    double worstRatio = 1.0;
+    int slippingCount = 0;
+    for (int i = 0; i < moduleCount; i++) {
+      double otherMeanX = (sumModuleX - moduleX[i]) / otherCount;
+      double otherMeanY = (sumModuleY - moduleY[i]) / otherCount;
+      double otherMeanDeltaX = (sumDeltaX - deltaX[i]) / otherCount;
+      double otherMeanDeltaY = (sumDeltaY - deltaY[i]) / otherCount;
+
+      double rotationRad = gyroDeltaRad;
+      if (Double.isNaN(rotationRad)) {
+        // Least squares rotation about the centroid of the other modules
+        double cross =
+            sumCross
+                - (moduleX[i] * deltaY[i] - moduleY[i] * deltaX[i])
+                - otherCount * (otherMeanX * otherMeanDeltaY - otherMeanY * otherMeanDeltaX);
+        double radiusSquared =
+            sumModuleRadiusSquared
+                - (moduleX[i] * moduleX[i] + moduleY[i] * moduleY[i])
+                - otherCount * (otherMeanX * otherMeanX + otherMeanY * otherMeanY);
+        rotationRad = cross / radiusSquared;
+      }
+
+      expectedDeltaX[i] = otherMeanDeltaX - rotationRad * (moduleY[i] - otherMeanY);
+      expectedDeltaY[i] = otherMeanDeltaY + rotationRad * (moduleX[i] - otherMeanX);
+
+      // Same projection Drive uses when it blends in the expected delta
+      double residual =
+          (deltaX[i] - expectedDeltaX[i]) * headingCos[i]
+              + (deltaY[i] - expectedDeltaY[i]) * headingSin[i];
+      filteredResiduals[i] += alpha * (residual / dt - filteredResiduals[i]);
+      residualSpeeds[i] = Math.abs(filteredResiduals[i]);
+
+      double threshold =
+          MIN_SLIP_SPEED_MPS
+              + SLIP_SPEED_FRACTION * Math.hypot(expectedDeltaX[i], expectedDeltaY[i]) / dt;
+      double ratio = residualSpeeds[i] / threshold;
+      if (ratio > 1.0) {
+        slippingCount++;
+      }
+      if (ratio > worstRatio) {
+        worstRatio = ratio;
+        worstModule = i;
+      }
+    }
+    if (slippingCount > 1) {
+      multipleSlipSampleCount++;
+    }
+
+    for (int i = 0; i < moduleCount; i++) {
+      boolean wasSlipping = slipping[i];
+      slipping[i] = i == worstModule;
+      weights[i] = slipping[i] ? Math.max(0.0, 2.0 - worstRatio) : 1.0;
+      if (slipping[i] && !wasSlipping) {
+        slipEventCount++;
+      }
+    }
+  }
+
+  /** Returns how much to trust a module's delta from the last sample, from 0 to 1. */
+  public double getWeight(int index) {
+    return weights[index];
+  }
+
+  /** Returns the robot relative X delta the other modules imply for a module. */
+  public double getExpectedDeltaX(int index) {
+    return expectedDeltaX[index];
+  }
+
+  /** Returns the robot relative Y delta the other modules imply for a module. */
+  public double getExpectedDeltaY(int index) {
+    return expectedDeltaY[index];
+  }
+
+  /**
+   * Returns the filtered speed of each module along its heading relative to the rigid body motion,
+   * in m/s.
+   */
+  public double[] getResidualSpeeds() {
+    return residualSpeeds;
+  }
+
+  /** Returns whether each module is being down-weighted. */
+  public boolean[] getSlipping() {
+    return slipping;
+  }
+
+  /** Returns how many times a module started slipping. */
+  public long getSlipEventCount() {
+    return slipEventCount;
+  }
+
+  /**
+   * Returns how many samples had more than one module past the threshold, where the modules can't
+   * be checked against each other (e.g. the whole robot being pushed).
+   */
+  public long getMultipleSlipSampleCount() {
+    return multipleSlipSampleCount;
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Simulated camera pipeline. Runs on its own thread, observes the simulated robot pose, and pushes
+ * noisy measurements the same way a real coprocessor pipeline would. Useful for load testing the
+ * vision queue at frame rates no real camera reaches.
+ */
+public class VisionCameraSim {
+  private static final double MAX_RANGE_METERS = 6.0;
+  private static final double XY_STD_DEV_BASELINE = 0.02; // At one meter from a single tag
+  private static final double THETA_STD_DEV_BASELINE = 0.06;
+
+  // TODO Update per game, rough positions of the tags the camera can see
+  private static final Translation2d[] tagPositions =
+      new Translation2d[] {
+        new Translation2d(0.0, 5.55),
+        new Translation2d(0.0, 4.98),
+        new Translation2d(16.54, 5.55),
+        new Translation2d(16.54, 4.98),
+        new Translation2d(1.84, 8.21),
+        new Translation2d(14.70, 8.21)
+      };
+
+  private final Supplier<Pose2d> poseSupplier;
+  private final Consumer<VisionMeasurement> measurementConsumer;
+  private final Random random;
+  private final Thread thread;
+  private final long framePeriodNanos;
+
+  /**
+   * Creates a new VisionCameraSim. Call {@link #start()} to begin producing measurements.
+   *
+   * @param name Name of the camera thread
+   * @param poseSupplier Pose the camera observes, must be safe to read from another thread
+   * @param measurementConsumer Receives every measurement, called from the camera thread
+   * @param framesPerSecond Rate measurements are produced at
+   * @param seed Seed for the measurement noise
+   */
+  public VisionCameraSim(
+      String name,
+      Supplier<Pose2d> poseSupplier,
+      Consumer<VisionMeasurement> measurementConsumer,
+      double framesPerSecond,
+      long seed) {
+    this.poseSupplier = poseSupplier;
+    this.measurementConsumer = measurementConsumer;
+    this.random = new Random(seed);
+    this.framePeriodNanos = (long) (1e9 / framesPerSecond);
+
+    thread = new Thread(this::run, name);
+    thread.setDaemon(true);
+  }
+
+  /** Starts the camera thread. */
+  public void start() {
+    thread.start();
+  }
+
+  /** Stops the camera thread. */
+  public void stop() {
+    thread.interrupt();
+  }
+
+  private void run() {
+    long nextFrameNanos = System.nanoTime();
+    while (!Thread.currentThread().isInterrupted()) {
+      VisionMeasurement measurement = capture(poseSupplier.get());
+      if (measurement != null) {
+        measurementConsumer.accept(measurement);
+      }
+
+      nextFrameNanos += framePeriodNanos;
+      long sleepNanos = nextFrameNanos - System.nanoTime();
+      if (sleepNanos > 0) {
+        try {
+          Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  /** Returns a measurement of the pose, or null if no tags are in range. */
+  private VisionMeasurement capture(Pose2d truePose) {
+    int tagCount = 0;
+    double totalDistance = 0.0;
+    for (Translation2d tagPosition : tagPositions) {
+      double distance = tagPosition.getDistance(truePose.getTranslation());
+      if (distance <= MAX_RANGE_METERS) {
+        tagCount++;
+        totalDistance += distance;
+      }
+    }
+    if (tagCount == 0) {
+      return null;
+    }
+
+    // Noise grows with the square of the distance and shrinks with more tags
+    double averageDistance = totalDistance / tagCount;
+    double noiseScale = averageDistance * averageDistance / tagCount;
+    double xyStdDev = XY_STD_DEV_BASELINE * noiseScale;
+    double thetaStdDev = THETA_STD_DEV_BASELINE * noiseScale;
+    Pose2d measuredPose =
+        new Pose2d(
+            truePose.getX() + random.nextGaussian() * xyStdDev,
+            truePose.getY() + random.nextGaussian() * xyStdDev,
+            truePose.getRotation().plus(new Rotation2d(random.nextGaussian() * thetaStdDev)));
+
+    return new VisionMeasurement(
+        Timer.getFPGATimestamp(),
+        measuredPose,
+        VecBuilder.fill(xyStdDev, xyStdDev, thetaStdDev),
+        tagCount,
+        tagCount == 1 ? random.nextDouble() * 0.4 : 0.0,
+        averageDistance);
+  }
+}
@@ -0,0 +1,43 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+
+/** A robot pose observation from a camera pipeline. Immutable, safe to share across threads. */
+public class VisionMeasurement {
+  public final double timestampSeconds;
+  public final Pose2d pose;
+  public final Matrix<N3, N1> stdDevs; // x (meters), y (meters), theta (radians)
+  public final int tagCount;
+  public final double ambiguity; // Only meaningful for single tag observations
+  public final double averageTagDistanceMeters;
+
+  /**
+   * Creates a new VisionMeasurement.
+   *
+   * @param timestampSeconds FPGA timestamp of when the image was captured, in seconds
+   * @param pose Robot pose measured by the camera
+   * @param stdDevs Standard deviations of the measurement (x, y, theta)
+   * @param tagCount Number of tags used to solve the pose
+   * @param ambiguity Pose ambiguity ratio reported by the pipeline
+   * @param averageTagDistanceMeters Average distance from the camera to the tags used
+   */
+  public VisionMeasurement(
+      double timestampSeconds,
+      Pose2d pose,
+      Matrix<N3, N1> stdDevs,
+      int tagCount,
+      double ambiguity,
+      double averageTagDistanceMeters) {
+    this.timestampSeconds = timestampSeconds;
+    this.pose = pose;
+    this.stdDevs = stdDevs;
+    this.tagCount = tagCount;
+    this.ambiguity = ambiguity;
+    this.averageTagDistanceMeters = averageTagDistanceMeters;
+  }
+}
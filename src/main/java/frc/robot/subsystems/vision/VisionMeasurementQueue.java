@@ -0,0 +1,151 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.littletonrobotics.junction.AutoLog;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Lock-free hand-off between camera threads and the main loop. Cameras call {@link
+ * #offer(VisionMeasurement)} from any thread, the main loop calls {@link
+ * #drain(MeasurementConsumer)} once per cycle to apply the measurements that pass the rejection
+ * checks, oldest first.
+ */
+public class VisionMeasurementQueue {
+  @AutoLog
+  /**
+   * Measurements drained in one cycle - used as "inputs" for the robot code, since when they arrive
+   * depends on the camera threads
+   */
+  public static class VisionMeasurementInputs {
+    public double[] timestamps = new double[] {};
+    public Pose2d[] poses = new Pose2d[] {};
+    public double[] xStdDevs = new double[] {};
+    public double[] yStdDevs = new double[] {};
+    public double[] thetaStdDevs = new double[] {};
+    public int[] tagCounts = new int[] {};
+    public double[] ambiguities = new double[] {};
+    public double[] averageTagDistancesMeters = new double[] {};
+  }
+
+  /** Receives an accepted measurement, with its standard deviations split into x, y and theta. */
+  @FunctionalInterface
+  public interface MeasurementConsumer {
+    void accept(
+        double timestampSeconds,
+        Pose2d pose,
+        double xStdDevMeters,
+        double yStdDevMeters,
+        double thetaStdDevRad);
+  }
+
+  private static final int MAX_PENDING = 256; // Oldest measurements are dropped past this
+
+  // TODO Update per game
+  private static final double FIELD_LENGTH_METERS = 16.54;
+  private static final double FIELD_WIDTH_METERS = 8.21;
+  private static final double FIELD_BORDER_MARGIN_METERS = 0.5;
+  private static final double MAX_AMBIGUITY = 0.3;
+  private static final double MAX_TAG_DISTANCE_METERS = 4.0;
+
+  private static final Comparator<VisionMeasurement> timestampOrder =
+      Comparator.comparingDouble((VisionMeasurement measurement) -> measurement.timestampSeconds);
+
+  private final Queue<VisionMeasurement> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final AtomicInteger droppedCount = new AtomicInteger();
+  private final ArrayList<VisionMeasurement> drained = new ArrayList<>(MAX_PENDING);
+  private final VisionMeasurementInputsAutoLogged inputs = new VisionMeasurementInputsAutoLogged();
+
+  /** Queues a measurement. Safe to call from any thread, never blocks. */
+  public void offer(VisionMeasurement measurement) {
+    pending.offer(measurement);
+    if (pendingCount.incrementAndGet() > MAX_PENDING && pending.poll() != null) {
+      pendingCount.decrementAndGet();
+      droppedCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Removes every queued measurement, logs them as inputs, and passes the accepted ones to the
+   * consumer in timestamp order. In replay the logged measurements are applied instead. Should only
+   * be called from the main loop.
+   */
+  public void drain(MeasurementConsumer consumer) {
+    VisionMeasurement measurement;
+    while ((measurement = pending.poll()) != null) {
+      pendingCount.decrementAndGet();
+      drained.add(measurement);
+    }
+    drained.sort(timestampOrder);
+
+    int count = drained.size();
+    if (inputs.timestamps.length != count) {
+      inputs.timestamps = new double[count];
+      inputs.poses = new Pose2d[count];
+      inputs.xStdDevs = new double[count];
+      inputs.yStdDevs = new double[count];
+      inputs.thetaStdDevs = new double[count];
+      inputs.tagCounts = new int[count];
+      inputs.ambiguities = new double[count];
+      inputs.averageTagDistancesMeters = new double[count];
+    }
+    for (int i = 0; i < count; i++) {
+      measurement = drained.get(i);
+      inputs.timestamps[i] = measurement.timestampSeconds;
+      inputs.poses[i] = measurement.pose;
+      inputs.xStdDevs[i] = measurement.stdDevs.get(0, 0);
+      inputs.yStdDevs[i] = measurement.stdDevs.get(1, 0);
+      inputs.thetaStdDevs[i] = measurement.stdDevs.get(2, 0);
+      inputs.tagCounts[i] = measurement.tagCount;
+      inputs.ambiguities[i] = measurement.ambiguity;
+      inputs.averageTagDistancesMeters[i] = measurement.averageTagDistanceMeters;
+    }
+    drained.clear();
+    Logger.processInputs("Vision", inputs);
+
+    // Everything below reads the inputs, so replay applies exactly what the robot did
+    int acceptedCount = 0;
+    int rejectedCount = 0;
+    for (int i = 0; i < inputs.timestamps.length; i++) {
+      if (shouldReject(
+          inputs.poses[i],
+          inputs.tagCounts[i],
+          inputs.ambiguities[i],
+          inputs.averageTagDistancesMeters[i])) {
+        rejectedCount++;
+      } else {
+        consumer.accept(
+            inputs.timestamps[i],
+            inputs.poses[i],
+            inputs.xStdDevs[i],
+            inputs.yStdDevs[i],
+            inputs.thetaStdDevs[i]);
+        acceptedCount++;
+        Logger.recordOutput("Vision/LastAcceptedPose", inputs.poses[i]);
+      }
+    }
+
+    Logger.recordOutput("Vision/AcceptedCount", acceptedCount);
+    Logger.recordOutput("Vision/RejectedCount", rejectedCount);
+    Logger.recordOutput("Vision/DroppedCount", droppedCount.get());
+  }
+
+  /** Returns true if the measurement is ambiguous, too far from the tags, or off the field. */
+  private static boolean shouldReject(
+      Pose2d pose, int tagCount, double ambiguity, double averageTagDistanceMeters) {
+    return tagCount == 0
+        || (tagCount == 1 && ambiguity > MAX_AMBIGUITY)
+        || averageTagDistanceMeters > MAX_TAG_DISTANCE_METERS
+        || pose.getX() < -FIELD_BORDER_MARGIN_METERS
+        || pose.getX() > FIELD_LENGTH_METERS + FIELD_BORDER_MARGIN_METERS
+        || pose.getY() < -FIELD_BORDER_MARGIN_METERS
+        || pose.getY() > FIELD_WIDTH_METERS + FIELD_BORDER_MARGIN_METERS;
+  }
+}
@@ -0,0 +1,135 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * Turns raw driver stick values into smoothed, field relative drive commands. Each cycle applies a
+ * radial deadband to the translation stick, a response curve, a speed scale for precision or turbo
+ * mode, then per-axis and vector slew rate limits so the commands can't jump. Outputs are
+ * fractions of max speed, from -1 to 1. The alliance is read once on {@link #reset()} instead of
+ * every cycle, so red alliance flips stay cheap. Everything runs on primitives with no allocation.
+ */
+public class DriverInputShaper {
+  private final double deadband;
+  private final double linearExponent;
+  private final double omegaExponent;
+  private final double axisSlewRate;
+  private final double linearSlewRate;
+  private final double omegaSlewRate;
+
+  private boolean flipped = false;
+  private double x = 0.0;
+  private double y = 0.0;
+  private double omega = 0.0;
+
+  /**
+   * Creates a new DriverInputShaper.
+   *
+   * @param deadband Stick deflection ignored around center, from 0 to 1
+   * @param linearExponent Response curve exponent for translation, 1 is linear
+   * @param omegaExponent Response curve exponent for rotation, 1 is linear
+   * @param axisSlewRate Max change of the X or Y output, per second
+   * @param linearSlewRate Max length of the translation output's step vector, per second. This
+   *     limits the 2D change, not just the speed, so reversing or turning the stick also changes
+   *     direction at this rate
+   * @param omegaSlewRate Max change of the rotation output, per second
+   */
+  public DriverInputShaper(
+      double deadband,
+      double linearExponent,
+      double omegaExponent,
+      double axisSlewRate,
+      double linearSlewRate,
+      double omegaSlewRate) {
+    this.deadband = deadband;
+    this.linearExponent = linearExponent;
+    this.omegaExponent = omegaExponent;
+    this.axisSlewRate = axisSlewRate;
+    this.linearSlewRate = linearSlewRate;
+    this.omegaSlewRate = omegaSlewRate;
+  }
+
+  /** Starts the outputs from rest and reads the alliance, call when the drive command starts. */
+  public void reset() {
+    reset(0.0, 0.0, 0.0);
+  }
+
+  /**
+   * Starts the outputs from the robot's current motion and reads the alliance, so switching
+   * between drive commands doesn't jolt the robot.
+   *
+   * @param fieldX Field relative X velocity as a fraction of max speed (blue alliance frame)
+   * @param fieldY Field relative Y velocity as a fraction of max speed (blue alliance frame)
+   * @param omega Rotation as a fraction of max speed
+   */
+  public void reset(double fieldX, double fieldY, double omega) {
+    flipped =
+        DriverStation.getAlliance().isPresent()
+            && DriverStation.getAlliance().get() == Alliance.Red;
+    x = flipped ? -fieldX : fieldX;
+    y = flipped ? -fieldY : fieldY;
+    this.omega = omega;
+  }
+
+  /**
+   * Shapes one cycle of stick input.
+   *
+   * @param stickX Translation stick X, from -1 to 1
+   * @param stickY Translation stick Y, from -1 to 1
+   * @param stickOmega Rotation stick, from -1 to 1
+   * @param scale Fraction of max speed at full deflection (precision or turbo mode)
+   * @param dt Time since the last cycle in seconds
+   */
+  public void calculate(double stickX, double stickY, double stickOmega, double scale, double dt) {
+    // Radial deadband and curve, so the direction of the stick is kept
+    double magnitude = Math.min(1.0, Math.hypot(stickX, stickY));
+    double shapedMagnitude =
+        Math.pow(MathUtil.applyDeadband(magnitude, deadband), linearExponent) * scale;
+    double targetX = magnitude > 0.0 ? stickX / magnitude * shapedMagnitude : 0.0;
+    double targetY = magnitude > 0.0 ? stickY / magnitude * shapedMagnitude : 0.0;
+    double targetOmega =
+        Math.copySign(
+                Math.pow(MathUtil.applyDeadband(Math.abs(stickOmega), deadband), omegaExponent),
+                stickOmega)
+            * scale;
+
+    // Per-axis limits first, then the vector limit keeps diagonal moves as smooth as straight ones
+    double maxAxisStep = axisSlewRate * dt;
+    double stepX = MathUtil.clamp(targetX - x, -maxAxisStep, maxAxisStep);
+    double stepY = MathUtil.clamp(targetY - y, -maxAxisStep, maxAxisStep);
+    double stepLength = Math.hypot(stepX, stepY);
+    double maxLinearStep = linearSlewRate * dt;
+    if (stepLength > maxLinearStep) {
+      stepX *= maxLinearStep / stepLength;
+      stepY *= maxLinearStep / stepLength;
+    }
+    x += stepX;
+    y += stepY;
+    double maxOmegaStep = omegaSlewRate * dt;
+    omega += MathUtil.clamp(targetOmega - omega, -maxOmegaStep, maxOmegaStep);
+  }
+
+  /** Returns the field relative X output for the driver's alliance, from -1 to 1. */
+  public double getX() {
+    return x;
+  }
+
+  /** Returns the field relative Y output for the driver's alliance, from -1 to 1. */
+  public double getY() {
+    return y;
+  }
+
+  /** Returns the rotation output, from -1 to 1. */
+  public double getOmega() {
+    return omega;
+  }
+
+  /** Returns whether the driver is on the red alliance, so field relative X and Y are flipped. */
+  public boolean isFlipped() {
+    return flipped;
+  }
+}
@@ -0,0 +1,187 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util;
+
+/**
+ * Streaming least-squares fit of a simple motor feedforward, volts = kS * sign(velocity) + kV *
+ * velocity + kA * acceleration. Only the sums of the normal equations are kept, so memory and the
+ * cost of each sample are constant no matter how long characterization runs. Not thread-safe.
+ */
+public class FeedforwardFitter {
+  private static final int PARAMETER_COUNT = 3;
+  // Below this mean squared acceleration (e.g. a quasistatic test alone) kA is left at zero
+  private static final double MIN_MEAN_SQUARED_ACCELERATION = 1e-6;
+  private static final double SINGULAR_PIVOT = 1e-12;
+
+  // Sums of x * x^T and x * y over every sample, x = {sign(velocity), velocity, acceleration}
+  private final double[] xx = new double[PARAMETER_COUNT * PARAMETER_COUNT];
+  private final double[] xy = new double[PARAMETER_COUNT];
+  private double sumY = 0.0;
+  private double sumYSquared = 0.0;
+  private int sampleCount = 0;
+
+  // Scratch space for solving, reused between solves
+  private final double[] matrix = new double[PARAMETER_COUNT * PARAMETER_COUNT];
+  private final double[] vector = new double[PARAMETER_COUNT];
+  private final double[] solution = new double[PARAMETER_COUNT];
+
+  private double kS = 0.0;
+  private double kV = 0.0;
+  private double kA = 0.0;
+  private double rSquared = 0.0;
+
+  /** Clears every sample and the fitted gains. */
+  public void reset() {
+    for (int i = 0; i < xx.length; i++) {
+      xx[i] = 0.0;
+    }
+    for (int i = 0; i < xy.length; i++) {
+      xy[i] = 0.0;
+    }
+    sumY = 0.0;
+    sumYSquared = 0.0;
+    sampleCount = 0;
+    kS = 0.0;
+    kV = 0.0;
+    kA = 0.0;
+    rSquared = 0.0;
+  }
+
+  /**
+   * Adds a sample.
+   *
+   * @param velocity Measured velocity
+   * @param acceleration Measured acceleration
+   * @param volts Voltage that was applied while the velocity and acceleration were measured
+   */
+  public void addSample(double velocity, double acceleration, double volts) {
+    double sign = Math.signum(velocity);
+    xx[0] += sign * sign;
+    xx[1] += sign * velocity;
+    xx[2] += sign * acceleration;
+    xx[4] += velocity * velocity;
+    xx[5] += velocity * acceleration;
+    xx[8] += acceleration * acceleration;
+    xy[0] += sign * volts;
+    xy[1] += velocity * volts;
+    xy[2] += acceleration * volts;
+    sumY += volts;
+    sumYSquared += volts * volts;
+    sampleCount++;
+  }
+
+  /**
+   * Fits the gains to every sample so far. Cheap enough to call after every sample.
+   *
+   * @return Whether the fit succeeded, the previous gains are kept otherwise
+   */
+  public boolean solve() {
+    // Without acceleration data the kA column is all zeros, fit kS and kV alone
+    int size =
+        sampleCount > 0 && xx[8] / sampleCount > MIN_MEAN_SQUARED_ACCELERATION
+            ? PARAMETER_COUNT
+            : PARAMETER_COUNT - 1;
+    if (sampleCount < size) {
+      return false;
+    }
+
+    // Copy the symmetric normal equations (only the upper triangle is accumulated)
+    for (int row = 0; row < size; row++) {
+      for (int column = 0; column < size; column++) {
+        matrix[row * size + column] = getXX(row, column);
+      }
+      vector[row] = xy[row];
+    }
+    if (!solveLinearSystem(size)) {
+      return false;
+    }
+
+    kS = solution[0];
+    kV = solution[1];
+    kA = size == PARAMETER_COUNT ? solution[2] : 0.0;
+
+    // Residuals from the sums, SSE = y'y - 2 b'X'y + b'X'X b
+    double sumSquaredErrors = sumYSquared;
+    for (int row = 0; row < size; row++) {
+      sumSquaredErrors -= 2.0 * solution[row] * xy[row];
+      for (int column = 0; column < size; column++) {
+        sumSquaredErrors += solution[row] * getXX(row, column) * solution[column];
+      }
+    }
+    double totalSumSquares = sumYSquared - sumY * sumY / sampleCount;
+    rSquared =
+        totalSumSquares > 0.0 ? 1.0 - Math.max(sumSquaredErrors, 0.0) / totalSumSquares : 0.0;
+    return true;
+  }
+
+  private double getXX(int row, int column) {
+    return row <= column ? xx[row * PARAMETER_COUNT + column] : xx[column * PARAMETER_COUNT + row];
+  }
+
+  /** Solves matrix * solution = vector with Gaussian elimination and partial pivoting. */
+  private boolean solveLinearSystem(int size) {
+    for (int pivot = 0; pivot < size; pivot++) {
+      int bestRow = pivot;
+      for (int row = pivot + 1; row < size; row++) {
+        if (Math.abs(matrix[row * size + pivot]) > Math.abs(matrix[bestRow * size + pivot])) {
+          bestRow = row;
+        }
+      }
+      if (Math.abs(matrix[bestRow * size + pivot]) < SINGULAR_PIVOT) {
+        return false;
+      }
+      if (bestRow != pivot) {
+        for (int column = 0; column < size; column++) {
+          double temp = matrix[pivot * size + column];
+          matrix[pivot * size + column] = matrix[bestRow * size + column];
+          matrix[bestRow * size + column] = temp;
+        }
+        double temp = vector[pivot];
+        vector[pivot] = vector[bestRow];
+        vector[bestRow] = temp;
+      }
+
+      for (int row = pivot + 1; row < size; row++) {
+        double factor = matrix[row * size + pivot] / matrix[pivot * size + pivot];
+        for (int column = pivot; column < size; column++) {
+          matrix[row * size + column] -= factor * matrix[pivot * size + column];
+        }
+        vector[row] -= factor * vector[pivot];
+      }
+    }
+
+    for (int row = size - 1; row >= 0; row--) {
+      double value = vector[row];
+      for (int column = row + 1; column < size; column++) {
+        value -= matrix[row * size + column] * solution[column];
+      }
+      solution[row] = value / matrix[row * size + row];
+    }
+    return true;
+  }
+
+  /** Returns the fitted static gain in volts. */
+  public double getKs() {
+    return kS;
+  }
+
+  /** Returns the fitted velocity gain in volts per unit of velocity. */
+  public double getKv() {
+    return kV;
+  }
+
+  /** Returns the fitted acceleration gain in volts per unit of acceleration. */
+  public double getKa() {
+    return kA;
+  }
+
+  /** Returns the coefficient of determination of the fit, 1 is a perfect fit. */
+  public double getRSquared() {
+    return rSquared;
+  }
+
+  /** Returns the number of samples added since the last reset. */
+  public int getSampleCount() {
+    return sampleCount;
+  }
+}
@@ -0,0 +1,188 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import java.util.Optional;
+
+/**
+ * Fixed-size ring buffer of timestamped robot poses and chassis velocities, stored in primitive
+ * arrays so inserts never allocate. Lookups binary search the buffer and linearly interpolate
+ * between the two samples around the requested time. Not thread-safe, meant to be written and read
+ * from the main loop.
+ */
+public class PoseHistory {
+  // Index of each value in the array filled by sample()
+  public static final int X = 0;
+  public static final int Y = 1;
+  public static final int THETA = 2;
+  public static final int VX = 3;
+  public static final int VY = 4;
+  public static final int OMEGA = 5;
+  public static final int SAMPLE_SIZE = 6;
+
+  private final int capacity;
+  private final double[] timestamps;
+  private final double[] xMeters;
+  private final double[] yMeters;
+  private final double[] thetaRad;
+  private final double[] vxMetersPerSec;
+  private final double[] vyMetersPerSec;
+  private final double[] omegaRadPerSec;
+  private int head = 0; // Index the next sample is written to
+  private int size = 0;
+
+  /**
+   * Creates a new PoseHistory.
+   *
+   * @param capacity Number of samples kept, the oldest is overwritten once full
+   */
+  public PoseHistory(int capacity) {
+    this.capacity = capacity;
+    timestamps = new double[capacity];
+    xMeters = new double[capacity];
+    yMeters = new double[capacity];
+    thetaRad = new double[capacity];
+    vxMetersPerSec = new double[capacity];
+    vyMetersPerSec = new double[capacity];
+    omegaRadPerSec = new double[capacity];
+  }
+
+  /**
+   * Adds a sample. Timestamps should increase, any samples at or after the new timestamp (e.g.
+   * after a pose reset) are discarded first.
+   *
+   * @param timestamp Timestamp of the sample in seconds
+   * @param pose Field relative pose of the robot
+   * @param vxMetersPerSec Robot relative forward velocity
+   * @param vyMetersPerSec Robot relative sideways velocity
+   * @param omegaRadPerSec Angular velocity
+   */
+  public void addSample(
+      double timestamp,
+      Pose2d pose,
+      double vxMetersPerSec,
+      double vyMetersPerSec,
+      double omegaRadPerSec) {
+    while (size > 0 && timestamps[physicalIndex(size - 1)] >= timestamp) {
+      head = (head - 1 + capacity) % capacity;
+      size--;
+    }
+
+    timestamps[head] = timestamp;
+    xMeters[head] = pose.getX();
+    yMeters[head] = pose.getY();
+    thetaRad[head] = pose.getRotation().getRadians();
+    this.vxMetersPerSec[head] = vxMetersPerSec;
+    this.vyMetersPerSec[head] = vyMetersPerSec;
+    this.omegaRadPerSec[head] = omegaRadPerSec;
+    head = (head + 1) % capacity;
+    size = Math.min(size + 1, capacity);
+  }
+
+  /**
+   * Writes the interpolated state at a timestamp into {@code out}, indexed by {@link #X}, {@link
+   * #Y}, {@link #THETA}, {@link #VX}, {@link #VY} and {@link #OMEGA}. Timestamps outside the
+   * buffer are clamped to the oldest or newest sample. Does not allocate.
+   *
+   * @param timestamp Timestamp to look up in seconds
+   * @param out Array of at least {@link #SAMPLE_SIZE} values to write into
+   * @return False if the buffer is empty, in which case {@code out} is untouched
+   */
+  public boolean sample(double timestamp, double[] out) {
+    if (size == 0) {
+      return false;
+    }
+
+    // Find the first sample at or after the timestamp
+    int low = 0;
+    int high = size - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (timestamps[physicalIndex(middle)] < timestamp) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    int after = physicalIndex(low);
+    if (low == 0 || timestamps[after] <= timestamp) {
+      // Before the oldest sample, after the newest, or an exact match
+      copySample(after, out);
+      return true;
+    }
+
+    int before = physicalIndex(low - 1);
+    double t = (timestamp - timestamps[before]) / (timestamps[after] - timestamps[before]);
+    out[X] = interpolate(xMeters[before], xMeters[after], t);
+    out[Y] = interpolate(yMeters[before], yMeters[after], t);
+    out[THETA] =
+        MathUtil.angleModulus(
+            thetaRad[before] + MathUtil.angleModulus(thetaRad[after] - thetaRad[before]) * t);
+    out[VX] = interpolate(vxMetersPerSec[before], vxMetersPerSec[after], t);
+    out[VY] = interpolate(vyMetersPerSec[before], vyMetersPerSec[after], t);
+    out[OMEGA] = interpolate(omegaRadPerSec[before], omegaRadPerSec[after], t);
+    return true;
+  }
+
+  /** Returns the interpolated pose at a timestamp, or empty if there are no samples. */
+  public Optional<Pose2d> getPose(double timestamp) {
+    double[] out = new double[SAMPLE_SIZE];
+    if (!sample(timestamp, out)) {
+      return Optional.empty();
+    }
+    return Optional.of(new Pose2d(out[X], out[Y], new Rotation2d(out[THETA])));
+  }
+
+  /** Returns the interpolated robot relative velocity at a timestamp, or empty if no samples. */
+  public Optional<ChassisSpeeds> getVelocity(double timestamp) {
+    double[] out = new double[SAMPLE_SIZE];
+    if (!sample(timestamp, out)) {
+      return Optional.empty();
+    }
+    return Optional.of(new ChassisSpeeds(out[VX], out[VY], out[OMEGA]));
+  }
+
+  /** Returns the number of samples currently held. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the timestamp of the oldest sample, or NaN if there are no samples. */
+  public double getOldestTimestamp() {
+    return size == 0 ? Double.NaN : timestamps[physicalIndex(0)];
+  }
+
+  /** Returns the timestamp of the newest sample, or NaN if there are no samples. */
+  public double getNewestTimestamp() {
+    return size == 0 ? Double.NaN : timestamps[physicalIndex(size - 1)];
+  }
+
+  /** Removes every sample. */
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  /** Converts an index counted from the oldest sample into an array index. */
+  private int physicalIndex(int logicalIndex) {
+    return (head - size + logicalIndex + capacity) % capacity;
+  }
+
+  private void copySample(int index, double[] out) {
+    out[X] = xMeters[index];
+    out[Y] = yMeters[index];
+    out[THETA] = thetaRad[index];
+    out[VX] = vxMetersPerSec[index];
+    out[VY] = vyMetersPerSec[index];
+    out[OMEGA] = omegaRadPerSec[index];
+  }
+
+  private static double interpolate(double start, double end, double t) {
+    return start + (end - start) * t;
+  }
+}
@@ -0,0 +1,190 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Steady-state Kalman filter that estimates the velocity of a motor driven mechanism from its
+ * position and applied voltage. The model is the simple motor feedforward, volts = kS *
+ * sign(velocity) + kV * velocity + kA * acceleration, with random acceleration covering whatever
+ * the model misses, and position is the only measurement. The gain depends only on the sample
+ * period, so it is solved once and solved again only if the period changes; each update is then a
+ * handful of multiplies with no allocation. Not thread-safe.
+ */
+public class VelocityEstimator {
+  private static final int MAX_RICCATI_ITERATIONS = 1000;
+  private static final double RICCATI_TOLERANCE = 1e-9;
+  // The gain is solved again when the sample period drifts this far from the one it was solved for
+  private static final double PERIOD_TOLERANCE = 0.25;
+  private static final double MIN_DECAY_EXPONENT = 1e-9;
+
+  private final double kS;
+  private final double kV;
+  private final double kA;
+  private final double measurementVariance;
+  private final double accelerationVariance;
+  private final boolean continuous;
+
+  // Discrete model and gain for the period they were solved for
+  private double period = Double.NaN;
+  private double positionPerVelocity = 0.0;
+  private double velocityDecay = 1.0;
+  private double positionPerVolt = 0.0;
+  private double velocityPerVolt = 0.0;
+  private double positionGain = 0.0;
+  private double velocityGain = 0.0;
+
+  private boolean hasEstimate = false;
+  private double position = 0.0;
+  private double velocity = 0.0;
+
+  /**
+   * Creates a new estimator.
+   *
+   * @param kS Volts to overcome static friction
+   * @param kV Volts per unit of velocity
+   * @param kA Volts per unit of acceleration, must be positive
+   * @param positionStdDev Standard deviation of the position measurement (e.g. encoder resolution)
+   * @param accelerationStdDev Standard deviation of the acceleration the model doesn't predict,
+   *     higher trusts the measurement more and the model less
+   * @param continuous Whether position wraps from -pi to pi
+   */
+  public VelocityEstimator(
+      double kS,
+      double kV,
+      double kA,
+      double positionStdDev,
+      double accelerationStdDev,
+      boolean continuous) {
+    this.kS = kS;
+    this.kV = kV;
+    this.kA = kA;
+    this.measurementVariance = positionStdDev * positionStdDev;
+    this.accelerationVariance = accelerationStdDev * accelerationStdDev;
+    this.continuous = continuous;
+  }
+
+  /** Sets the estimate, e.g. after the measurements stopped for a while. */
+  public void reset(double position, double velocity) {
+    this.position = continuous ? MathUtil.angleModulus(position) : position;
+    this.velocity = velocity;
+    hasEstimate = true;
+  }
+
+  /**
+   * Predicts the state one sample ahead with the motor model, then corrects it with the measured
+   * position. The first update only initializes the estimate.
+   *
+   * @param measuredPosition Position at the end of the sample
+   * @param volts Voltage applied during the sample
+   * @param dt Time since the previous sample in seconds
+   */
+  public void update(double measuredPosition, double volts, double dt) {
+    if (!hasEstimate) {
+      reset(measuredPosition, 0.0);
+      return;
+    }
+    if (!(dt > 0.0)) {
+      return;
+    }
+    if (!(Math.abs(dt - period) <= PERIOD_TOLERANCE * period)) {
+      solve(dt);
+    }
+
+    double modelVolts = volts - kS * Math.signum(velocity);
+    position += positionPerVelocity * velocity + positionPerVolt * modelVolts;
+    velocity = velocityDecay * velocity + velocityPerVolt * modelVolts;
+
+    double residual = measuredPosition - position;
+    if (continuous) {
+      residual = MathUtil.angleModulus(residual);
+    }
+    position += positionGain * residual;
+    velocity += velocityGain * residual;
+    if (continuous) {
+      position = MathUtil.angleModulus(position);
+    }
+  }
+
+  /** Returns whether any measurement has been received since the estimator was created. */
+  public boolean hasEstimate() {
+    return hasEstimate;
+  }
+
+  public double getPosition() {
+    return position;
+  }
+
+  public double getVelocity() {
+    return velocity;
+  }
+
+  /** Returns the gain applied to the position residual to correct velocity, for diagnostics. */
+  public double getVelocityGain() {
+    return velocityGain;
+  }
+
+  /**
+   * Discretizes the model for a sample period and iterates the Riccati equation until the error
+   * covariance, and so the gain, stops changing.
+   */
+  private void solve(double dt) {
+    period = dt;
+
+    // Exact discretization of dv/dt = (volts - kV * v) / kA over one sample
+    double decayRate = kV / kA;
+    if (decayRate * dt < MIN_DECAY_EXPONENT) {
+      positionPerVelocity = dt;
+      velocityDecay = 1.0;
+      velocityPerVolt = dt / kA;
+      positionPerVolt = dt * dt / (2.0 * kA);
+    } else {
+      velocityDecay = Math.exp(-decayRate * dt);
+      positionPerVelocity = (1.0 - velocityDecay) / decayRate;
+      velocityPerVolt = (1.0 - velocityDecay) / kV;
+      positionPerVolt = (dt - positionPerVelocity) / kV;
+    }
+
+    // Acceleration held constant over each sample
+    double positionNoise = dt * dt / 2.0;
+    double q00 = accelerationVariance * positionNoise * positionNoise;
+    double q01 = accelerationVariance * positionNoise * dt;
+    double q11 = accelerationVariance * dt * dt;
+
+    // Predicted covariance, symmetric so only the upper triangle is kept
+    double p00 = q00 + measurementVariance;
+    double p01 = q01;
+    double p11 = q11 + accelerationVariance;
+    for (int i = 0; i < MAX_RICCATI_ITERATIONS; i++) {
+      double innovation = p00 + measurementVariance;
+      double k0 = p00 / innovation;
+      double k1 = p01 / innovation;
+      double c00 = (1.0 - k0) * p00;
+      double c01 = (1.0 - k0) * p01;
+      double c11 = p11 - k1 * p01;
+
+      double next00 =
+          c00
+              + 2.0 * positionPerVelocity * c01
+              + positionPerVelocity * positionPerVelocity * c11
+              + q00;
+      double next01 = velocityDecay * (c01 + positionPerVelocity * c11) + q01;
+      double next11 = velocityDecay * velocityDecay * c11 + q11;
+
+      boolean converged =
+          Math.abs(next00 - p00) <= RICCATI_TOLERANCE * next00
+              && Math.abs(next01 - p01) <= RICCATI_TOLERANCE * Math.abs(next01)
+              && Math.abs(next11 - p11) <= RICCATI_TOLERANCE * next11;
+      p00 = next00;
+      p01 = next01;
+      p11 = next11;
+      if (converged) {
+        break;
+      }
+    }
+
+    positionGain = p00 / (p00 + measurementVariance);
+    velocityGain = p01 / (p00 + measurementVariance);
+  }
+}
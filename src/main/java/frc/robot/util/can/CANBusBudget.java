@@ -0,0 +1,52 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.can;
+
+import edu.wpi.first.wpilibj.RobotController;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Keeps a running estimate of how much of the CAN bus the robot's periodic traffic uses. Every
+ * device registers the frames it is configured to send (and the roboRIO the frames it sends to
+ * them), so the estimate can be checked before a new mechanism is added.
+ */
+public class CANBusBudget {
+  private static final double BUS_BITS_PER_SECOND = 1e6;
+  // Extended frame with 8 data bytes is 131 bits before bit stuffing, plus some stuffing
+  private static final double BITS_PER_FRAME = 140.0;
+
+  private static double framesPerSecond = 0.0;
+
+  private CANBusBudget() {}
+
+  /**
+   * Registers a periodic frame.
+   *
+   * @param frequencyHz Rate the frame is sent at, in Hz
+   */
+  public static synchronized void registerFrame(double frequencyHz) {
+    framesPerSecond += frequencyHz;
+  }
+
+  /**
+   * Registers a periodic frame by its period, as the SparkMax status frames are configured.
+   *
+   * @param periodMs Period the frame is sent at, in milliseconds
+   */
+  public static void registerFramePeriod(int periodMs) {
+    registerFrame(1000.0 / periodMs);
+  }
+
+  /** Returns the estimated fraction of the bus used by periodic traffic. */
+  public static synchronized double getEstimatedUtilization() {
+    return framesPerSecond * BITS_PER_FRAME / BUS_BITS_PER_SECOND;
+  }
+
+  /** Logs the estimate next to the utilization measured by the roboRIO. */
+  public static void periodic() {
+    Logger.recordOutput("CAN/EstimatedFramesPerSecond", framesPerSecond);
+    Logger.recordOutput("CAN/EstimatedUtilization", getEstimatedUtilization());
+    Logger.recordOutput(
+        "CAN/MeasuredUtilization", RobotController.getCANStatus().percentBusUtilization);
+  }
+}
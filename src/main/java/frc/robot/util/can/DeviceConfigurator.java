@@ -0,0 +1,149 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.can;
+
+import frc.robot.util.debugging.Alert;
+import frc.robot.util.debugging.Alert.AlertType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Runs device configuration on worker threads so every controller on the bus is configured at
+ * once instead of one after another. IO implementations submit their configuration from their
+ * constructors, and {@link #awaitAll()} is called once every device has been created.
+ */
+public class DeviceConfigurator {
+  private static final String tableKey = "DeviceConfig";
+  // Each task mostly waits on CAN round trips, so this only needs to cover the devices on the bus
+  private static final int THREAD_COUNT = 12;
+
+  /** Outcome of configuring a device. */
+  public static enum Status {
+    /** The stored configuration already matched, nothing was written to flash. */
+    UNCHANGED,
+    /** The configuration was rewritten and saved. */
+    UPDATED,
+    /** A read or write to the device failed. */
+    FAILED
+  }
+
+  private static final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          THREAD_COUNT,
+          (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "DeviceConfigurator");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private static final List<String> pendingNames = new ArrayList<>();
+  private static final List<Future<Result>> pendingResults = new ArrayList<>();
+  private static final Alert summaryAlert = new Alert("", AlertType.INFO);
+  private static long firstSubmitNanos = 0;
+
+  private DeviceConfigurator() {}
+
+  /**
+   * Starts configuring a device on a worker thread. The configuration should be safe to run in
+   * parallel with other devices, and must not touch the logger or alerts.
+   *
+   * @param deviceName Name the results are logged under, relative to "DeviceConfig/"
+   * @param configuration Configures the device and reports whether anything had to be written
+   */
+  public static synchronized void submit(String deviceName, Supplier<Status> configuration) {
+    if (pendingResults.isEmpty()) {
+      firstSubmitNanos = System.nanoTime();
+    }
+    pendingNames.add(deviceName);
+    pendingResults.add(
+        executor.submit(
+            () -> {
+              long startNanos = System.nanoTime();
+              Status status;
+              try {
+                status = configuration.get();
+              } catch (RuntimeException e) {
+                status = Status.FAILED;
+              }
+              long endNanos = System.nanoTime();
+              return new Result(status, (endNanos - startNanos) / 1e6, endNanos);
+            }));
+  }
+
+  /**
+   * Blocks until every submitted configuration is done, then logs the time each device took and
+   * raises an alert for any device that failed. Must be called from the main thread.
+   *
+   * <p>"TotalTimeMs" is the time from the first submission to the last device finishing, which is
+   * how long configuration took during boot. "WaitTimeMs" is only how long this call blocked, the
+   * part of that time the rest of construction didn't hide.
+   */
+  public static synchronized void awaitAll() {
+    if (pendingResults.isEmpty()) {
+      return;
+    }
+
+    long startNanos = System.nanoTime();
+    int updated = 0;
+    int failed = 0;
+    long lastEndNanos = firstSubmitNanos;
+    for (int i = 0; i < pendingResults.size(); i++) {
+      Result result = waitFor(pendingResults.get(i));
+      Status status = result.status;
+      double timeMs = result.timeMs;
+      lastEndNanos = Math.max(lastEndNanos, result.endNanos);
+      String name = pendingNames.get(i);
+
+      Logger.recordOutput(tableKey + "/" + name + "/Status", status.toString());
+      Logger.recordOutput(tableKey + "/" + name + "/TimeMs", timeMs);
+      if (status == Status.UPDATED) {
+        updated++;
+      } else if (status == Status.FAILED) {
+        failed++;
+        new Alert(String.format("Failed to configure %s (%.0f ms).", name, timeMs), AlertType.ERROR)
+            .set(true);
+      }
+    }
+    double waitMs = (System.nanoTime() - startNanos) / 1e6;
+    double totalMs = (lastEndNanos - firstSubmitNanos) / 1e6;
+    Logger.recordOutput(tableKey + "/WaitTimeMs", waitMs);
+    Logger.recordOutput(tableKey + "/TotalTimeMs", totalMs);
+
+    summaryAlert.setText(
+        String.format(
+            "Configured %d devices in %.0f ms, %d rewritten, %d failed.",
+            pendingResults.size(), totalMs, updated, failed));
+    summaryAlert.set(true);
+
+    pendingNames.clear();
+    pendingResults.clear();
+  }
+
+  private static Result waitFor(Future<Result> result) {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new Result(Status.FAILED, 0.0, System.nanoTime());
+    } catch (ExecutionException e) {
+      return new Result(Status.FAILED, 0.0, System.nanoTime());
+    }
+  }
+
+  private static class Result {
+    private final Status status;
+    private final double timeMs;
+    private final long endNanos;
+
+    private Result(Status status, double timeMs, long endNanos) {
+      this.status = status;
+      this.timeMs = timeMs;
+      this.endNanos = endNanos;
+    }
+  }
+}
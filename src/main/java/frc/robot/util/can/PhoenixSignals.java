@@ -0,0 +1,46 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.can;
+
+import com.ctre.phoenix6.BaseStatusSignal;
+import com.ctre.phoenix6.StatusCode;
+
+/**
+ * Batches every Phoenix 6 signal the main loop reads into a single refresh. Devices register their
+ * signals once at construction and read the cached values in updateInputs, instead of each one
+ * making its own blocking call.
+ */
+public class PhoenixSignals {
+  private static BaseStatusSignal[] signals = new BaseStatusSignal[0];
+
+  private PhoenixSignals() {}
+
+  /**
+   * Registers signals to be refreshed every cycle, and accounts for them in the {@link
+   * CANBusBudget}.
+   *
+   * @param frequencyHz Update frequency the signals are configured with
+   * @param newSignals Signals to refresh
+   */
+  public static synchronized void register(double frequencyHz, BaseStatusSignal... newSignals) {
+    BaseStatusSignal[] combined = new BaseStatusSignal[signals.length + newSignals.length];
+    System.arraycopy(signals, 0, combined, 0, signals.length);
+    System.arraycopy(newSignals, 0, combined, signals.length, newSignals.length);
+    signals = combined;
+
+    for (int i = 0; i < newSignals.length; i++) {
+      CANBusBudget.registerFrame(frequencyHz);
+    }
+  }
+
+  /**
+   * Refreshes every registered signal with one non-blocking call. Each signal keeps its own status,
+   * so a disconnected device doesn't hide the others.
+   */
+  public static StatusCode refreshAll() {
+    if (signals.length == 0) {
+      return StatusCode.OK;
+    }
+    return BaseStatusSignal.refreshAll(signals);
+  }
+}
@@ -10,22 +10,25 @@ package frc.robot.util.debugging;
 import edu.wpi.first.util.sendable.Sendable;
 import edu.wpi.first.util.sendable.SendableBuilder;
 import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Predicate;
+import org.littletonrobotics.junction.Logger;
 
-/** Class for managing persistent alerts to be sent over NetworkTables. */
+/**
+ * Class for managing persistent alerts to be sent over NetworkTables. Each group keeps the active
+ * alerts of every type in display order, updated when an alert changes, so publishing only copies
+ * the text out when something changed.
+ */
 public class Alert {
+  private static final String tableKey = "Alerts";
   private static Map<String, SendableAlerts> groups = new HashMap<String, SendableAlerts>();
 
+  private final SendableAlerts group;
   private final AlertType type;
   private boolean active = false;
-  private double activeStartTime = 0.0;
   private String text;
 
   /**
@@ -49,13 +52,23 @@ public class Alert {
    */
   public Alert(String group, String text, AlertType type) {
     if (!groups.containsKey(group)) {
-      groups.put(group, new SendableAlerts());
+      groups.put(group, new SendableAlerts(group));
       SmartDashboard.putData(group, groups.get(group));
     }
 
+    this.group = groups.get(group);
     this.text = text;
     this.type = type;
-    groups.get(group).alerts.add(this);
+  }
+
+  /**
+   * Records the active alerts of every group that changed since the last call, so they show up in
+   * the log. Should be called once per cycle.
+   */
+  public static void periodic() {
+    for (SendableAlerts group : groups.values()) {
+      group.log();
+    }
   }
 
   /**
@@ -64,7 +77,6 @@ public class Alert {
    */
   public void set(boolean active) {
     if (active && !this.active) {
-      activeStartTime = Timer.getFPGATimestamp();
       switch (type) {
         case ERROR:
           DriverStation.reportError(text, false);
@@ -76,6 +88,12 @@ public class Alert {
           System.out.println(text);
           break;
       }
+      // Activation times only increase, so the newest alert always goes first
+      group.getActive(type).add(0, this);
+      group.markChanged(type);
+    } else if (!active && this.active) {
+      group.getActive(type).remove(this);
+      group.markChanged(type);
     }
     this.active = active;
   }
@@ -94,22 +112,66 @@ public class Alert {
           System.out.println(text);
           break;
       }
+      group.markChanged(type);
     }
     this.text = text;
   }
 
   private static class SendableAlerts implements Sendable {
-    public final List<Alert> alerts = new ArrayList<>();
+    private static final String[] EMPTY = new String[] {};
+    private static final AlertType[] TYPES = AlertType.values();
+
+    private final String errorsKey;
+    private final String warningsKey;
+    private final String infosKey;
+
+    // Indexed by AlertType ordinal, active lists are ordered newest first
+    private final List<List<Alert>> active = new ArrayList<>();
+    private final String[][] strings = new String[TYPES.length][];
+    private final boolean[] stringsStale = new boolean[TYPES.length];
+    private boolean logStale = true;
+
+    private SendableAlerts(String name) {
+      errorsKey = tableKey + "/" + name + "/Errors";
+      warningsKey = tableKey + "/" + name + "/Warnings";
+      infosKey = tableKey + "/" + name + "/Infos";
+      for (int i = 0; i < TYPES.length; i++) {
+        active.add(new ArrayList<>());
+        strings[i] = EMPTY;
+      }
+    }
+
+    private List<Alert> getActive(AlertType type) {
+      return active.get(type.ordinal());
+    }
+
+    private void markChanged(AlertType type) {
+      stringsStale[type.ordinal()] = true;
+      logStale = true;
+    }
 
+    /** Returns the text of the active alerts of a type, rebuilt only after a change. */
     public String[] getStrings(AlertType type) {
-      Predicate<Alert> activeFilter = (Alert x) -> x.type == type && x.active;
-      Comparator<Alert> timeSorter =
-          (Alert a1, Alert a2) -> (int) (a2.activeStartTime - a1.activeStartTime);
-      return alerts.stream()
-          .filter(activeFilter)
-          .sorted(timeSorter)
-          .map((Alert a) -> a.text)
-          .toArray(String[]::new);
+      int index = type.ordinal();
+      if (stringsStale[index]) {
+        List<Alert> alerts = active.get(index);
+        String[] typeStrings = new String[alerts.size()];
+        for (int i = 0; i < typeStrings.length; i++) {
+          typeStrings[i] = alerts.get(i).text;
+        }
+        strings[index] = typeStrings;
+        stringsStale[index] = false;
+      }
+      return strings[index];
+    }
+
+    private void log() {
+      if (logStale) {
+        Logger.recordOutput(errorsKey, getStrings(AlertType.ERROR));
+        Logger.recordOutput(warningsKey, getStrings(AlertType.WARNING));
+        Logger.recordOutput(infosKey, getStrings(AlertType.INFO));
+        logStale = false;
+      }
     }
 
     @Override
@@ -7,26 +7,62 @@
 
 package frc.robot.util.debugging;
 
+import edu.wpi.first.networktables.DoubleEntry;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import frc.robot.Constants;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.EnumSet;
 import java.util.function.Consumer;
 import java.util.function.DoubleSupplier;
-import org.littletonrobotics.junction.networktables.LoggedDashboardNumber;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.Logger;
+import org.littletonrobotics.junction.inputs.LoggableInputs;
+import org.littletonrobotics.junction.networktables.LoggedDashboardInput;
 
 /**
  * Class for a tunable number. Gets value from dashboard in tuning mode, returns default if not or
  * value not in dashboard.
+ *
+ * <p>Changes are pushed by NetworkTables listeners rather than polled. The value is only read
+ * from NetworkTables after a remote change, and every change bumps a global version counter, so
+ * checking for changes costs a single integer compare when nothing has been touched.
  */
-public class LoggedTunableNumber implements DoubleSupplier {
+public class LoggedTunableNumber implements DoubleSupplier, LoggedDashboardInput {
   private static final String tableKey = "TunableNumbers";
+  // Same table LoggedDashboardNumber used, so older logs still replay
+  private static final String inputsKey = "DashboardInputs/SmartDashboard";
+
+  // Only modified on the main thread, in the dashboard input update at the start of each cycle
+  private static int globalVersion = 0;
 
   private final String key;
   private boolean hasDefault = false;
   private double defaultValue;
-  private LoggedDashboardNumber dashboardNumber;
-  private Map<Integer, Double> lastHasChangedValues = new HashMap<>();
+  private double value;
+  private int changedVersion = 0; // Global version at this number's last change
+  private DoubleEntry entry;
+  private volatile boolean remoteChanged = false; // Set by the NetworkTables listener thread
+
+  private final LoggableInputs inputs =
+      new LoggableInputs() {
+        @Override
+        public void toLog(LogTable table) {
+          table.put(key, value);
+        }
+
+        @Override
+        public void fromLog(LogTable table) {
+          value = table.get(key, defaultValue);
+        }
+      };
+
+  /**
+   * Remembers the last change a caller has seen. Each caller keeps one tracker per group of numbers
+   * it checks together, the state is a single int so no per-caller map is needed.
+   */
+  public static class ChangeTracker {
+    private int seenVersion = -1; // Below every version so the first check always reports a change
+  }
 
   /**
    * Create a new LoggedTunableNumber
@@ -57,8 +93,18 @@ public class LoggedTunableNumber implements DoubleSupplier {
     if (!hasDefault) {
       hasDefault = true;
       this.defaultValue = defaultValue;
+      value = defaultValue;
       if (Constants.debuggingMode) {
-        dashboardNumber = new LoggedDashboardNumber(key, defaultValue);
+        NetworkTableInstance instance = NetworkTableInstance.getDefault();
+        entry = instance.getTable("SmartDashboard").getDoubleTopic(key).getEntry(defaultValue);
+        // Keep a value that is already on the dashboard, otherwise publish the default
+        value = entry.get(defaultValue);
+        entry.set(value);
+        instance.addListener(
+            entry,
+            EnumSet.of(NetworkTableEvent.Kind.kValueRemote),
+            (NetworkTableEvent event) -> remoteChanged = true);
+        Logger.registerDashboardInput(this);
       }
     }
   }
@@ -69,51 +115,84 @@ public class LoggedTunableNumber implements DoubleSupplier {
    * @return The current value
    */
   public double get() {
-    if (!hasDefault) {
-      return 0.0;
-    } else {
-      return Constants.debuggingMode ? dashboardNumber.get() : defaultValue;
+    return hasDefault ? value : 0.0;
+  }
+
+  /**
+   * Reads the dashboard value if it changed and logs it. Called by the logger at the start of each
+   * cycle, so the value is the same for everything that reads it during the cycle.
+   */
+  @Override
+  public void periodic() {
+    double previousValue = value;
+    if (remoteChanged && !Logger.hasReplaySource()) {
+      remoteChanged = false;
+      value = entry.get(defaultValue);
+    }
+    Logger.processInputs(inputsKey, inputs);
+
+    if (value != previousValue) {
+      globalVersion++;
+      changedVersion = globalVersion;
     }
   }
 
   /**
-   * Checks whether the number has changed since our last check
+   * Checks whether the number has changed since the tracker last checked
    *
-   * @param id Unique identifier for the caller to avoid conflicts when shared between multiple
-   *     objects. Recommended approach is to pass the result of "hashCode()"
-   * @return True if the number has changed since the last time this method was called, false
-   *     otherwise.
+   * @param tracker State of the caller, should only be used to check this number
+   * @return True if the number has changed since the last time this method was called with the
+   *     tracker, false otherwise.
    */
-  public boolean hasChanged(int id) {
-    double currentValue = get();
-    Double lastValue = lastHasChangedValues.get(id);
-    if (lastValue == null || currentValue != lastValue) {
-      lastHasChangedValues.put(id, currentValue);
-      return true;
+  public boolean hasChanged(ChangeTracker tracker) {
+    if (tracker.seenVersion == globalVersion) {
+      return false;
     }
-
-    return false;
+    boolean changed = changedVersion > tracker.seenVersion;
+    tracker.seenVersion = globalVersion;
+    return changed;
   }
 
   /**
    * Runs action if any of the tunableNumbers have changed
    *
-   * @param id Unique identifier for the caller to avoid conflicts when shared between multiple *
-   *     objects. Recommended approach is to pass the result of "hashCode()"
+   * @param tracker State of the caller, should only be used to check this group of numbers
    * @param action Callback to run when any of the tunable numbers have changed. Access tunable
    *     numbers in order inputted in method
    * @param tunableNumbers All tunable numbers to check
    */
   public static void ifChanged(
-      int id, Consumer<double[]> action, LoggedTunableNumber... tunableNumbers) {
-    if (Arrays.stream(tunableNumbers).anyMatch(tunableNumber -> tunableNumber.hasChanged(id))) {
-      action.accept(Arrays.stream(tunableNumbers).mapToDouble(LoggedTunableNumber::get).toArray());
+      ChangeTracker tracker, Consumer<double[]> action, LoggedTunableNumber... tunableNumbers) {
+    if (anyChanged(tracker, tunableNumbers)) {
+      double[] values = new double[tunableNumbers.length];
+      for (int i = 0; i < tunableNumbers.length; i++) {
+        values[i] = tunableNumbers[i].get();
+      }
+      action.accept(values);
     }
   }
 
   /** Runs action if any of the tunableNumbers have changed */
-  public static void ifChanged(int id, Runnable action, LoggedTunableNumber... tunableNumbers) {
-    ifChanged(id, values -> action.run(), tunableNumbers);
+  public static void ifChanged(
+      ChangeTracker tracker, Runnable action, LoggedTunableNumber... tunableNumbers) {
+    if (anyChanged(tracker, tunableNumbers)) {
+      action.run();
+    }
+  }
+
+  private static boolean anyChanged(ChangeTracker tracker, LoggedTunableNumber[] tunableNumbers) {
+    if (tracker.seenVersion == globalVersion) {
+      return false; // Nothing anywhere has changed since the last check
+    }
+    boolean changed = false;
+    for (LoggedTunableNumber tunableNumber : tunableNumbers) {
+      if (tunableNumber.changedVersion > tracker.seenVersion) {
+        changed = true;
+        break;
+      }
+    }
+    tracker.seenVersion = globalVersion;
+    return changed;
   }
 
   @Override
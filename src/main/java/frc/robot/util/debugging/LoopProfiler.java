@@ -0,0 +1,87 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.debugging;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.WrapperCommand;
+import frc.robot.Constants;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry for the loop timers. Subsystems and IO layers grab a {@link LoopTimer} once at
+ * construction, commands are timed by wrapping them with {@link #profile(Command)}, and {@link
+ * #publish()} logs every timer's p50/p99/max under "LoopTimes/" at the end of each cycle.
+ */
+public class LoopProfiler {
+  private static final String tableKey = "LoopTimes";
+
+  private static final Map<String, LoopTimer> timersByKey = new HashMap<>();
+  private static final List<LoopTimer> timers = new ArrayList<>();
+
+  private LoopProfiler() {}
+
+  /**
+   * Returns the timer for a key, creating it on first use. Should be called once at construction
+   * and the timer kept, not looked up every cycle.
+   *
+   * @param key Key the statistics are logged under, relative to "LoopTimes/"
+   */
+  public static LoopTimer getTimer(String key) {
+    LoopTimer timer = timersByKey.get(key);
+    if (timer == null) {
+      timer = new LoopTimer(tableKey + "/" + key);
+      timersByKey.put(key, timer);
+      timers.add(timer);
+    }
+    return timer;
+  }
+
+  /**
+   * Returns a timer that never records and isn't published. Timers aren't thread safe, so code
+   * that runs several instances in parallel outside the robot loop (e.g. gain tuning trials) uses
+   * this instead of sharing the registered timers.
+   */
+  public static LoopTimer getDisabledTimer() {
+    return LoopTimer.DISABLED;
+  }
+
+  /**
+   * Wraps a command so each call to execute() is timed under "LoopTimes/Commands/[name]". Returns
+   * the command unchanged when profiling is disabled.
+   */
+  public static Command profile(Command command) {
+    if (!Constants.profilingMode) {
+      return command;
+    }
+    return new ProfiledCommand(command);
+  }
+
+  /** Logs the statistics of every timer, should be called once per cycle. */
+  public static void publish() {
+    if (!Constants.profilingMode) {
+      return;
+    }
+    for (int i = 0; i < timers.size(); i++) {
+      timers.get(i).publish();
+    }
+  }
+
+  private static class ProfiledCommand extends WrapperCommand {
+    private final LoopTimer executeTimer;
+
+    private ProfiledCommand(Command command) {
+      super(command);
+      executeTimer = getTimer("Commands/" + command.getName() + "/Execute");
+    }
+
+    @Override
+    public void execute() {
+      executeTimer.start();
+      m_command.execute();
+      executeTimer.stop();
+    }
+  }
+}
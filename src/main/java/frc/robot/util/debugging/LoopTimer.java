@@ -0,0 +1,132 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.debugging;
+
+import frc.robot.Constants;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Times one section of the robot loop. Keeps a rolling window of the most recent samples in a
+ * log-scaled histogram so percentiles can be read without sorting. Does nothing unless {@link
+ * Constants#profilingMode} is enabled.
+ */
+public class LoopTimer {
+  private static final int WINDOW_SIZE = 250; // 5 seconds at 50 Hz
+  private static final int BUCKET_COUNT = 64;
+  private static final double FIRST_BUCKET_NANOS = 1000.0;
+  private static final double BUCKET_GROWTH = 1.25; // Last bucket tops out around 1.3 seconds
+  private static final double LOG_BUCKET_GROWTH = Math.log(BUCKET_GROWTH);
+  private static final double[] bucketUpperBoundsMs = new double[BUCKET_COUNT];
+
+  static {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      bucketUpperBoundsMs[i] = FIRST_BUCKET_NANOS * Math.pow(BUCKET_GROWTH, i + 1) / 1e6;
+    }
+  }
+
+  /** A timer that never records, for code run outside the robot loop. */
+  static final LoopTimer DISABLED = new LoopTimer(null, false);
+
+  private final boolean enabled;
+  private final String lastKey;
+  private final String p50Key;
+  private final String p99Key;
+  private final String maxKey;
+
+  private final long[] windowNanos = new long[WINDOW_SIZE];
+  private final int[] windowBuckets = new int[WINDOW_SIZE];
+  private final int[] bucketCounts = new int[BUCKET_COUNT];
+  private int windowIndex = 0;
+  private int sampleCount = 0;
+  private long windowMaxNanos = 0;
+  private long lastNanos = 0;
+  private long startNanos = 0;
+
+  /**
+   * Creates a new LoopTimer. Use {@link LoopProfiler#getTimer(String)} so the timer is published.
+   *
+   * @param key Key the statistics are logged under
+   */
+  LoopTimer(String key) {
+    this(key, true);
+  }
+
+  private LoopTimer(String key, boolean enabled) {
+    this.enabled = enabled;
+    lastKey = key + "/LastMs";
+    p50Key = key + "/P50Ms";
+    p99Key = key + "/P99Ms";
+    maxKey = key + "/MaxMs";
+  }
+
+  /** Marks the start of the timed section. */
+  public void start() {
+    if (enabled && Constants.profilingMode) {
+      startNanos = System.nanoTime();
+    }
+  }
+
+  /** Marks the end of the timed section and records the elapsed time. */
+  public void stop() {
+    if (enabled && Constants.profilingMode) {
+      record(System.nanoTime() - startNanos);
+    }
+  }
+
+  /** Adds a sample to the window, evicting the oldest one once the window is full. */
+  private void record(long nanos) {
+    if (sampleCount == WINDOW_SIZE) {
+      long evictedNanos = windowNanos[windowIndex];
+      bucketCounts[windowBuckets[windowIndex]]--;
+      sampleCount--;
+      if (evictedNanos == windowMaxNanos) {
+        windowMaxNanos = 0;
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+          if (i != windowIndex) {
+            windowMaxNanos = Math.max(windowMaxNanos, windowNanos[i]);
+          }
+        }
+      }
+    }
+
+    int bucket =
+        nanos <= FIRST_BUCKET_NANOS
+            ? 0
+            : Math.min(
+                BUCKET_COUNT - 1, (int) (Math.log(nanos / FIRST_BUCKET_NANOS) / LOG_BUCKET_GROWTH));
+    windowNanos[windowIndex] = nanos;
+    windowBuckets[windowIndex] = bucket;
+    bucketCounts[bucket]++;
+    sampleCount++;
+    windowMaxNanos = Math.max(windowMaxNanos, nanos);
+    lastNanos = nanos;
+    windowIndex = (windowIndex + 1) % WINDOW_SIZE;
+  }
+
+  /**
+   * Returns the upper bound of the histogram bucket holding the given percentile, capped at the
+   * window maximum.
+   */
+  private double getPercentileMs(double percentile) {
+    int target = (int) Math.ceil(percentile * sampleCount);
+    int cumulative = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      cumulative += bucketCounts[i];
+      if (cumulative >= target) {
+        return Math.min(bucketUpperBoundsMs[i], windowMaxNanos / 1e6);
+      }
+    }
+    return windowMaxNanos / 1e6;
+  }
+
+  /** Logs the latest sample and the window statistics. */
+  void publish() {
+    if (sampleCount == 0) {
+      return;
+    }
+    Logger.recordOutput(lastKey, lastNanos / 1e6);
+    Logger.recordOutput(p50Key, getPercentileMs(0.5));
+    Logger.recordOutput(p99Key, getPercentileMs(0.99));
+    Logger.recordOutput(maxKey, windowMaxNanos / 1e6);
+  }
+}
@@ -0,0 +1,273 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.logging;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.util.debugging.Alert;
+import frc.robot.util.debugging.Alert.AlertType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import org.littletonrobotics.junction.LogDataReceiver;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Runs a data receiver on its own thread, so a slow receiver (a stalled USB stick, a busy radio)
+ * can't back up the logger and reach the main loop. Each cycle's table is handed over through a
+ * bounded lock-free ring buffer, and the writer thread drains everything queued in one batch.
+ *
+ * <p>What happens when the buffer is full is set by the {@link OverflowPolicy}. Queue depth,
+ * dropped cycles, write errors and write latency are logged under "LogReceivers/[name]/" by {@link
+ * #periodic()}, which also raises an alert and reports the first exception if a write fails.
+ */
+public class AsyncLogReceiver implements LogDataReceiver {
+  private static final String tableKey = "LogReceivers";
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final int STATS_WINDOW_WRITES = 50;
+
+  private static final List<AsyncLogReceiver> receivers = new ArrayList<>();
+
+  /** What to do with a cycle when the buffer is full. */
+  public static enum OverflowPolicy {
+    /** Discard the new cycle, keeping the queued ones. */
+    DROP_NEWEST,
+
+    /** Discard the oldest queued cycle to make room for the new one. */
+    DROP_OLDEST,
+
+    /** Wait for room up to the block timeout, then discard the new cycle. */
+    BLOCK
+  }
+
+  private final LogDataReceiver receiver;
+  private final OverflowPolicy policy;
+  private final long blockTimeoutNanos;
+  private final int mask;
+
+  // Single producer (the logger's receiver thread) and a single consumer (the writer thread). The
+  // consumer only keeps a table if its compare-and-set on head succeeds, which lets the producer
+  // drop the oldest entry without a lock.
+  private final AtomicReferenceArray<LogTable> slots;
+  private final AtomicLongArray enqueueNanos;
+  private final AtomicLong head = new AtomicLong(); // Next slot to write out
+  private final AtomicLong tail = new AtomicLong(); // Next slot to fill
+
+  private final Thread writerThread;
+  private volatile boolean running = false;
+
+  private final String queueDepthKey;
+  private final String droppedCyclesKey;
+  private final String averageLatencyKey;
+  private final String maxLatencyKey;
+  private final String averageWriteKey;
+  private final String writeErrorsKey;
+  private final String name;
+  private final Alert writeErrorAlert;
+  private boolean writeErrorReported = false;
+
+  // Written by one thread each, read on the main thread by periodic()
+  private volatile long droppedCycles = 0;
+  private volatile double averageLatencyMs = 0.0;
+  private volatile double maxLatencyMs = 0.0;
+  private volatile double averageWriteMs = 0.0;
+  private volatile long writeErrors = 0;
+  private volatile Exception firstWriteError = null;
+
+  // Only used on the writer thread
+  private int windowWrites = 0;
+  private long windowLatencyNanos = 0;
+  private long windowMaxLatencyNanos = 0;
+  private long windowWriteNanos = 0;
+
+  /**
+   * Creates a receiver that writes to another receiver on a background thread.
+   *
+   * @param name Name the statistics are logged under, relative to "LogReceivers/"
+   * @param receiver Receiver to write to, only called from the writer thread
+   * @param capacity Number of cycles that can be queued, rounded up to a power of two
+   * @param policy What to do with a cycle when the buffer is full
+   * @param blockTimeoutMs Longest time to wait for room with {@link OverflowPolicy#BLOCK}
+   */
+  public AsyncLogReceiver(
+      String name,
+      LogDataReceiver receiver,
+      int capacity,
+      OverflowPolicy policy,
+      double blockTimeoutMs) {
+    this.name = name;
+    this.receiver = receiver;
+    this.policy = policy;
+    this.blockTimeoutNanos = (long) (blockTimeoutMs * 1e6);
+
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    mask = size - 1;
+    slots = new AtomicReferenceArray<>(size);
+    enqueueNanos = new AtomicLongArray(size);
+
+    queueDepthKey = tableKey + "/" + name + "/QueueDepth";
+    droppedCyclesKey = tableKey + "/" + name + "/DroppedCycles";
+    averageLatencyKey = tableKey + "/" + name + "/AverageLatencyMs";
+    maxLatencyKey = tableKey + "/" + name + "/MaxLatencyMs";
+    averageWriteKey = tableKey + "/" + name + "/AverageWriteMs";
+    writeErrorsKey = tableKey + "/" + name + "/WriteErrors";
+    writeErrorAlert =
+        new Alert(
+            "Log receiver " + name + " failed to write, the log may be incomplete.",
+            AlertType.ERROR);
+
+    writerThread = new Thread(this::runWriter, "AsyncLogReceiver-" + name);
+    writerThread.setDaemon(true);
+    synchronized (receivers) {
+      receivers.add(this);
+    }
+  }
+
+  /** Creates a receiver that drops the oldest queued cycle when the buffer is full. */
+  public AsyncLogReceiver(String name, LogDataReceiver receiver, int capacity) {
+    this(name, receiver, capacity, OverflowPolicy.DROP_OLDEST, 0.0);
+  }
+
+  /** Logs the statistics of every receiver, should be called once per cycle. */
+  public static void periodic() {
+    synchronized (receivers) {
+      for (int i = 0; i < receivers.size(); i++) {
+        receivers.get(i).log();
+      }
+    }
+  }
+
+  private void log() {
+    Logger.recordOutput(queueDepthKey, (int) (tail.get() - head.get()));
+    Logger.recordOutput(droppedCyclesKey, droppedCycles);
+    Logger.recordOutput(averageLatencyKey, averageLatencyMs);
+    Logger.recordOutput(maxLatencyKey, maxLatencyMs);
+    Logger.recordOutput(averageWriteKey, averageWriteMs);
+    Logger.recordOutput(writeErrorsKey, writeErrors);
+
+    // The writer thread only stores the exception, reporting it has to happen on the main thread
+    Exception error = firstWriteError;
+    if (error != null && !writeErrorReported) {
+      writeErrorReported = true;
+      writeErrorAlert.set(true);
+      DriverStation.reportError(
+          "Log receiver " + name + " failed to write: " + error, error.getStackTrace());
+    }
+  }
+
+  @Override
+  public void start() {
+    receiver.start();
+    running = true;
+    writerThread.start();
+  }
+
+  @Override
+  public void end() {
+    running = false;
+    LockSupport.unpark(writerThread);
+    try {
+      writerThread.join(); // The writer drains what's left before exiting
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    receiver.end();
+  }
+
+  @Override
+  public void putTable(LogTable table) {
+    long currentTail = tail.get();
+    if (!makeRoom(currentTail)) {
+      droppedCycles++;
+      return;
+    }
+    int index = (int) (currentTail & mask);
+    slots.set(index, table);
+    enqueueNanos.set(index, System.nanoTime());
+    tail.set(currentTail + 1); // Publishes the slot to the writer
+    LockSupport.unpark(writerThread);
+  }
+
+  /** Returns whether there is room for the slot at the tail, applying the overflow policy. */
+  private boolean makeRoom(long currentTail) {
+    long currentHead = head.get();
+    if (currentTail - currentHead <= mask) {
+      return true;
+    }
+
+    switch (policy) {
+      case DROP_OLDEST:
+        // Fails only if the writer just took the oldest entry, which made room anyway
+        if (head.compareAndSet(currentHead, currentHead + 1)) {
+          droppedCycles++;
+        }
+        return true;
+      case BLOCK:
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (currentTail - head.get() > mask) {
+          if (System.nanoTime() >= deadline) {
+            return false;
+          }
+          LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+        return true;
+      case DROP_NEWEST:
+      default:
+        return false;
+    }
+  }
+
+  private void runWriter() {
+    while (running || head.get() != tail.get()) {
+      if (head.get() == tail.get()) {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+        continue;
+      }
+
+      // Write out everything queued so far in one batch
+      long currentHead;
+      while ((currentHead = head.get()) != tail.get()) {
+        int index = (int) (currentHead & mask);
+        LogTable table = slots.get(index);
+        long enqueuedNanos = enqueueNanos.get(index);
+        if (!head.compareAndSet(currentHead, currentHead + 1)) {
+          continue; // The producer dropped this entry, the slot may already hold a newer one
+        }
+        write(table, enqueuedNanos);
+      }
+    }
+  }
+
+  private void write(LogTable table, long enqueuedNanos) {
+    long startNanos = System.nanoTime();
+    try {
+      receiver.putTable(table);
+    } catch (Exception e) {
+      // Keeps the writer running, a receiver that failed once may recover (e.g. a reseated USB)
+      if (firstWriteError == null) {
+        firstWriteError = e;
+      }
+      writeErrors++;
+    }
+    long endNanos = System.nanoTime();
+
+    windowWrites++;
+    windowWriteNanos += endNanos - startNanos;
+    windowLatencyNanos += endNanos - enqueuedNanos;
+    windowMaxLatencyNanos = Math.max(windowMaxLatencyNanos, endNanos - enqueuedNanos);
+    if (windowWrites >= STATS_WINDOW_WRITES) {
+      averageLatencyMs = windowLatencyNanos / 1e6 / windowWrites;
+      maxLatencyMs = windowMaxLatencyNanos / 1e6;
+      averageWriteMs = windowWriteNanos / 1e6 / windowWrites;
+      windowWrites = 0;
+      windowLatencyNanos = 0;
+      windowMaxLatencyNanos = 0;
+      windowWriteNanos = 0;
+    }
+  }
+}
@@ -0,0 +1,272 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.logging;
+
+import edu.wpi.first.networktables.GenericPublisher;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.StringEntry;
+import frc.robot.Constants;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.littletonrobotics.junction.LogDataReceiver;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.LogTable.LogValue;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Publishes the log table to NetworkTables like AdvantageKit's NT4Publisher, but only the keys in
+ * the enabled telemetry tiers and at each tier's rate. Use it in place of NT4Publisher on the
+ * robot, log files still get every key at full rate from their own receiver.
+ *
+ * <p>Tiers are assigned by key prefix with {@link #withTier(String, Tier)}, the longest matching
+ * prefix wins. The highest tier published starts at DEBUG in debugging mode and NORMAL otherwise,
+ * and can be changed at runtime from "/Telemetry/MaxTier" on NetworkTables.
+ */
+public class TieredNT4Publisher implements LogDataReceiver {
+  private static final String tableKey = "Telemetry";
+  private static final String outputsPrefix = "RealOutputs/";
+  private static final int STATS_WINDOW_CYCLES = 50;
+
+  /** Telemetry tiers, in order of importance. */
+  public static enum Tier {
+    /** Needed to drive the robot, published every cycle. */
+    CRITICAL(1),
+
+    /** Useful during a match, published every 5th cycle (10 Hz). */
+    NORMAL(5),
+
+    /** Only useful while debugging, published every 10th cycle (5 Hz). */
+    DEBUG(10);
+
+    private final int period;
+
+    private Tier(int period) {
+      this.period = period;
+    }
+  }
+
+  // Written on the receiver thread, read on the main thread by periodic()
+  private static volatile boolean running = false;
+  private static volatile double bytesPerSecond = 0.0;
+  private static volatile double averagePublishMicros = 0.0;
+  private static volatile double maxPublishMicros = 0.0;
+  private static volatile double fieldsPerCycle = 0.0;
+  private static volatile Tier currentMaxTier = Tier.NORMAL;
+
+  private final NetworkTable akitTable;
+  private final IntegerPublisher timestampPublisher;
+  private final StringEntry maxTierEntry;
+  private final Tier defaultTier;
+  private final List<String> rulePrefixes = new ArrayList<>();
+  private final List<Tier> ruleTiers = new ArrayList<>();
+  private final Map<String, Field> fields = new HashMap<>();
+
+  private long cycle = 0;
+  private String maxTierName;
+  private Tier maxTier;
+
+  private long windowStartMicros = -1;
+  private int windowCycles = 0;
+  private long windowBytes = 0;
+  private long windowFields = 0;
+  private long windowNanos = 0;
+  private long windowMaxNanos = 0;
+
+  /**
+   * Creates a publisher that puts keys without a matching rule in the given tier.
+   *
+   * @param defaultTier Tier of keys that don't match any prefix
+   */
+  public TieredNT4Publisher(Tier defaultTier) {
+    this.defaultTier = defaultTier;
+    NetworkTableInstance instance = NetworkTableInstance.getDefault();
+    akitTable = instance.getTable("/AdvantageKit");
+    timestampPublisher = akitTable.getIntegerTopic("Timestamp").publish(PubSubOption.sendAll(true));
+
+    maxTier = Constants.debuggingMode ? Tier.DEBUG : Tier.NORMAL;
+    maxTierName = maxTier.name();
+    maxTierEntry = instance.getTable(tableKey).getStringTopic("MaxTier").getEntry(maxTierName);
+    maxTierEntry.set(maxTierName);
+  }
+
+  /**
+   * Puts every key starting with a prefix in a tier. Prefixes are relative to the log root, outputs
+   * are matched without their "RealOutputs/" prefix. Rules must be added before the logger starts.
+   */
+  public TieredNT4Publisher withTier(String prefix, Tier tier) {
+    rulePrefixes.add(prefix);
+    ruleTiers.add(tier);
+    return this;
+  }
+
+  /** Logs the bandwidth and time the publisher used, should be called once per cycle. */
+  public static void periodic() {
+    if (!running) {
+      return;
+    }
+    Logger.recordOutput(tableKey + "/BytesPerSecond", bytesPerSecond);
+    Logger.recordOutput(tableKey + "/FieldsPerCycle", fieldsPerCycle);
+    Logger.recordOutput(tableKey + "/AveragePublishMicros", averagePublishMicros);
+    Logger.recordOutput(tableKey + "/MaxPublishMicros", maxPublishMicros);
+    Logger.recordOutput(tableKey + "/MaxTier", currentMaxTier.name());
+  }
+
+  @Override
+  public void putTable(LogTable table) {
+    long startNanos = System.nanoTime();
+    long timestamp = table.getTimestamp();
+    timestampPublisher.set(timestamp, timestamp);
+    updateMaxTier();
+
+    int published = 0;
+    long bytes = 0;
+    for (Map.Entry<String, LogValue> entry : table.getAll(false).entrySet()) {
+      Field field = fields.get(entry.getKey());
+      if (field == null) {
+        field = new Field(getTier(entry.getKey()), entry.getKey().hashCode());
+        fields.put(entry.getKey(), field);
+      }
+
+      // Decimated keys are spread across cycles so slow tiers don't all land on the same one
+      if (field.tier.ordinal() > maxTier.ordinal()
+          || (cycle + field.phase) % field.tier.period != 0) {
+        continue;
+      }
+      LogValue value = entry.getValue();
+      if (value.equals(field.lastValue)) {
+        continue;
+      }
+      if (field.publisher == null) {
+        field.publisher =
+            akitTable
+                .getTopic(entry.getKey().substring(1))
+                .genericPublish(value.getNT4Type(), PubSubOption.sendAll(true));
+      }
+      bytes += publish(field.publisher, value, timestamp);
+      field.lastValue = value;
+      published++;
+    }
+    cycle++;
+
+    updateStats(timestamp, published, bytes, System.nanoTime() - startNanos);
+  }
+
+  private void updateMaxTier() {
+    String name = maxTierEntry.get(maxTierName);
+    if (!name.equals(maxTierName)) {
+      maxTierName = name;
+      try {
+        maxTier = Tier.valueOf(name);
+      } catch (IllegalArgumentException e) {
+        // Keep the previous tier until a valid name is entered
+      }
+    }
+    currentMaxTier = maxTier;
+  }
+
+  private Tier getTier(String key) {
+    String path = key.substring(1); // Keys in the table start with "/"
+    if (path.startsWith(outputsPrefix)) {
+      path = path.substring(outputsPrefix.length());
+    }
+    Tier tier = defaultTier;
+    int bestLength = -1;
+    for (int i = 0; i < rulePrefixes.size(); i++) {
+      String prefix = rulePrefixes.get(i);
+      if (prefix.length() > bestLength && path.startsWith(prefix)) {
+        tier = ruleTiers.get(i);
+        bestLength = prefix.length();
+      }
+    }
+    return tier;
+  }
+
+  /** Sets the value on the publisher and returns the approximate size of the value in bytes. */
+  private static int publish(GenericPublisher publisher, LogValue value, long timestamp) {
+    switch (value.type) {
+      case Raw:
+        publisher.setRaw(value.getRaw(), timestamp);
+        return value.getRaw().length;
+      case Boolean:
+        publisher.setBoolean(value.getBoolean(), timestamp);
+        return 1;
+      case Integer:
+        publisher.setInteger(value.getInteger(), timestamp);
+        return 8;
+      case Float:
+        publisher.setFloat(value.getFloat(), timestamp);
+        return 4;
+      case Double:
+        publisher.setDouble(value.getDouble(), timestamp);
+        return 8;
+      case String:
+        publisher.setString(value.getString(), timestamp);
+        return value.getString().length();
+      case BooleanArray:
+        publisher.setBooleanArray(value.getBooleanArray(), timestamp);
+        return value.getBooleanArray().length;
+      case IntegerArray:
+        publisher.setIntegerArray(value.getIntegerArray(), timestamp);
+        return value.getIntegerArray().length * 8;
+      case FloatArray:
+        publisher.setFloatArray(value.getFloatArray(), timestamp);
+        return value.getFloatArray().length * 4;
+      case DoubleArray:
+        publisher.setDoubleArray(value.getDoubleArray(), timestamp);
+        return value.getDoubleArray().length * 8;
+      case StringArray:
+        int length = 0;
+        for (String string : value.getStringArray()) {
+          length += string.length();
+        }
+        publisher.setStringArray(value.getStringArray(), timestamp);
+        return length;
+      default:
+        return 0;
+    }
+  }
+
+  private void updateStats(long timestampMicros, int published, long bytes, long nanos) {
+    if (windowStartMicros < 0) {
+      windowStartMicros = timestampMicros;
+    }
+    windowCycles++;
+    windowBytes += bytes;
+    windowFields += published;
+    windowNanos += nanos;
+    windowMaxNanos = Math.max(windowMaxNanos, nanos);
+
+    if (windowCycles >= STATS_WINDOW_CYCLES) {
+      double windowSeconds = (timestampMicros - windowStartMicros) / 1e6;
+      bytesPerSecond = windowSeconds > 0.0 ? windowBytes / windowSeconds : 0.0;
+      fieldsPerCycle = (double) windowFields / windowCycles;
+      averagePublishMicros = windowNanos / 1e3 / windowCycles;
+      maxPublishMicros = windowMaxNanos / 1e3;
+      running = true;
+
+      windowStartMicros = timestampMicros;
+      windowCycles = 0;
+      windowBytes = 0;
+      windowFields = 0;
+      windowNanos = 0;
+      windowMaxNanos = 0;
+    }
+  }
+
+  private static class Field {
+    private final Tier tier;
+    private final int phase;
+    private GenericPublisher publisher = null; // Created on first publish
+    private LogValue lastValue = null;
+
+    private Field(Tier tier, int hash) {
+      this.tier = tier;
+      this.phase = Math.floorMod(hash, tier.period);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.management.ThreadMXBean;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that an enabled Drive.periodic only allocates what it can't avoid: the arrays the IO layer
+ * hands to AdvantageKit (which keeps a reference to every logged array) and WPILib's pose
+ * estimator, which copies the module positions into its history for every odometry sample.
+ */
+class DriveAllocationTest {
+  private static final int WARMUP_CYCLES = 500; // Lets the modules settle and the JIT compile
+  private static final int MEASURED_CYCLES = 500;
+  // Room for allocations outside the code under test, e.g. the JIT swapping in compiled code
+  private static final long SLACK_BYTES_PER_CYCLE = 256;
+
+  private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  @Test
+  void enabledCycleOnlyAllocatesInputsAndEstimator() {
+    try (DriveSimHarness harness = new DriveSimHarness(0)) {
+      harness.run(WARMUP_CYCLES * DriveSimHarness.LOOP_PERIOD_S);
+      Drive drive = harness.getDrive();
+
+      // Runs the same estimator work as Drive on the side, to measure what it costs by itself
+      SwerveModulePosition[] positions =
+          new SwerveModulePosition[] {
+            new SwerveModulePosition(),
+            new SwerveModulePosition(),
+            new SwerveModulePosition(),
+            new SwerveModulePosition()
+          };
+      Rotation2d gyroRotation = new Rotation2d();
+      SwerveDrivePoseEstimator estimator =
+          new SwerveDrivePoseEstimator(
+              new SwerveDriveKinematics(Drive.getModuleTranslations()),
+              gyroRotation,
+              positions,
+              new Pose2d());
+
+      long driveBytes = 0;
+      long allowedBytes = 0;
+      threads.getCurrentThreadAllocatedBytes(); // The first call may set up the counter
+      for (int cycle = 0; cycle < MEASURED_CYCLES; cycle++) {
+        SimHooks.stepTiming(DriveSimHarness.LOOP_PERIOD_S);
+        DriverStation.refreshData();
+
+        long startBytes = threads.getCurrentThreadAllocatedBytes();
+        drive.periodic();
+        driveBytes += threads.getCurrentThreadAllocatedBytes() - startBytes;
+
+        double[] timestamps = drive.getModule(0).getOdometryTimestamps();
+        startBytes = threads.getCurrentThreadAllocatedBytes();
+        for (double timestamp : timestamps) {
+          estimator.updateWithTime(timestamp, gyroRotation, positions);
+        }
+        allowedBytes += threads.getCurrentThreadAllocatedBytes() - startBytes;
+        allowedBytes += getLoggedInputBytes(timestamps.length) + SLACK_BYTES_PER_CYCLE;
+      }
+
+      long measuredBytes = driveBytes;
+      long budgetBytes = allowedBytes;
+      assertTrue(
+          measuredBytes <= budgetBytes,
+          () ->
+              String.format(
+                  "Drive.periodic allocated %d bytes per cycle, expected at most %d",
+                  measuredBytes / MEASURED_CYCLES, budgetBytes / MEASURED_CYCLES));
+    }
+  }
+
+  /** Returns the size of the arrays the simulated IO logs every cycle, as an upper bound. */
+  private static long getLoggedInputBytes(int sampleCount) {
+    // Each module logs three sample arrays plus its current and temperature arrays, the gyro two
+    // sample arrays
+    return 4 * (3 * getArrayBytes(sampleCount) + 4 * getArrayBytes(1))
+        + 2 * getArrayBytes(sampleCount);
+  }
+
+  /** Returns the size of a double array with the largest header a 64-bit JVM uses. */
+  private static long getArrayBytes(int length) {
+    return 24 + 8L * length;
+  }
+}
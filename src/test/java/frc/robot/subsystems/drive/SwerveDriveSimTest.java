@@ -0,0 +1,31 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj2.command.Commands;
+import org.junit.jupiter.api.Test;
+
+class SwerveDriveSimTest {
+  @Test
+  void forwardCommandMovesAlongX() {
+    // Several seeds so the random absolute encoder offsets can't line up by chance
+    for (long seed = 0; seed < 4; seed++) {
+      try (DriveSimHarness harness = new DriveSimHarness(seed)) {
+        Drive drive = harness.getDrive();
+        ChassisSpeeds speeds = new ChassisSpeeds(1.0, 0.0, 0.0);
+        harness.schedule(Commands.run(() -> drive.runVelocity(speeds), drive));
+        harness.run(2.0);
+
+        Pose2d pose = harness.getSimulatedPose();
+        assertTrue(pose.getX() > 1.0, "seed " + seed + " only reached x " + pose.getX());
+        assertEquals(0.0, pose.getY(), 0.1, "seed " + seed);
+        assertEquals(0.0, pose.getRotation().getRadians(), 0.05, "seed " + seed);
+      }
+    }
+  }
+}
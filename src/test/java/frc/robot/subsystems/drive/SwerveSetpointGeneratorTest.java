@@ -0,0 +1,100 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import org.junit.jupiter.api.Test;
+
+class SwerveSetpointGeneratorTest {
+  private static final double HALF_TRACK_METERS = 0.3175;
+  private static final double DT = 0.02;
+  private static final int CYCLES = 50; // 1 second
+  private static final double TOLERANCE = 1e-6;
+
+  private final SwerveModuleState[] outputStates = createStates(0.0);
+
+  @Test
+  void strafesFromRest() {
+    SwerveSetpointGenerator generator = createGenerator(0.0);
+    run(generator, 0.0, 1.0, 0.0);
+
+    assertEquals(0.0, generator.getSetpointVx(), TOLERANCE);
+    assertEquals(1.0, generator.getSetpointVy(), TOLERANCE);
+    for (SwerveModuleState state : outputStates) {
+      assertEquals(1.0, Math.abs(state.speedMetersPerSecond), TOLERANCE);
+      assertEquals(Math.PI / 2.0, Math.abs(state.angle.getRadians()), TOLERANCE);
+    }
+  }
+
+  @Test
+  void drivesFromRestWithTurnedModules() {
+    SwerveSetpointGenerator generator = createGenerator(1.0);
+    run(generator, 1.0, 0.0, 0.0);
+
+    assertEquals(1.0, generator.getSetpointVx(), TOLERANCE);
+    assertEquals(0.0, generator.getSetpointVy(), TOLERANCE);
+  }
+
+  @Test
+  void rotatesFromRest() {
+    SwerveSetpointGenerator generator = createGenerator(0.0);
+    run(generator, 0.0, 0.0, 2.0);
+
+    assertEquals(0.0, generator.getSetpointVx(), TOLERANCE);
+    assertEquals(0.0, generator.getSetpointVy(), TOLERANCE);
+    assertEquals(2.0, generator.getSetpointOmega(), TOLERANCE);
+    double expectedSpeed = 2.0 * Math.hypot(HALF_TRACK_METERS, HALF_TRACK_METERS);
+    for (SwerveModuleState state : outputStates) {
+      assertEquals(expectedSpeed, Math.abs(state.speedMetersPerSecond), TOLERANCE);
+    }
+  }
+
+  @Test
+  void steersBeforeDrivingFromRest() {
+    SwerveSetpointGenerator generator = createGenerator(0.0);
+    generator.generate(0.0, 1.0, 0.0, DT, outputStates);
+
+    // The first period only turns the wheels, driving now would push the robot the wrong way
+    assertEquals(0.0, generator.getSetpointVy(), TOLERANCE);
+    for (SwerveModuleState state : outputStates) {
+      assertEquals(0.0, state.speedMetersPerSecond, TOLERANCE);
+      assertEquals(20.0 * DT, state.angle.getRadians(), TOLERANCE);
+    }
+  }
+
+  private void run(SwerveSetpointGenerator generator, double vx, double vy, double omega) {
+    for (int i = 0; i < CYCLES; i++) {
+      generator.generate(vx, vy, omega, DT, outputStates);
+    }
+  }
+
+  /** Creates a generator at rest with every module pointed at a heading. */
+  private static SwerveSetpointGenerator createGenerator(double headingRad) {
+    SwerveSetpointGenerator generator =
+        new SwerveSetpointGenerator(
+            new Translation2d[] {
+              new Translation2d(HALF_TRACK_METERS, HALF_TRACK_METERS),
+              new Translation2d(HALF_TRACK_METERS, -HALF_TRACK_METERS),
+              new Translation2d(-HALF_TRACK_METERS, HALF_TRACK_METERS),
+              new Translation2d(-HALF_TRACK_METERS, -HALF_TRACK_METERS)
+            },
+            4.4,
+            10.0,
+            10.0,
+            20.0);
+    generator.reset(createStates(headingRad));
+    return generator;
+  }
+
+  private static SwerveModuleState[] createStates(double headingRad) {
+    SwerveModuleState[] states = new SwerveModuleState[4];
+    for (int i = 0; i < 4; i++) {
+      states[i] = new SwerveModuleState(0.0, new Rotation2d(headingRad));
+    }
+    return states;
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.subsystems.drive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Translation2d;
+import org.junit.jupiter.api.Test;
+
+class WheelSlipDetectorTest {
+  private static final Translation2d[] MODULE_TRANSLATIONS = {
+    new Translation2d(0.3, 0.25),
+    new Translation2d(0.3, -0.25),
+    new Translation2d(-0.3, 0.25),
+    new Translation2d(-0.3, -0.25)
+  };
+  private static final double DT = 0.02;
+  private static final int CYCLES = 25; // Long enough for the residual filters to settle
+  private static final double TOLERANCE = 1e-9;
+
+  private final double[] deltaX = new double[4];
+  private final double[] deltaY = new double[4];
+  private final double[] headingCos = new double[4];
+  private final double[] headingSin = new double[4];
+
+  @Test
+  void trustsRigidBodyMotion() {
+    for (boolean hasGyro : new boolean[] {true, false}) {
+      WheelSlipDetector detector = new WheelSlipDetector(MODULE_TRANSLATIONS);
+      for (int cycle = 0; cycle < CYCLES; cycle++) {
+        // Translating while rotating, so every module moves differently
+        setRigidBodyDeltas(1.5, -0.8, 2.0);
+        detector.update(deltaX, deltaY, headingCos, headingSin, getGyroDelta(2.0, hasGyro), DT);
+      }
+
+      for (int i = 0; i < 4; i++) {
+        assertEquals(1.0, detector.getWeight(i), TOLERANCE);
+        assertEquals(0.0, detector.getResidualSpeeds()[i], TOLERANCE);
+        assertEquals(deltaX[i], detector.getExpectedDeltaX(i), TOLERANCE);
+        assertEquals(deltaY[i], detector.getExpectedDeltaY(i), TOLERANCE);
+        assertFalse(detector.getSlipping()[i]);
+      }
+      assertEquals(0, detector.getSlipEventCount());
+    }
+  }
+
+  @Test
+  void dropsOnlyTheOverspinningWheel() {
+    for (boolean hasGyro : new boolean[] {true, false}) {
+      WheelSlipDetector detector = new WheelSlipDetector(MODULE_TRANSLATIONS);
+      for (int cycle = 0; cycle < CYCLES; cycle++) {
+        setRigidBodyDeltas(2.0, 0.5, 1.0);
+        overspin(2, 2.0);
+        detector.update(deltaX, deltaY, headingCos, headingSin, getGyroDelta(1.0, hasGyro), DT);
+      }
+
+      for (int i = 0; i < 4; i++) {
+        if (i == 2) {
+          assertEquals(0.0, detector.getWeight(i), 0.05);
+          assertTrue(detector.getSlipping()[i]);
+        } else {
+          assertEquals(1.0, detector.getWeight(i));
+          assertFalse(detector.getSlipping()[i]);
+        }
+      }
+      assertEquals(1, detector.getSlipEventCount());
+    }
+  }
+
+  @Test
+  void restartsAfterSampleGap() {
+    WheelSlipDetector detector = new WheelSlipDetector(MODULE_TRANSLATIONS);
+    for (int cycle = 0; cycle < CYCLES; cycle++) {
+      setRigidBodyDeltas(2.0, 0.0, 0.0);
+      overspin(0, 2.0);
+      detector.update(deltaX, deltaY, headingCos, headingSin, 0.0, DT);
+    }
+    assertTrue(detector.getSlipping()[0]);
+
+    // Past MAX_SAMPLE_GAP_S the sample is only used to restart the filters
+    detector.update(deltaX, deltaY, headingCos, headingSin, 0.0, 0.2);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(1.0, detector.getWeight(i));
+      assertEquals(0.0, detector.getResidualSpeeds()[i]);
+      assertFalse(detector.getSlipping()[i]);
+    }
+
+    // The old residual doesn't carry over once the wheel grips again
+    setRigidBodyDeltas(2.0, 0.0, 0.0);
+    detector.update(deltaX, deltaY, headingCos, headingSin, 0.0, DT);
+    for (int i = 0; i < 4; i++) {
+      assertEquals(1.0, detector.getWeight(i));
+      assertEquals(0.0, detector.getResidualSpeeds()[i], TOLERANCE);
+    }
+  }
+
+  /** Fills the module deltas and headings for a robot relative chassis motion over one sample. */
+  private void setRigidBodyDeltas(double vx, double vy, double omega) {
+    for (int i = 0; i < 4; i++) {
+      deltaX[i] = (vx - omega * MODULE_TRANSLATIONS[i].getY()) * DT;
+      deltaY[i] = (vy + omega * MODULE_TRANSLATIONS[i].getX()) * DT;
+      double distance = Math.hypot(deltaX[i], deltaY[i]);
+      headingCos[i] = deltaX[i] / distance;
+      headingSin[i] = deltaY[i] / distance;
+    }
+  }
+
+  /** Scales a module's delta along its heading, like a wheel spinning faster than the ground. */
+  private void overspin(int index, double factor) {
+    deltaX[index] *= factor;
+    deltaY[index] *= factor;
+  }
+
+  private static double getGyroDelta(double omega, boolean hasGyro) {
+    return hasGyro ? omega * DT : Double.NaN;
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class FeedforwardFitterTest {
+  private static final double KS = 0.18;
+  private static final double KV = 2.4;
+  private static final double KA = 0.35;
+  private static final double DT = 0.02;
+  private static final int SAMPLES = 500; // 10 seconds
+  private static final double TOLERANCE = 1e-9;
+
+  private final FeedforwardFitter fitter = new FeedforwardFitter();
+
+  @Test
+  void recoversGainsFromDynamicSamples() {
+    for (int i = 0; i < SAMPLES; i++) {
+      // Sweeps forward and backward so sign(velocity), velocity and acceleration vary separately
+      double time = i * DT;
+      double velocity = 3.0 * Math.sin(time);
+      double acceleration = 3.0 * Math.cos(time);
+      fitter.addSample(velocity, acceleration, getVolts(velocity, acceleration));
+    }
+
+    assertTrue(fitter.solve());
+    assertEquals(KS, fitter.getKs(), TOLERANCE);
+    assertEquals(KV, fitter.getKv(), TOLERANCE);
+    assertEquals(KA, fitter.getKa(), TOLERANCE);
+    assertEquals(1.0, fitter.getRSquared(), TOLERANCE);
+    assertEquals(SAMPLES, fitter.getSampleCount());
+  }
+
+  @Test
+  void recoversGainsFromNoisySamples() {
+    Random random = new Random(0);
+    for (int i = 0; i < SAMPLES; i++) {
+      double time = i * DT;
+      double velocity = 3.0 * Math.sin(time);
+      double acceleration = 3.0 * Math.cos(time);
+      double volts = getVolts(velocity, acceleration) + 0.05 * random.nextGaussian();
+      fitter.addSample(velocity, acceleration, volts);
+    }
+
+    assertTrue(fitter.solve());
+    assertEquals(KS, fitter.getKs(), 0.05 * KS);
+    assertEquals(KV, fitter.getKv(), 0.05 * KV);
+    assertEquals(KA, fitter.getKa(), 0.05 * KA);
+    assertTrue(fitter.getRSquared() > 0.99 && fitter.getRSquared() < 1.0);
+  }
+
+  @Test
+  void fitsStaticAndVelocityGainsWithoutAcceleration() {
+    // A quasistatic ramp alone, the acceleration is too small to measure
+    for (int i = 0; i < SAMPLES; i++) {
+      double velocity = (i % 2 == 0 ? 1.0 : -1.0) * 0.01 * i;
+      fitter.addSample(velocity, 0.0, getVolts(velocity, 0.0));
+    }
+
+    assertTrue(fitter.solve());
+    assertEquals(KS, fitter.getKs(), TOLERANCE);
+    assertEquals(KV, fitter.getKv(), TOLERANCE);
+    assertEquals(0.0, fitter.getKa());
+    assertEquals(1.0, fitter.getRSquared(), TOLERANCE);
+  }
+
+  @Test
+  void keepsPreviousGainsWithoutEnoughSamples() {
+    assertFalse(fitter.solve());
+
+    fitter.addSample(1.0, 0.0, getVolts(1.0, 0.0));
+    assertFalse(fitter.solve());
+    assertEquals(0.0, fitter.getKs());
+    assertEquals(0.0, fitter.getKv());
+  }
+
+  @Test
+  void resetClearsSamplesAndGains() {
+    for (int i = 0; i < SAMPLES; i++) {
+      double velocity = 3.0 * Math.sin(i * DT);
+      double acceleration = 3.0 * Math.cos(i * DT);
+      fitter.addSample(velocity, acceleration, getVolts(velocity, acceleration));
+    }
+    assertTrue(fitter.solve());
+
+    fitter.reset();
+    assertEquals(0, fitter.getSampleCount());
+    assertEquals(0.0, fitter.getKs());
+    assertEquals(0.0, fitter.getKv());
+    assertEquals(0.0, fitter.getKa());
+    assertEquals(0.0, fitter.getRSquared());
+  }
+
+  private static double getVolts(double velocity, double acceleration) {
+    return KS * Math.signum(velocity) + KV * velocity + KA * acceleration;
+  }
+}
@@ -0,0 +1,587 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.logging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Desktop tool that reads a directory of WPILOG files (a whole event or season) and exports chosen
+ * keys as compact columnar files and/or prints summary statistics across every log.
+ *
+ * <p>Each log is memory-mapped. A first pass only walks the record headers to find the records of
+ * the selected keys, then the payloads of every key are decoded in parallel. The logs themselves
+ * are also processed in parallel. Numeric values, numeric arrays, and structs made only of doubles
+ * (poses, module states, ...) are supported, every other type is skipped.
+ *
+ * <p>Columnar files ("[log name].cols", little endian) hold "WPICOL01", the column count, then for
+ * each column: name and type (int32 length + UTF-8), row count and value count (int32), the row
+ * timestamps in microseconds (int64[rows]), the offset of each row into the values (int32[rows +
+ * 1]), and the values (float64[values]).
+ *
+ * <p>Run with "./gradlew analyzeLogs -PlogArgs='[log file or directory] [options]'". Options are
+ * "--out [directory]" to export columns, "--keys [patterns]" for the exported keys and "--stats
+ * [patterns]" for the summarized keys, where patterns are comma separated and "*" matches anything.
+ * Outputs are matched with or without their "RealOutputs/" prefix.
+ */
+public class LogAnalyzer {
+  private static final String[] DEFAULT_EXPORT_KEYS = {
+    "Drive/Module*", "SwerveStates/*", "Odometry/Robot"
+  };
+  private static final String[] DEFAULT_STATS_KEYS = {
+    "LoggedRobot/FullCycleMS",
+    "LoggedRobot/UserCodeMS",
+    "SystemStats/BatteryVoltage",
+    "Drive/Module*/DriveCurrentAmps",
+    "Drive/Module*/AzimuthCurrentAmps",
+    "Drive/Module*/DriveTemperatureCelsius",
+    "Drive/Module*/AzimuthTemperatureCelsius",
+    "Drive/Module*/AzimuthError"
+  };
+  private static final String LOG_EXTENSION = ".wpilog";
+  private static final String COLUMNS_EXTENSION = ".cols";
+  private static final byte[] LOG_MAGIC = "WPILOG".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] COLUMNS_MAGIC = "WPICOL01".getBytes(StandardCharsets.US_ASCII);
+  private static final int MIN_LOG_VERSION = 0x0100;
+  private static final int CONTROL_START = 0;
+  private static final int CONTROL_FINISH = 1;
+  private static final String[] OUTPUT_PREFIXES = {"RealOutputs/", "ReplayOutputs/"};
+  // Structs that are only doubles, so their payload can be read as a double array
+  private static final Set<String> DOUBLE_STRUCTS =
+      Set.of(
+          "Rotation2d",
+          "Translation2d",
+          "Pose2d",
+          "Twist2d",
+          "Transform2d",
+          "Translation3d",
+          "Quaternion",
+          "Rotation3d",
+          "Pose3d",
+          "ChassisSpeeds",
+          "SwerveModuleState",
+          "SwerveModulePosition");
+
+  private LogAnalyzer() {}
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println(
+          "Usage: LogAnalyzer [log file or directory] [--out directory] [--keys patterns]"
+              + " [--stats patterns]");
+      System.exit(1);
+    }
+
+    Path input = Paths.get(args[0]);
+    Path outputDirectory = null;
+    String[] exportKeys = DEFAULT_EXPORT_KEYS;
+    String[] statsKeys = DEFAULT_STATS_KEYS;
+    for (int i = 1; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--out":
+          outputDirectory = Paths.get(args[i + 1]);
+          break;
+        case "--keys":
+          exportKeys = args[i + 1].split(",");
+          break;
+        case "--stats":
+          statsKeys = args[i + 1].split(",");
+          break;
+        default:
+          System.out.println("Unknown option " + args[i]);
+          System.exit(1);
+      }
+    }
+
+    List<Path> logs;
+    try (Stream<Path> paths = Files.walk(input)) {
+      logs =
+          paths
+              .filter((Path path) -> path.toString().endsWith(LOG_EXTENSION))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+    if (outputDirectory != null) {
+      Files.createDirectories(outputDirectory);
+    }
+
+    long startNanos = System.nanoTime();
+    Pattern exportPattern = outputDirectory != null ? compile(exportKeys) : null;
+    Pattern statsPattern = compile(statsKeys);
+    Path exportDirectory = outputDirectory;
+    List<LogResult> results =
+        logs.parallelStream()
+            .map((Path log) -> analyze(log, exportPattern, statsPattern, exportDirectory))
+            .collect(Collectors.toList());
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+    // Merge in file order so the output doesn't depend on scheduling
+    Map<String, Statistics> statistics = new LinkedHashMap<>();
+    long bytes = 0;
+    long records = 0;
+    for (LogResult result : results) {
+      if (result.error != null) {
+        System.out.printf("Skipped %s: %s%n", result.log.getFileName(), result.error);
+        continue;
+      }
+      bytes += result.bytes;
+      records += result.records;
+      for (Map.Entry<String, Statistics> entry : result.statistics.entrySet()) {
+        statistics
+            .computeIfAbsent(entry.getKey(), (String key) -> new Statistics())
+            .merge(entry.getValue());
+      }
+    }
+
+    System.out.printf(
+        "Read %d logs (%.1f MB, %d records) in %.2f s%n",
+        logs.size(), bytes / 1e6, records, seconds);
+    System.out.printf(
+        "%-48s %10s %10s %10s %10s %10s  %s%n",
+        "Key", "Samples", "Mean", "RMS", "Min", "Max", "Max in");
+    statistics.keySet().stream()
+        .sorted()
+        .forEach(
+            (String key) -> {
+              Statistics stats = statistics.get(key);
+              System.out.printf(
+                  "%-48s %10d %10.3f %10.3f %10.3f %10.3f  %s%n",
+                  key,
+                  stats.count,
+                  stats.getMean(),
+                  stats.getRms(),
+                  stats.min,
+                  stats.max,
+                  stats.maxLog);
+            });
+    System.exit(0);
+  }
+
+  /** Indexes, decodes, exports and summarizes one log. */
+  private static LogResult analyze(
+      Path log, Pattern exportPattern, Pattern statsPattern, Path outputDirectory) {
+    LogResult result = new LogResult(log);
+    try {
+      ByteBuffer buffer = map(log);
+      result.bytes = buffer.limit();
+      List<Entry> entries = index(buffer, exportPattern, statsPattern, result);
+
+      List<Column> columns =
+          entries.parallelStream()
+              .filter((Entry entry) -> entry.count > 0)
+              .map((Entry entry) -> decode(buffer, entry))
+              .collect(Collectors.toList());
+
+      String logName = log.getFileName().toString();
+      List<Column> exported = new ArrayList<>();
+      for (Column column : columns) {
+        if (column.entry.export) {
+          exported.add(column);
+        }
+        if (column.entry.stats) {
+          Statistics stats =
+              result.statistics.computeIfAbsent(column.entry.key, (String key) -> new Statistics());
+          for (int i = 0; i < column.valueCount; i++) {
+            stats.add(column.values[i], logName);
+          }
+        }
+      }
+      if (outputDirectory != null && !exported.isEmpty()) {
+        String baseName = logName.substring(0, logName.length() - LOG_EXTENSION.length());
+        write(outputDirectory.resolve(baseName + COLUMNS_EXTENSION), exported);
+      }
+    } catch (IOException | RuntimeException e) {
+      result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+    return result;
+  }
+
+  /**
+   * Reads every key of a log that matches a pattern, keyed by name without the leading "/". Used
+   * by {@link ReplayRunner} to compare logs.
+   */
+  static Map<String, Column> readColumns(Path log, Pattern pattern) throws IOException {
+    ByteBuffer buffer = map(log);
+    List<Entry> entries = index(buffer, pattern, null, new LogResult(log));
+    Map<String, Column> columns = new LinkedHashMap<>();
+    entries.parallelStream()
+        .filter((Entry entry) -> entry.count > 0)
+        .map((Entry entry) -> decode(buffer, entry))
+        .collect(Collectors.toList())
+        .forEach((Column column) -> columns.put(column.getKey(), column));
+    return columns;
+  }
+
+  private static MappedByteBuffer map(Path log) throws IOException {
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Logs over 2 GB are not supported");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+      return buffer;
+    }
+  }
+
+  /**
+   * Walks the record headers and returns the selected entries with the position of each of their
+   * records. Payloads are only read for control records.
+   */
+  private static List<Entry> index(
+      ByteBuffer buffer, Pattern exportPattern, Pattern statsPattern, LogResult result)
+      throws IOException {
+    int limit = buffer.limit();
+    if (limit < 12) {
+      throw new IOException("Not a WPILOG file");
+    }
+    for (int i = 0; i < LOG_MAGIC.length; i++) {
+      if (buffer.get(i) != LOG_MAGIC[i]) {
+        throw new IOException("Not a WPILOG file");
+      }
+    }
+    if ((buffer.getShort(6) & 0xffff) < MIN_LOG_VERSION) {
+      throw new IOException("Unsupported WPILOG version");
+    }
+
+    List<Entry> selected = new ArrayList<>();
+    Entry[] active = new Entry[256]; // By entry id, ids can be reused once an entry is finished
+    int position = 12 + buffer.getInt(8); // Skip the extra header
+    long records = 0;
+    while (position < limit) {
+      int header = buffer.get(position) & 0xff;
+      int idLength = (header & 0x3) + 1;
+      int sizeLength = ((header >> 2) & 0x3) + 1;
+      int timestampLength = ((header >> 4) & 0x7) + 1;
+      int payload = position + 1 + idLength + sizeLength + timestampLength;
+      if (payload > limit) {
+        break; // Truncated by a power loss
+      }
+      int id = (int) readInteger(buffer, position + 1, idLength);
+      int size = (int) readInteger(buffer, position + 1 + idLength, sizeLength);
+      long timestamp = readInteger(buffer, position + 1 + idLength + sizeLength, timestampLength);
+      if (size < 0 || payload + size > limit) {
+        break;
+      }
+
+      if (id == 0) {
+        int controlType = buffer.get(payload);
+        int entryId = buffer.getInt(payload + 1);
+        if (controlType == CONTROL_START) {
+          int nameLength = buffer.getInt(payload + 5);
+          String name = readString(buffer, payload + 9, nameLength);
+          int typeLength = buffer.getInt(payload + 9 + nameLength);
+          String type = readString(buffer, payload + 13 + nameLength, typeLength);
+          Entry entry = select(name, type, exportPattern, statsPattern);
+          if (entry != null) {
+            selected.add(entry);
+          }
+          if (entryId >= active.length) {
+            active = Arrays.copyOf(active, Math.max(active.length * 2, entryId + 1));
+          }
+          active[entryId] = entry;
+        } else if (controlType == CONTROL_FINISH && entryId < active.length) {
+          active[entryId] = null;
+        }
+      } else if (id < active.length && active[id] != null) {
+        active[id].add(payload, size, timestamp);
+      }
+      records++;
+      position = payload + size;
+    }
+    result.records = records;
+    return selected;
+  }
+
+  /** Returns an entry if the key is selected and its type can be decoded, otherwise null. */
+  private static Entry select(
+      String name, String type, Pattern exportPattern, Pattern statsPattern) {
+    if (getValueSize(type) == 0) {
+      return null;
+    }
+    String key = name.startsWith("/") ? name.substring(1) : name;
+    String shortKey = key;
+    for (String prefix : OUTPUT_PREFIXES) {
+      if (key.startsWith(prefix)) {
+        shortKey = key.substring(prefix.length());
+      }
+    }
+
+    boolean export =
+        exportPattern != null
+            && (exportPattern.matcher(key).matches() || exportPattern.matcher(shortKey).matches());
+    boolean stats =
+        statsPattern != null
+            && (statsPattern.matcher(key).matches() || statsPattern.matcher(shortKey).matches());
+    return export || stats ? new Entry(key, type, export, stats) : null;
+  }
+
+  /** Returns the size in bytes of each value of a type, or 0 if the type isn't supported. */
+  private static int getValueSize(String type) {
+    String elementType = type.endsWith("[]") ? type.substring(0, type.length() - 2) : type;
+    switch (elementType) {
+      case "double":
+      case "int64":
+        return 8;
+      case "float":
+        return 4;
+      case "boolean":
+        return 1;
+      default:
+        return elementType.startsWith("struct:")
+                && DOUBLE_STRUCTS.contains(elementType.substring("struct:".length()))
+            ? 8
+            : 0;
+    }
+  }
+
+  /** Decodes every record of an entry into a column. */
+  private static Column decode(ByteBuffer sharedBuffer, Entry entry) {
+    // Duplicates share the mapping but not the position or byte order
+    ByteBuffer buffer = sharedBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    String elementType =
+        entry.type.endsWith("[]") ? entry.type.substring(0, entry.type.length() - 2) : entry.type;
+    int valueSize = getValueSize(entry.type);
+
+    int valueCount = 0;
+    for (int i = 0; i < entry.count; i++) {
+      valueCount += entry.sizes[i] / valueSize;
+    }
+    Column column = new Column(entry, valueCount);
+    int value = 0;
+    for (int i = 0; i < entry.count; i++) {
+      column.timestamps[i] = entry.timestamps[i];
+      column.rowOffsets[i] = value;
+      int offset = entry.offsets[i];
+      int count = entry.sizes[i] / valueSize;
+      for (int j = 0; j < count; j++) {
+        int position = offset + j * valueSize;
+        switch (elementType) {
+          case "int64":
+            column.values[value++] = buffer.getLong(position);
+            break;
+          case "float":
+            column.values[value++] = buffer.getFloat(position);
+            break;
+          case "boolean":
+            column.values[value++] = buffer.get(position) != 0 ? 1.0 : 0.0;
+            break;
+          default:
+            column.values[value++] = buffer.getDouble(position);
+            break;
+        }
+      }
+    }
+    column.rowOffsets[entry.count] = value;
+    return column;
+  }
+
+  private static void write(Path file, List<Column> columns) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header =
+          ByteBuffer.allocate(COLUMNS_MAGIC.length + 4).order(ByteOrder.LITTLE_ENDIAN);
+      header.put(COLUMNS_MAGIC).putInt(columns.size()).flip();
+      writeFully(channel, header);
+
+      for (Column column : columns) {
+        byte[] name = column.entry.key.getBytes(StandardCharsets.UTF_8);
+        byte[] type = column.entry.type.getBytes(StandardCharsets.UTF_8);
+        int rows = column.timestamps.length;
+        int size =
+            16 + name.length + type.length + rows * 8 + (rows + 1) * 4 + column.valueCount * 8;
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(name.length).put(name).putInt(type.length).put(type);
+        buffer.putInt(rows).putInt(column.valueCount);
+        buffer.asLongBuffer().put(column.timestamps);
+        buffer.position(buffer.position() + rows * 8);
+        buffer.asIntBuffer().put(column.rowOffsets);
+        buffer.position(buffer.position() + (rows + 1) * 4);
+        buffer.asDoubleBuffer().put(column.values, 0, column.valueCount);
+        buffer.position(buffer.position() + column.valueCount * 8);
+        buffer.flip();
+        writeFully(channel, buffer);
+      }
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static long readInteger(ByteBuffer buffer, int position, int length) {
+    long value = 0;
+    for (int i = 0; i < length; i++) {
+      value |= (buffer.get(position + i) & 0xffL) << (8 * i);
+    }
+    return value;
+  }
+
+  private static String readString(ByteBuffer buffer, int position, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(position + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Builds one pattern matching any of the comma separated globs. */
+  static Pattern compile(String[] globs) {
+    return Pattern.compile(
+        Arrays.stream(globs)
+            .map(String::trim)
+            .map(
+                (String glob) ->
+                    Arrays.stream(glob.split("\\*", -1))
+                        .map(Pattern::quote)
+                        .collect(Collectors.joining(".*")))
+            .collect(Collectors.joining("|")));
+  }
+
+  /** A selected key in one log, with the position, size and timestamp of each of its records. */
+  private static class Entry {
+    private final String key;
+    private final String type;
+    private final boolean export;
+    private final boolean stats;
+
+    private int count = 0;
+    private int[] offsets = new int[64];
+    private int[] sizes = new int[64];
+    private long[] timestamps = new long[64];
+
+    private Entry(String key, String type, boolean export, boolean stats) {
+      this.key = key;
+      this.type = type;
+      this.export = export;
+      this.stats = stats;
+    }
+
+    private void add(int offset, int size, long timestamp) {
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, count * 2);
+        sizes = Arrays.copyOf(sizes, count * 2);
+        timestamps = Arrays.copyOf(timestamps, count * 2);
+      }
+      offsets[count] = offset;
+      sizes[count] = size;
+      timestamps[count] = timestamp;
+      count++;
+    }
+  }
+
+  /** Decoded values of an entry, array values are flattened and indexed by the row offsets. */
+  static class Column {
+    private final Entry entry;
+    private final long[] timestamps;
+    private final int[] rowOffsets;
+    private final double[] values;
+    private final int valueCount;
+
+    private Column(Entry entry, int valueCount) {
+      this.entry = entry;
+      this.timestamps = new long[entry.count];
+      this.rowOffsets = new int[entry.count + 1];
+      this.values = new double[valueCount];
+      this.valueCount = valueCount;
+    }
+
+    String getKey() {
+      return entry.key;
+    }
+
+    int getRowCount() {
+      return timestamps.length;
+    }
+
+    long getTimestamp(int row) {
+      return timestamps[row];
+    }
+
+    int getRowStart(int row) {
+      return rowOffsets[row];
+    }
+
+    int getRowLength(int row) {
+      return rowOffsets[row + 1] - rowOffsets[row];
+    }
+
+    double getValue(int index) {
+      return values[index];
+    }
+  }
+
+  /** Running statistics of a key, can be merged across logs. */
+  private static class Statistics {
+    private long count = 0;
+    private double sum = 0.0;
+    private double sumSquares = 0.0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private String maxLog = "";
+
+    private void add(double value, String log) {
+      count++;
+      sum += value;
+      sumSquares += value * value;
+      min = Math.min(min, value);
+      if (value > max) {
+        max = value;
+        maxLog = log;
+      }
+    }
+
+    private void merge(Statistics other) {
+      count += other.count;
+      sum += other.sum;
+      sumSquares += other.sumSquares;
+      min = Math.min(min, other.min);
+      if (other.max > max) {
+        max = other.max;
+        maxLog = other.maxLog;
+      }
+    }
+
+    private double getMean() {
+      return count > 0 ? sum / count : 0.0;
+    }
+
+    private double getRms() {
+      return count > 0 ? Math.sqrt(sumSquares / count) : 0.0;
+    }
+  }
+
+  private static class LogResult {
+    private final Path log;
+    private final Map<String, Statistics> statistics = new LinkedHashMap<>();
+    private long bytes = 0;
+    private long records = 0;
+    private String error = null;
+
+    private LogResult(Path log) {
+      this.log = log;
+    }
+  }
+}
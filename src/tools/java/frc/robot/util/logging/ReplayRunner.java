@@ -0,0 +1,284 @@
+// Copyright (c) 2024 FRC 5411 & 9105
+
+package frc.robot.util.logging;
+
+import frc.robot.util.logging.LogAnalyzer.Column;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Desktop tool that replays a directory of match logs through the current code and reports which
+ * matches behave differently. Each log is replayed in its own JVM (the robot code is full of static
+ * state) started in REPLAY mode with "AKIT_LOG_PATH" pointing at the log, several at a time. The
+ * replayed outputs are then compared with the original outputs for the chosen keys, holding each
+ * value until the next change since only changes are logged.
+ *
+ * <p>Run with "./gradlew replayLogs -PreplayArgs='[log directory] [options]'". Options are "--keys
+ * [patterns]" for the compared outputs (comma separated, "*" matches anything), "--jobs [count]"
+ * for the number of replays at once and "--tolerance [value]" for the largest difference that
+ * still counts as unchanged. Exits with 1 if any match changed or failed to replay.
+ */
+public class ReplayRunner {
+  private static final String[] DEFAULT_KEYS = {
+    "Drive/Module*", "SwerveStates/*", "Odometry/Robot"
+  };
+  private static final String LOG_EXTENSION = ".wpilog";
+  private static final String REPLAY_SUFFIX = "_sim"; // Added by Robot in REPLAY mode
+  private static final String ORIGINAL_PREFIX = "RealOutputs/";
+  private static final String REPLAY_PREFIX = "ReplayOutputs/";
+  private static final String ROBOT_MAIN_CLASS = "frc.robot.Main";
+  private static final long REPLAY_TIMEOUT_MINUTES = 10;
+  private static final int REPORTED_KEYS = 3;
+
+  /** Outcome of replaying a match. */
+  private static enum Status {
+    UNCHANGED,
+    CHANGED,
+    FAILED
+  }
+
+  private ReplayRunner() {}
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length == 0) {
+      System.out.println(
+          "Usage: ReplayRunner [log directory] [--keys patterns] [--jobs count] [--tolerance"
+              + " value]");
+      System.exit(1);
+    }
+
+    Path input = Paths.get(args[0]);
+    String[] keys = DEFAULT_KEYS;
+    int jobs = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    double tolerance = 1e-9;
+    for (int i = 1; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--keys":
+          keys = args[i + 1].split(",");
+          break;
+        case "--jobs":
+          jobs = Integer.parseInt(args[i + 1]);
+          break;
+        case "--tolerance":
+          tolerance = Double.parseDouble(args[i + 1]);
+          break;
+        default:
+          System.out.println("Unknown option " + args[i]);
+          System.exit(1);
+      }
+    }
+
+    List<Path> logs;
+    try (Stream<Path> paths = Files.walk(input)) {
+      logs =
+          paths
+              .map(Path::toAbsolutePath)
+              .filter((Path path) -> path.toString().endsWith(LOG_EXTENSION))
+              .filter((Path path) -> !getName(path).endsWith(REPLAY_SUFFIX))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+
+    long startNanos = System.nanoTime();
+    Pattern pattern = LogAnalyzer.compile(keys);
+    double maxDifference = tolerance;
+    ExecutorService executor = Executors.newFixedThreadPool(jobs);
+    List<Future<MatchResult>> futures = new ArrayList<>();
+    for (Path log : logs) {
+      futures.add(executor.submit(() -> replay(log, pattern, maxDifference)));
+    }
+
+    boolean allUnchanged = true;
+    for (int i = 0; i < futures.size(); i++) {
+      MatchResult result;
+      try {
+        result = futures.get(i).get();
+      } catch (ExecutionException e) {
+        result = new MatchResult(logs.get(i));
+        result.message = e.getCause().toString();
+      }
+      allUnchanged &= result.status == Status.UNCHANGED;
+      System.out.printf(
+          "%-40s %-9s %6.1f s  %s%n",
+          result.log.getFileName(), result.status, result.seconds, result.message);
+    }
+    executor.shutdown();
+
+    System.out.printf(
+        "Replayed %d logs with %d jobs in %.1f s%n",
+        logs.size(), jobs, (System.nanoTime() - startNanos) / 1e9);
+    System.exit(allUnchanged ? 0 : 1);
+  }
+
+  /** Replays one log in a new JVM and compares the outputs. */
+  private static MatchResult replay(Path log, Pattern pattern, double tolerance)
+      throws IOException, InterruptedException {
+    MatchResult result = new MatchResult(log);
+    long startNanos = System.nanoTime();
+    Path replayLog = log.resolveSibling(getName(log) + REPLAY_SUFFIX + LOG_EXTENSION);
+    Path output = log.resolveSibling(getName(log) + REPLAY_SUFFIX + ".txt");
+    Files.deleteIfExists(replayLog); // Otherwise the replay is written under a different name
+
+    ProcessBuilder builder =
+        new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-Djava.library.path=" + System.getProperty("java.library.path"),
+            "-Drobot.mode=REPLAY",
+            "-cp",
+            System.getProperty("java.class.path"),
+            ROBOT_MAIN_CLASS);
+    builder.environment().put("AKIT_LOG_PATH", log.toString());
+    builder.redirectErrorStream(true);
+    builder.redirectOutput(output.toFile());
+
+    Process process = builder.start();
+    boolean finished = process.waitFor(REPLAY_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+    result.seconds = (System.nanoTime() - startNanos) / 1e9;
+    if (!finished) {
+      process.destroyForcibly();
+      result.message = "Timed out, see " + output.getFileName();
+      return result;
+    }
+    if (!Files.exists(replayLog)) {
+      result.message =
+          "Exited with " + process.exitValue() + " and no output, see " + output.getFileName();
+      return result;
+    }
+
+    compare(log, replayLog, pattern, tolerance, result);
+    return result;
+  }
+
+  /** Compares the original outputs of a log with the replayed outputs. */
+  private static void compare(
+      Path log, Path replayLog, Pattern pattern, double tolerance, MatchResult result)
+      throws IOException {
+    Map<String, Column> originals = LogAnalyzer.readColumns(log, pattern);
+    Map<String, Column> replays = LogAnalyzer.readColumns(replayLog, pattern);
+
+    List<KeyDifference> differences = new ArrayList<>();
+    for (Map.Entry<String, Column> entry : originals.entrySet()) {
+      if (!entry.getKey().startsWith(ORIGINAL_PREFIX)) {
+        continue; // Inputs are replayed as they are, only outputs can change
+      }
+      String key = entry.getKey().substring(ORIGINAL_PREFIX.length());
+      Column replay = replays.get(REPLAY_PREFIX + key);
+      double difference =
+          replay != null ? getMaxDifference(entry.getValue(), replay) : Double.POSITIVE_INFINITY;
+      if (difference > tolerance) {
+        differences.add(new KeyDifference(key, difference));
+      }
+    }
+
+    differences.sort(
+        Comparator.comparingDouble((KeyDifference difference) -> difference.difference)
+            .reversed());
+    result.status = differences.isEmpty() ? Status.UNCHANGED : Status.CHANGED;
+    result.message =
+        differences.isEmpty()
+            ? ""
+            : differences.size()
+                + " keys changed: "
+                + differences.stream()
+                    .limit(REPORTED_KEYS)
+                    .map(KeyDifference::toString)
+                    .collect(Collectors.joining(", "));
+  }
+
+  /**
+   * Returns the largest difference between two columns, comparing the values held at every change
+   * of either. Rows of different lengths are infinitely different.
+   */
+  private static double getMaxDifference(Column original, Column replay) {
+    int originalRows = original.getRowCount();
+    int replayRows = replay.getRowCount();
+    if (originalRows == 0 || replayRows == 0) {
+      return originalRows == replayRows ? 0.0 : Double.POSITIVE_INFINITY;
+    }
+
+    double maxDifference = 0.0;
+    int i = 0;
+    int j = 0;
+    while (true) {
+      maxDifference = Math.max(maxDifference, getRowDifference(original, i, replay, j));
+      long nextOriginal = i + 1 < originalRows ? original.getTimestamp(i + 1) : Long.MAX_VALUE;
+      long nextReplay = j + 1 < replayRows ? replay.getTimestamp(j + 1) : Long.MAX_VALUE;
+      if (nextOriginal == Long.MAX_VALUE && nextReplay == Long.MAX_VALUE) {
+        return maxDifference;
+      }
+      if (nextOriginal <= nextReplay) {
+        i++;
+      }
+      if (nextReplay <= nextOriginal) {
+        j++;
+      }
+    }
+  }
+
+  private static double getRowDifference(Column a, int rowA, Column b, int rowB) {
+    int length = a.getRowLength(rowA);
+    if (length != b.getRowLength(rowB)) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double maxDifference = 0.0;
+    for (int k = 0; k < length; k++) {
+      double valueA = a.getValue(a.getRowStart(rowA) + k);
+      double valueB = b.getValue(b.getRowStart(rowB) + k);
+      if (Double.isNaN(valueA) || Double.isNaN(valueB)) {
+        if (Double.isNaN(valueA) != Double.isNaN(valueB)) {
+          return Double.POSITIVE_INFINITY;
+        }
+        continue;
+      }
+      maxDifference = Math.max(maxDifference, Math.abs(valueA - valueB));
+    }
+    return maxDifference;
+  }
+
+  private static String getName(Path log) {
+    String name = log.getFileName().toString();
+    return name.endsWith(LOG_EXTENSION)
+        ? name.substring(0, name.length() - LOG_EXTENSION.length())
+        : name;
+  }
+
+  private static class MatchResult {
+    private final Path log;
+    private Status status = Status.FAILED;
+    private double seconds = 0.0;
+    private String message = "";
+
+    private MatchResult(Path log) {
+      this.log = log;
+    }
+  }
+
+  private static class KeyDifference {
+    private final String key;
+    private final double difference;
+
+    private KeyDifference(String key, double difference) {
+      this.key = key;
+      this.difference = difference;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s (%.3g)", key, difference);
+    }
+  }
+}